@@ -0,0 +1,135 @@
+package com.cdf.aeron.benchmarks;
+
+import com.cdf.aeron.rpc.sbe.*;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SBE 编解码开销，不涉及 Aeron。
+ * 加上 {@code -prof gc} 运行时，{@code gc.alloc.rate.norm} 应为 0，即热路径上的编解码不产生垃圾
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dlog4j2.configurationFile=log4j2-benchmarks.xml"})
+@State(Scope.Thread)
+public class CodecBenchmark {
+    private static final String RESPONSE_CHANNEL = "aeron:udp?endpoint=127.0.0.1:40123";
+
+    @Param({"16", "240", "4096"})
+    private int payloadSize;
+
+    private final HeaderEncoder headerEncoder = new HeaderEncoder();
+    private final HeaderDecoder headerDecoder = new HeaderDecoder();
+    private final MyConnectEncoder connectEncoder = new MyConnectEncoder();
+    private final MyConnectDecoder connectDecoder = new MyConnectDecoder();
+    private final MyRequestEncoder requestEncoder = new MyRequestEncoder();
+    private final MyRequestDecoder requestDecoder = new MyRequestDecoder();
+    private final MyResponseEncoder responseEncoder = new MyResponseEncoder();
+    private final MyResponseDecoder responseDecoder = new MyResponseDecoder();
+
+    private UnsafeBuffer payload;
+    private UnsafeBuffer channel;
+    // encode 的目标
+    private UnsafeBuffer encodeBuffer;
+    // decode 的输入，setup 时预先编码好
+    private UnsafeBuffer connectBuffer;
+    private UnsafeBuffer requestBuffer;
+    private UnsafeBuffer responseBuffer;
+    private UnsafeBuffer decodeBuffer;
+
+    @Setup
+    public void setup() {
+        byte[] bytes = new byte[payloadSize];
+        Arrays.fill(bytes, (byte) 'a');
+        payload = new UnsafeBuffer(bytes);
+        channel = new UnsafeBuffer(RESPONSE_CHANNEL.getBytes());
+        encodeBuffer = new UnsafeBuffer(ByteBuffer.allocateDirect(8192));
+        decodeBuffer = new UnsafeBuffer(ByteBuffer.allocateDirect(8192));
+        connectBuffer = new UnsafeBuffer(ByteBuffer.allocateDirect(8192));
+        requestBuffer = new UnsafeBuffer(ByteBuffer.allocateDirect(8192));
+        responseBuffer = new UnsafeBuffer(ByteBuffer.allocateDirect(8192));
+
+        connectEncoder.wrapAndApplyHeader(connectBuffer, 0, headerEncoder).streamId(1).channel(RESPONSE_CHANNEL);
+        requestEncoder.wrapAndApplyHeader(requestBuffer, 0, headerEncoder).id(1).methodId(1)
+                .putReq(payload, 0, payloadSize);
+        responseEncoder.wrapAndApplyHeader(responseBuffer, 0, headerEncoder).id(1).status(ResponseStatus.OK)
+                .putRes(payload, 0, payloadSize);
+    }
+
+    @Benchmark
+    public int encodeConnect() {
+        connectEncoder.wrapAndApplyHeader(encodeBuffer, 0, headerEncoder);
+        connectEncoder.streamId(1);
+        connectEncoder.putChannel(channel, 0, channel.capacity());
+        return connectEncoder.encodedLength();
+    }
+
+    @Benchmark
+    public int encodeRequest() {
+        requestEncoder.wrapAndApplyHeader(encodeBuffer, 0, headerEncoder);
+        requestEncoder.id(1);
+        requestEncoder.methodId(1);
+        requestEncoder.putReq(payload, 0, payloadSize);
+        return requestEncoder.encodedLength();
+    }
+
+    @Benchmark
+    public int encodeResponse() {
+        responseEncoder.wrapAndApplyHeader(encodeBuffer, 0, headerEncoder);
+        responseEncoder.id(1);
+        responseEncoder.status(ResponseStatus.OK);
+        responseEncoder.putRes(payload, 0, payloadSize);
+        return responseEncoder.encodedLength();
+    }
+
+    /**
+     * 与 server 处理 connect 的路径一致，channel 会物化成 String，connect 不在热路径上
+     */
+    @Benchmark
+    public void decodeConnect(Blackhole bh) {
+        headerDecoder.wrap(connectBuffer, 0);
+        connectDecoder.wrap(connectBuffer, headerDecoder.encodedLength(), headerDecoder.blockLength(),
+                headerDecoder.version());
+        bh.consume(connectDecoder.streamId());
+        bh.consume(connectDecoder.channel());
+    }
+
+    /**
+     * 与 handler 读取请求的方式一致，req 拷贝到可复用的 buffer 中
+     */
+    @Benchmark
+    public int decodeRequest(Blackhole bh) {
+        headerDecoder.wrap(requestBuffer, 0);
+        requestDecoder.wrap(requestBuffer, headerDecoder.encodedLength(), headerDecoder.blockLength(),
+                headerDecoder.version());
+        bh.consume(requestDecoder.id());
+        bh.consume(requestDecoder.methodId());
+        return requestDecoder.getReq(decodeBuffer, 0, decodeBuffer.capacity());
+    }
+
+    /**
+     * 与 ClientAdapter 一致，只跳过 res 拿到切片的位置，不拷贝
+     */
+    @Benchmark
+    public int decodeResponse(Blackhole bh) {
+        headerDecoder.wrap(responseBuffer, 0);
+        responseDecoder.wrap(responseBuffer, headerDecoder.encodedLength(), headerDecoder.blockLength(),
+                headerDecoder.version());
+        bh.consume(responseDecoder.id());
+        bh.consume(responseDecoder.status());
+        int resOffset = responseDecoder.limit() + MyResponseDecoder.resHeaderLength();
+        int resLength = responseDecoder.skipRes();
+        bh.consume(resOffset);
+        return resLength;
+    }
+}
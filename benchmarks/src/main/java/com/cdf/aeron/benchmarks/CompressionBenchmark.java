@@ -0,0 +1,63 @@
+package com.cdf.aeron.benchmarks;
+
+import com.cdf.aeron.common.codec.Lz4Codec;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LZ4 压缩、解压的开销，用来估算开启 {@code rpc.compression} 时每个消息多花的 CPU，
+ * 压缩后的长度见 setup 打印的压缩比。{@code gc.alloc.rate.norm} 应为 0
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dlog4j2.configurationFile=log4j2-benchmarks.xml"})
+@State(Scope.Thread)
+public class CompressionBenchmark {
+    // 结构化的大请求/响应，字段名重复、取值不同
+    private static final String RECORD = "{\"orderId\":%d,\"symbol\":\"BTC-USDT\",\"side\":\"BUY\"," +
+            "\"price\":%d.%02d,\"quantity\":%d,\"status\":\"FILLED\"}";
+
+    @Param({"1024", "4096", "16384"})
+    private int payloadSize;
+
+    private final Lz4Codec codec = new Lz4Codec();
+
+    private UnsafeBuffer payload;
+    private UnsafeBuffer compressed;
+    private UnsafeBuffer decompressed;
+    private int compressedLength;
+
+    @Setup
+    public void setup() {
+        StringBuilder builder = new StringBuilder(payloadSize + RECORD.length());
+        for (int i = 0; builder.length() < payloadSize; i++) {
+            builder.append(String.format(RECORD, 100_000 + i, 60_000 + i * 7 % 1000, i % 100, 1 + i % 50));
+        }
+        byte[] bytes = builder.substring(0, payloadSize).getBytes(StandardCharsets.US_ASCII);
+        payload = new UnsafeBuffer(ByteBuffer.allocateDirect(payloadSize));
+        payload.putBytes(0, bytes);
+        compressed = new UnsafeBuffer(ByteBuffer.allocateDirect(Lz4Codec.maxCompressedLength(payloadSize)));
+        decompressed = new UnsafeBuffer(ByteBuffer.allocateDirect(payloadSize));
+        compressedLength = codec.compress(payload, 0, payloadSize, compressed, 0);
+        System.out.printf("%npayload: %d bytes, compressed: %d bytes%n", payloadSize, compressedLength);
+    }
+
+    @Benchmark
+    public int compress() {
+        return codec.compress(payload, 0, payloadSize, compressed, 0);
+    }
+
+    @Benchmark
+    public int decompress() {
+        return codec.decompress(compressed, 0, compressedLength, decompressed, 0);
+    }
+}
@@ -0,0 +1,130 @@
+package com.cdf.aeron.benchmarks;
+
+import com.cdf.aeron.common.help.DefaultErrorHandler;
+import com.cdf.aeron.rpc.Constants;
+import com.cdf.aeron.rpc.RpcConfig;
+import com.cdf.aeron.rpc.Transport;
+import com.cdf.aeron.rpc.client.CallFailure;
+import com.cdf.aeron.rpc.client.ClientAgent;
+import com.cdf.aeron.rpc.client.RpcCallback;
+import com.cdf.aeron.rpc.server.FlushPolicy;
+import com.cdf.aeron.rpc.server.ServerAgent;
+import com.cdf.aeron.rpc.service.Methods;
+import com.cdf.aeron.rpc.service.ServiceRegistry;
+import io.aeron.Aeron;
+import io.aeron.CommonContext;
+import io.aeron.driver.MediaDriver;
+import io.aeron.driver.ThreadingMode;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.AgentRunner;
+import org.agrona.concurrent.BusySpinIdleStrategy;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.agrona.CloseHelper.quietClose;
+
+/**
+ * client -> server -> client 的完整往返，同一进程内嵌 MediaDriver，server 跑在自己的 AgentRunner 上，
+ * client 的 doWork 由 benchmark 线程驱动。
+ * <p>
+ * 每次调用先把在途窗口补满，再等到至少一个响应返回：{@code window = 1} 时测的是单个请求的往返延迟，
+ * 窗口越大越接近流水线下的吞吐。ops 即完成的请求数（含失败，失败数单独统计在 {@link #failures}）。
+ * <p>
+ * 注意 UDP 模式下 server 监听的是 {@link RpcConfig#serverEndpoint()}，运行时不能同时启动 RpcServer
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dlog4j2.configurationFile=log4j2-benchmarks.xml"})
+@State(Scope.Thread)
+public class RoundTripBenchmark {
+
+    @Param({"UDP", "IPC"})
+    private Transport transport;
+
+    // 4096 超过默认 MTU，会走分片和重组
+    @Param({"16", "240", "4096"})
+    private int payloadSize;
+
+    @Param({"1", "16"})
+    private int fragmentLimit;
+
+    @Param({"1", "64"})
+    private int window;
+
+    private MediaDriver mediaDriver;
+    private Aeron aeron;
+    private AgentRunner serverRunner;
+    private ClientAgent clientAgent;
+    private UnsafeBuffer payload;
+    private RpcCallback callback;
+
+    private long completed;
+    private long failures;
+
+    @Setup
+    public void setup() {
+        mediaDriver = MediaDriver.launchEmbedded(new MediaDriver.Context()
+                .aeronDirectoryName(CommonContext.generateRandomDirName())
+                .threadingMode(ThreadingMode.DEDICATED)
+                .dirDeleteOnStart(true)
+                .dirDeleteOnShutdown(true));
+        aeron = Aeron.connect(new Aeron.Context().aeronDirectoryName(mediaDriver.aeronDirectoryName()));
+
+        RpcConfig config = RpcConfig.load().withTransport(transport);
+        ServerAgent serverAgent = new ServerAgent(aeron, ServiceRegistry.withDefaults(), config,
+                Constants.RPC_STREAM, fragmentLimit, FlushPolicy.END_OF_POLL, null);
+        serverRunner = new AgentRunner(new BusySpinIdleStrategy(), DefaultErrorHandler.INSTANCE, null, serverAgent);
+        AgentRunner.startOnThread(serverRunner);
+
+        clientAgent = new ClientAgent(aeron, config, Constants.RPC_STREAM, Math.max(window, 1),
+                Constants.REQUEST_TIMEOUT_NS, fragmentLimit);
+        clientAgent.onStart();
+        while (!clientAgent.isReady()) {
+            clientAgent.doWork();
+        }
+
+        payload = new UnsafeBuffer(ByteBuffer.allocateDirect(payloadSize));
+        payload.setMemory(0, payloadSize, (byte) 'a');
+        callback = new RpcCallback() {
+            @Override
+            public void onResponse(long id, DirectBuffer buffer, int offset, int length) {
+                completed++;
+            }
+
+            @Override
+            public void onFailure(long id, CallFailure failure) {
+                completed++;
+                failures++;
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        quietClose(clientAgent::onClose);
+        quietClose(serverRunner);
+        quietClose(aeron);
+        quietClose(mediaDriver);
+    }
+
+    @Benchmark
+    public long roundTrip() {
+        while (clientAgent.inFlight() < window &&
+                clientAgent.call(Methods.ECHO, payload, 0, payloadSize, callback) != ClientAgent.NULL_CALL_ID) {
+            // 补满窗口
+        }
+        long target = completed + 1;
+        while (completed < target) {
+            clientAgent.doWork();
+        }
+        return failures;
+    }
+}
@@ -0,0 +1,130 @@
+package com.cdf.aeron.benchmarks;
+
+import com.cdf.aeron.rpc.RpcConfig;
+import com.cdf.aeron.rpc.metrics.ServerCounters;
+import com.cdf.aeron.rpc.sbe.HeaderEncoder;
+import com.cdf.aeron.rpc.sbe.MyConnectEncoder;
+import com.cdf.aeron.rpc.sbe.MyRequestEncoder;
+import com.cdf.aeron.rpc.server.FlushPolicy;
+import com.cdf.aeron.rpc.server.ServerAdapter;
+import com.cdf.aeron.rpc.server.ServerSession;
+import com.cdf.aeron.rpc.service.Methods;
+import com.cdf.aeron.rpc.service.ServiceRegistry;
+import io.aeron.Aeron;
+import io.aeron.CommonContext;
+import io.aeron.Subscription;
+import io.aeron.driver.MediaDriver;
+import io.aeron.driver.ThreadingMode;
+import io.aeron.logbuffer.FragmentHandler;
+import io.aeron.logbuffer.Header;
+import io.aeron.protocol.DataHeaderFlyweight;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.agrona.CloseHelper.quietClose;
+
+/**
+ * server 分发一个请求的开销：解码、查 handler、执行、编码响应并写入响应 publication。
+ * <p>
+ * 不经过请求 subscription，直接把伪造的 Aeron 帧交给 {@link ServerAdapter#onFragment}；
+ * 响应走 IPC，每次调用后由同一线程取走，避免 publication 被背压。
+ * 加上 {@code -prof gc} 运行时，{@code gc.alloc.rate.norm} 应为 0
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dlog4j2.configurationFile=log4j2-benchmarks.xml"})
+@State(Scope.Thread)
+public class ServerAdapterBenchmark {
+    private static final int SESSION_ID = 42;
+    private static final int RESPONSE_STREAM = 1001;
+    private static final String RESPONSE_CHANNEL = "aeron:ipc";
+    private static final int MESSAGE_OFFSET = DataHeaderFlyweight.HEADER_LENGTH;
+    private static final FragmentHandler NOOP_HANDLER = (buffer, offset, length, header) -> {
+    };
+
+    @Param({"16", "240"})
+    private int payloadSize;
+
+    @Param({"IMMEDIATE", "END_OF_POLL"})
+    private FlushPolicy flushPolicy;
+
+    private MediaDriver mediaDriver;
+    private Aeron aeron;
+    private ServerCounters counters;
+    private ServerAdapter serverAdapter;
+    private Subscription responseSubscription;
+    private UnsafeBuffer frameBuffer;
+    private Header header;
+    private int requestLength;
+
+    @Setup
+    public void setup() {
+        mediaDriver = MediaDriver.launchEmbedded(new MediaDriver.Context()
+                .aeronDirectoryName(CommonContext.generateRandomDirName())
+                .threadingMode(ThreadingMode.SHARED)
+                .dirDeleteOnStart(true)
+                .dirDeleteOnShutdown(true));
+        aeron = Aeron.connect(new Aeron.Context().aeronDirectoryName(mediaDriver.aeronDirectoryName()));
+        counters = new ServerCounters(aeron, RESPONSE_STREAM);
+        serverAdapter = new ServerAdapter(aeron, RpcConfig.load(), ServiceRegistry.withDefaults(), flushPolicy,
+                null, counters);
+        responseSubscription = aeron.addSubscription(RESPONSE_CHANNEL, RESPONSE_STREAM);
+
+        // 伪造一个 Aeron 数据帧，server 只从 header 中读 sessionId
+        frameBuffer = new UnsafeBuffer(ByteBuffer.allocateDirect(1024));
+        frameBuffer.putInt(DataHeaderFlyweight.SESSION_ID_FIELD_OFFSET, SESSION_ID, ByteOrder.LITTLE_ENDIAN);
+        header = new Header(0, 0);
+        header.buffer(frameBuffer);
+        header.offset(0);
+
+        HeaderEncoder headerEncoder = new HeaderEncoder();
+        MyConnectEncoder connectEncoder = new MyConnectEncoder();
+        connectEncoder.wrapAndApplyHeader(frameBuffer, MESSAGE_OFFSET, headerEncoder)
+                .streamId(RESPONSE_STREAM)
+                .channel(RESPONSE_CHANNEL);
+        serverAdapter.onFragment(frameBuffer, MESSAGE_OFFSET,
+                HeaderEncoder.ENCODED_LENGTH + connectEncoder.encodedLength(),
+                header);
+        ServerSession session;
+        while ((session = serverAdapter.session(SESSION_ID)) == null || !session.isActive()) {
+            serverAdapter.doSessionWork();
+            Thread.onSpinWait();
+        }
+
+        // 之后每次调用都复用同一个请求帧
+        byte[] bytes = new byte[payloadSize];
+        Arrays.fill(bytes, (byte) 'a');
+        MyRequestEncoder requestEncoder = new MyRequestEncoder();
+        requestEncoder.wrapAndApplyHeader(frameBuffer, MESSAGE_OFFSET, headerEncoder)
+                .id(1)
+                .methodId(Methods.ECHO)
+                .putReq(new UnsafeBuffer(bytes), 0, payloadSize);
+        requestLength = HeaderEncoder.ENCODED_LENGTH + requestEncoder.encodedLength();
+    }
+
+    @TearDown
+    public void tearDown() {
+        serverAdapter.onClose();
+        quietClose(responseSubscription);
+        quietClose(counters);
+        quietClose(aeron);
+        quietClose(mediaDriver);
+    }
+
+    @Benchmark
+    public int dispatch() {
+        serverAdapter.onFragment(frameBuffer, MESSAGE_OFFSET, requestLength, header);
+        int workCount = serverAdapter.flush();
+        return workCount + responseSubscription.poll(NOOP_HANDLER, Integer.MAX_VALUE);
+    }
+}
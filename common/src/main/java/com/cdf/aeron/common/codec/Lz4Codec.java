@@ -0,0 +1,231 @@
+package com.cdf.aeron.common.codec;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.agrona.BitUtil.SIZE_OF_INT;
+
+/**
+ * 纯 Java 的 LZ4 block 格式压缩，直接在 DirectBuffer 之间进行，不经过 byte[] 或 String，不引入 native 依赖。
+ * 压缩结果为 {@code [原始长度: int32 LE][LZ4 block]}，block 与标准 LZ4 兼容，解压时据原始长度预先准备目标空间。
+ * <p>
+ * 压缩用单个哈希表做贪心匹配（与 LZ4 的 fast 模式相同），连续找不到匹配时加大步长，不可压缩的数据很快扫过。
+ * 哈希表是实例字段，复用不产生垃圾，因此实例不是线程安全的，每个线程一个
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public final class Lz4Codec {
+    /**
+     * 压缩后不比原始数据小，或者解压时数据不合法
+     */
+    public static final int NOT_COMPRESSED = -1;
+
+    private static final int MIN_MATCH = 4;
+    // 最后 5 个字节必须是字面量，最后一个匹配必须在结尾 12 个字节之前开始
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MIN_LENGTH = MF_LIMIT + 1;
+    private static final int MAX_DISTANCE = 65535;
+    private static final int HASH_LOG = 12;
+    // 每 64 次没找到匹配，步长加一
+    private static final int SKIP_STRENGTH = 6;
+    private static final int RUN_MASK = 15;
+    private static final int ML_MASK = 15;
+
+    private final int[] hashTable = new int[1 << HASH_LOG];
+
+    /**
+     * @return 压缩 length 字节最多需要的目标空间，含原始长度前缀
+     */
+    public static int maxCompressedLength(int length) {
+        return SIZE_OF_INT + length + length / 255 + 16;
+    }
+
+    /**
+     * 压缩到 dst，dst 从 dstOffset 起至少要有 {@link #maxCompressedLength} 字节
+     *
+     * @return 压缩后的字节数，不比原始数据小时返回 {@link #NOT_COMPRESSED}，此时应发送原始数据
+     */
+    public int compress(DirectBuffer src, int srcOffset, int srcLength, MutableDirectBuffer dst, int dstOffset) {
+        dst.putInt(dstOffset, srcLength, ByteOrder.LITTLE_ENDIAN);
+        int srcEnd = srcOffset + srcLength;
+        int anchor = srcOffset;
+        int dp = dstOffset + SIZE_OF_INT;
+        if (srcLength >= MIN_LENGTH) {
+            Arrays.fill(hashTable, -1);
+            int matchLimit = srcEnd - LAST_LITERALS;
+            int mfLimit = srcEnd - MF_LIMIT;
+            int sp = srcOffset;
+            int searchCount = 1 << SKIP_STRENGTH;
+            while (sp < mfLimit) {
+                int sequence = src.getInt(sp);
+                int hash = hash(sequence);
+                int ref = hashTable[hash];
+                hashTable[hash] = sp;
+                if (ref < 0 || sp - ref > MAX_DISTANCE || src.getInt(ref) != sequence) {
+                    sp += searchCount++ >>> SKIP_STRENGTH;
+                    continue;
+                }
+                searchCount = 1 << SKIP_STRENGTH;
+                // 向前扩展匹配
+                while (sp > anchor && ref > srcOffset && src.getByte(sp - 1) == src.getByte(ref - 1)) {
+                    sp--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (sp + matchLength < matchLimit && src.getByte(sp + matchLength) == src.getByte(ref + matchLength)) {
+                    matchLength++;
+                }
+                dp = writeSequence(src, anchor, sp - anchor, sp - ref, matchLength, dst, dp);
+                sp += matchLength;
+                anchor = sp;
+            }
+        }
+        dp = writeLastLiterals(src, anchor, srcEnd - anchor, dst, dp);
+        int compressedLength = dp - dstOffset;
+        return compressedLength < srcLength ? compressedLength : NOT_COMPRESSED;
+    }
+
+    /**
+     * @return 压缩数据的原始长度，与压缩数据的长度明显不符时返回 {@link #NOT_COMPRESSED}，避免按伪造的长度分配空间
+     */
+    public static int decompressedLength(DirectBuffer src, int srcOffset, int srcLength) {
+        if (srcLength < SIZE_OF_INT + 1) {
+            return NOT_COMPRESSED;
+        }
+        int length = src.getInt(srcOffset, ByteOrder.LITTLE_ENDIAN);
+        // LZ4 的压缩比不会超过 255:1
+        if (length < 0 || length > (long) (srcLength - SIZE_OF_INT) * 255) {
+            return NOT_COMPRESSED;
+        }
+        return length;
+    }
+
+    /**
+     * 解压到 dst，dst 从 dstOffset 起至少要有 {@link #decompressedLength} 字节，越界的引用和长度都视为数据不合法
+     *
+     * @return 解压后的字节数，数据不合法时返回 {@link #NOT_COMPRESSED}
+     */
+    public int decompress(DirectBuffer src, int srcOffset, int srcLength, MutableDirectBuffer dst, int dstOffset) {
+        int dstLength = decompressedLength(src, srcOffset, srcLength);
+        if (dstLength == NOT_COMPRESSED) {
+            return NOT_COMPRESSED;
+        }
+        int sp = srcOffset + SIZE_OF_INT;
+        int srcEnd = srcOffset + srcLength;
+        int dp = dstOffset;
+        int dstEnd = dstOffset + dstLength;
+        while (sp < srcEnd) {
+            int token = src.getByte(sp++) & 0xFF;
+            int literalLength = token >>> 4;
+            if (literalLength == RUN_MASK) {
+                int b;
+                do {
+                    if (sp >= srcEnd) {
+                        return NOT_COMPRESSED;
+                    }
+                    b = src.getByte(sp++) & 0xFF;
+                    literalLength += b;
+                    // 一长串 0xFF 会让累加的长度溢出为负数，超出目标空间时立即放弃
+                    if (literalLength > dstEnd - dp) {
+                        return NOT_COMPRESSED;
+                    }
+                } while (b == 255);
+            }
+            if (literalLength > srcEnd - sp || literalLength > dstEnd - dp) {
+                return NOT_COMPRESSED;
+            }
+            dst.putBytes(dp, src, sp, literalLength);
+            sp += literalLength;
+            dp += literalLength;
+            if (sp == srcEnd) {
+                // 最后一个 sequence 只有字面量
+                return dp == dstEnd ? dstLength : NOT_COMPRESSED;
+            }
+            if (srcEnd - sp < 2) {
+                return NOT_COMPRESSED;
+            }
+            int distance = (src.getByte(sp) & 0xFF) | (src.getByte(sp + 1) & 0xFF) << 8;
+            sp += 2;
+            if (distance == 0 || distance > dp - dstOffset) {
+                return NOT_COMPRESSED;
+            }
+            int matchLength = token & ML_MASK;
+            if (matchLength == ML_MASK) {
+                int b;
+                do {
+                    if (sp >= srcEnd) {
+                        return NOT_COMPRESSED;
+                    }
+                    b = src.getByte(sp++) & 0xFF;
+                    matchLength += b;
+                    if (matchLength > dstEnd - dp - MIN_MATCH) {
+                        return NOT_COMPRESSED;
+                    }
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            if (matchLength > dstEnd - dp) {
+                return NOT_COMPRESSED;
+            }
+            int ref = dp - distance;
+            if (distance >= matchLength) {
+                dst.putBytes(dp, dst, ref, matchLength);
+            } else {
+                // 重叠的匹配（如重复的短模式）只能逐字节拷贝
+                for (int i = 0; i < matchLength; i++) {
+                    dst.putByte(dp + i, dst.getByte(ref + i));
+                }
+            }
+            dp += matchLength;
+        }
+        return NOT_COMPRESSED;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int writeSequence(DirectBuffer src, int literalOffset, int literalLength, int distance,
+                                     int matchLength, MutableDirectBuffer dst, int dp) {
+        int tokenPosition = dp++;
+        int matchCode = matchLength - MIN_MATCH;
+        int token = Math.min(literalLength, RUN_MASK) << 4 | Math.min(matchCode, ML_MASK);
+        dst.putByte(tokenPosition, (byte) token);
+        if (literalLength >= RUN_MASK) {
+            dp = writeLength(literalLength - RUN_MASK, dst, dp);
+        }
+        dst.putBytes(dp, src, literalOffset, literalLength);
+        dp += literalLength;
+        dst.putByte(dp++, (byte) distance);
+        dst.putByte(dp++, (byte) (distance >>> 8));
+        if (matchCode >= ML_MASK) {
+            dp = writeLength(matchCode - ML_MASK, dst, dp);
+        }
+        return dp;
+    }
+
+    private static int writeLastLiterals(DirectBuffer src, int literalOffset, int literalLength,
+                                         MutableDirectBuffer dst, int dp) {
+        dst.putByte(dp++, (byte) (Math.min(literalLength, RUN_MASK) << 4));
+        if (literalLength >= RUN_MASK) {
+            dp = writeLength(literalLength - RUN_MASK, dst, dp);
+        }
+        dst.putBytes(dp, src, literalOffset, literalLength);
+        return dp + literalLength;
+    }
+
+    private static int writeLength(int length, MutableDirectBuffer dst, int dp) {
+        int remaining = length;
+        while (remaining >= 255) {
+            dst.putByte(dp++, (byte) 255);
+            remaining -= 255;
+        }
+        dst.putByte(dp++, (byte) remaining);
+        return dp;
+    }
+}
@@ -0,0 +1,214 @@
+package com.cdf.aeron.common.diagnostics;
+
+import com.cdf.aeron.common.help.DefaultErrorHandler;
+import io.aeron.AeronCounters;
+import io.aeron.CncFileDescriptor;
+import io.aeron.driver.reports.LossReportReader;
+import io.aeron.driver.reports.LossReportUtil;
+import io.aeron.status.ChannelEndpointStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.IoUtil;
+import org.agrona.concurrent.Agent;
+import org.agrona.concurrent.AgentRunner;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.SleepingMillisIdleStrategy;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.errors.ErrorLogReader;
+import org.agrona.concurrent.status.CountersReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * 进程内的 Aeron 诊断信息，不 fork lsof、tree 之类的外部进程：直接只读映射 MediaDriver 目录下的 CnC 文件和 loss report，
+ * 用 Agrona 的 reader 读取 channel/socket 状态计数器、error log 和丢包记录，再列出目录下的文件。
+ * <p>
+ * 读取和打日志都在一个低优先级的 daemon 线程上进行，agent 线程只调用 {@link #requestSnapshot}，不阻塞 duty cycle；
+ * 短时间内的多次请求合并为一次。此外每隔 {@link #ERROR_CHECK_INTERVAL_MS} 检查一次 error log，打印新出现的错误。
+ * 同一个 MediaDriver 目录在进程内共用一个实例，见 {@link #forDirectory}
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@Slf4j
+public final class AeronDiagnostics implements Agent {
+    public static final long ERROR_CHECK_INTERVAL_MS = TimeUnit.SECONDS.toMillis(1L);
+    private static final Map<String, AeronDiagnostics> INSTANCES = new ConcurrentHashMap<>();
+
+    private final String aeronDirectoryName;
+    // 待处理的快照请求的原因，多次请求只保留最后一个
+    private final AtomicReference<String> pendingReason;
+
+    private long nextErrorCheckMs;
+    // 只打印这个时间之后出现过的错误
+    private long lastErrorTimestamp;
+
+    private AeronDiagnostics(String aeronDirectoryName) {
+        this.aeronDirectoryName = aeronDirectoryName;
+        this.pendingReason = new AtomicReference<>();
+    }
+
+    /**
+     * 返回该 MediaDriver 目录的诊断实例，第一次调用时启动它的线程，应在 agent 的构造函数或 onStart 中获取
+     */
+    public static AeronDiagnostics forDirectory(String aeronDirectoryName) {
+        return INSTANCES.computeIfAbsent(aeronDirectoryName, dir -> {
+            AeronDiagnostics diagnostics = new AeronDiagnostics(dir);
+            AgentRunner runner = new AgentRunner(new SleepingMillisIdleStrategy(10L), DefaultErrorHandler.INSTANCE,
+                    null, diagnostics);
+            AgentRunner.startOnThread(runner, r -> {
+                Thread thread = new Thread(r);
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+            return diagnostics;
+        });
+    }
+
+    /**
+     * 请求打印一次诊断快照，线程安全，不阻塞，可以在 agent 线程上调用
+     *
+     * @param reason 触发快照的事件，打印在快照的开头
+     */
+    public void requestSnapshot(String reason) {
+        pendingReason.lazySet(reason);
+    }
+
+    @Override
+    public int doWork() {
+        int workCount = 0;
+        String reason = pendingReason.getAndSet(null);
+        if (reason != null) {
+            snapshot(reason);
+            workCount++;
+        }
+        long nowMs = System.currentTimeMillis();
+        if (nowMs >= nextErrorCheckMs) {
+            workCount += withCnc((counters, errorLog) -> reportErrors(errorLog));
+            nextErrorCheckMs = nowMs + ERROR_CHECK_INTERVAL_MS;
+        }
+        return workCount;
+    }
+
+    @Override
+    public String roleName() {
+        return "aeron-diagnostics";
+    }
+
+    private void snapshot(String reason) {
+        log.info("aeron diagnostics, reason: {}, dir: {}", reason, aeronDirectoryName);
+        withCnc((counters, errorLog) -> reportChannels(counters) + reportErrors(errorLog));
+        reportLosses();
+        reportFiles();
+    }
+
+    /**
+     * 各 channel 的状态和实际绑定的 socket 地址，相当于 lsof -iUDP 看到的内容
+     */
+    private int reportChannels(CountersReader counters) {
+        int[] count = new int[1];
+        counters.forEach((counterId, typeId, keyBuffer, label) -> {
+            if (typeId == AeronCounters.DRIVER_SEND_CHANNEL_STATUS_TYPE_ID ||
+                    typeId == AeronCounters.DRIVER_RECEIVE_CHANNEL_STATUS_TYPE_ID) {
+                log.info("  {}: {}", label, ChannelEndpointStatus.status(counters.getCounterValue(counterId)));
+                count[0]++;
+            } else if (typeId == AeronCounters.DRIVER_LOCAL_SOCKET_ADDRESS_STATUS_TYPE_ID) {
+                log.info("  {}", label);
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    private int reportErrors(AtomicBuffer errorLog) {
+        long since = lastErrorTimestamp;
+        return ErrorLogReader.read(errorLog, (observationCount, firstObservationTimestamp, lastObservationTimestamp,
+                                              encodedException) -> {
+            lastErrorTimestamp = Math.max(lastErrorTimestamp, lastObservationTimestamp + 1);
+            log.warn("aeron error, observations: {}, first: {}, last: {}, dir: {}\n{}", observationCount,
+                    firstObservationTimestamp, lastObservationTimestamp, aeronDirectoryName, encodedException);
+        }, since);
+    }
+
+    private void reportLosses() {
+        File lossReportFile = new File(aeronDirectoryName, LossReportUtil.LOSS_REPORT_FILE_NAME);
+        if (!lossReportFile.exists()) {
+            return;
+        }
+        MappedByteBuffer mappedBuffer = IoUtil.mapExistingFile(lossReportFile, FileChannel.MapMode.READ_ONLY,
+                "loss report");
+        try {
+            int entries = LossReportReader.read(new UnsafeBuffer(mappedBuffer),
+                    (observationCount, totalBytesLost, firstObservationTimestamp, lastObservationTimestamp, sessionId,
+                     streamId, channel, source) -> log.warn("  loss, observations: {}, bytes lost: {}, " +
+                                    "sessionId: {}, streamId: {}, channel: {}, source: {}", observationCount,
+                            totalBytesLost, sessionId, streamId, channel, source));
+            if (entries == 0) {
+                log.info("  no loss");
+            }
+        } finally {
+            IoUtil.unmap(mappedBuffer);
+        }
+    }
+
+    /**
+     * MediaDriver 目录下的文件及大小，相当于 tree 看到的内容
+     */
+    private void reportFiles() {
+        Path dir = Path.of(aeronDirectoryName);
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.filter(Files::isRegularFile).forEach(path -> log.info("  {} ({} bytes)", dir.relativize(path),
+                    path.toFile().length()));
+        } catch (IOException e) {
+            log.warn("failed to list aeron dir: {}", aeronDirectoryName, e);
+        }
+    }
+
+    /**
+     * 只读映射 CnC 文件，读完立即解除映射，MediaDriver 关闭并删除目录后不会持有已删除的文件
+     *
+     * @return reader 的返回值，CnC 文件不存在或版本不兼容时返回 0
+     */
+    private int withCnc(CncReader reader) {
+        File cncFile = new File(aeronDirectoryName, CncFileDescriptor.CNC_FILE);
+        if (!cncFile.exists()) {
+            return 0;
+        }
+        MappedByteBuffer cncByteBuffer = IoUtil.mapExistingFile(cncFile, FileChannel.MapMode.READ_ONLY, "cnc");
+        try {
+            UnsafeBuffer metaData = CncFileDescriptor.createMetaDataBuffer(cncByteBuffer);
+            int cncVersion = metaData.getIntVolatile(CncFileDescriptor.cncVersionOffset(0));
+            if (cncVersion == 0) {
+                // MediaDriver 还在初始化
+                return 0;
+            }
+            CncFileDescriptor.checkVersion(cncVersion);
+            CountersReader counters = new CountersReader(
+                    CncFileDescriptor.createCountersMetaDataBuffer(cncByteBuffer, metaData),
+                    CncFileDescriptor.createCountersValuesBuffer(cncByteBuffer, metaData),
+                    StandardCharsets.US_ASCII);
+            return reader.read(counters, CncFileDescriptor.createErrorLogBuffer(cncByteBuffer, metaData));
+        } catch (RuntimeException e) {
+            log.warn("failed to read cnc file: {}", cncFile, e);
+            return 0;
+        } finally {
+            IoUtil.unmap(cncByteBuffer);
+        }
+    }
+
+    @FunctionalInterface
+    private interface CncReader {
+        int read(CountersReader counters, AtomicBuffer errorLog);
+    }
+}
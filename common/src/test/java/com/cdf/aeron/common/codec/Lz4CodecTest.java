@@ -0,0 +1,274 @@
+package com.cdf.aeron.common.codec;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Lz4Codec 的压缩/解压往返，以及解压对不合法数据的处理：解压的输入来自网络，任何输入都只能返回
+ * {@link Lz4Codec#NOT_COMPRESSED}，不能抛出越界异常。不合法的数据按 LZ4 block 格式手工构造
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+class Lz4CodecTest {
+    private static final int MAX_DISTANCE = 65535;
+
+    private final Lz4Codec codec = new Lz4Codec();
+    private final Random random = new Random(42);
+
+    @Test
+    void emptyInputIsNotCompressedAndEmptyBlockDecodes() {
+        assertNull(compress(new byte[0]));
+        assertArrayEquals(new byte[0], decompress(lastLiteralsBlock(new byte[0])));
+    }
+
+    @Test
+    void inputsShorterThanMinLengthAreNotCompressed() {
+        for (int length = 1; length < 13; length++) {
+            byte[] data = new byte[length];
+            assertNull(compress(data), "length " + length);
+            // 对端仍可能发来只有字面量的 block
+            assertArrayEquals(data, decompress(lastLiteralsBlock(data)), "length " + length);
+        }
+    }
+
+    @Test
+    void incompressibleDataIsNotCompressed() {
+        assertNull(compress(randomBytes(4096)));
+    }
+
+    @Test
+    void literalAndMatchRunsRoundTrip() {
+        // 15 和 270 以上的长度需要额外的长度字节，270 以上至少一个 255
+        int[] lengths = {15, 16, 269, 270, 271, 1000};
+        for (int literalLength : lengths) {
+            for (int matchLength : lengths) {
+                byte[] data = new byte[literalLength + matchLength + 16];
+                byte[] literals = randomBytes(literalLength);
+                System.arraycopy(literals, 0, data, 0, literalLength);
+                // 从开头重复，距离为 literalLength，matchLength 更长时为重叠的匹配
+                for (int i = 0; i < matchLength; i++) {
+                    data[literalLength + i] = data[i % literalLength];
+                }
+                System.arraycopy(randomBytes(16), 0, data, literalLength + matchLength, 16);
+                assertRoundTrip(data, "literal " + literalLength + " match " + matchLength);
+            }
+        }
+    }
+
+    @Test
+    void overlappingMatchesRoundTrip() {
+        assertRoundTrip(new byte[10_000], "distance 1");
+        byte[] pattern = new byte[3000];
+        for (int i = 0; i < pattern.length; i++) {
+            pattern[i] = (byte) "abc".charAt(i % 3);
+        }
+        assertRoundTrip(pattern, "distance 3");
+    }
+
+    @Test
+    void matchesAtMaxDistanceRoundTrip() {
+        for (int distance = MAX_DISTANCE - 1; distance <= MAX_DISTANCE + 1; distance++) {
+            // 随机的 64 字节在 distance 之后重复一次，中间填 0
+            byte[] data = new byte[distance + 64 + 16];
+            byte[] block = randomBytes(64);
+            System.arraycopy(block, 0, data, 0, 64);
+            System.arraycopy(block, 0, data, distance, 64);
+            assertRoundTrip(data, "distance " + distance);
+        }
+    }
+
+    @Test
+    void decodesHandWrittenMatchAtMaxDistance() {
+        byte[] literals = randomBytes(MAX_DISTANCE);
+        UnsafeBuffer block = new UnsafeBuffer(new byte[MAX_DISTANCE + 1024]);
+        int dp = SIZE_OF_INT;
+        dp = sequence(block, dp, literals, MAX_DISTANCE, 100);
+        dp = lastLiterals(block, dp, new byte[5]);
+        block.putInt(0, MAX_DISTANCE + 105, ByteOrder.LITTLE_ENDIAN);
+
+        byte[] expected = Arrays.copyOf(literals, MAX_DISTANCE + 105);
+        System.arraycopy(literals, 0, expected, MAX_DISTANCE, 100);
+        assertArrayEquals(expected, decompress(Arrays.copyOf(block.byteArray(), dp)));
+    }
+
+    @Test
+    void truncatedBlocksAreRejected() {
+        byte[] data = new byte[2000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 300 < 200 ? 'x' : i);
+        }
+        byte[] compressed = compress(data);
+        assertNotNull(compressed);
+        // 截断在任意位置：token、扩展长度、字面量、距离中间
+        for (int length = 0; length < compressed.length; length++) {
+            assertRejected(Arrays.copyOf(compressed, length), "truncated to " + length);
+        }
+    }
+
+    @Test
+    void truncatedLengthIsRejected() {
+        assertRejected(block(300, 0xF0, 0xFF), "literal length");
+        assertRejected(block(300, 0x1F, 'a', 1, 0, 0xFF), "match length");
+    }
+
+    @Test
+    void zeroDistanceIsRejected() {
+        assertRejected(block(13, 0x40, 'a', 'b', 'c', 'd', 0, 0, 0x50, 1, 2, 3, 4, 5), "zero distance");
+    }
+
+    @Test
+    void distancePastStartIsRejected() {
+        assertRejected(block(13, 0x40, 'a', 'b', 'c', 'd', 5, 0, 0x50, 1, 2, 3, 4, 5), "distance 5 after 4 bytes");
+        assertRejected(block(8, 0x00, 1, 0, 0x40, 1, 2, 3, 4), "match before any literal");
+    }
+
+    @Test
+    void forgedLengthPrefixIsRejected() {
+        byte[] data = new byte[1000];
+        byte[] compressed = compress(data);
+        int length = data.length;
+        for (int forged : new int[]{length - 1, length + 1, 0, -1, Integer.MAX_VALUE}) {
+            byte[] copy = compressed.clone();
+            new UnsafeBuffer(copy).putInt(0, forged, ByteOrder.LITTLE_ENDIAN);
+            assertRejected(copy, "forged length " + forged);
+        }
+    }
+
+    @Test
+    void trailingGarbageIsRejected() {
+        byte[] compressed = compress(new byte[1000]);
+        for (int extra = 1; extra <= 8; extra++) {
+            byte[] garbage = Arrays.copyOf(compressed, compressed.length + extra);
+            Arrays.fill(garbage, compressed.length, garbage.length, (byte) 1);
+            assertRejected(garbage, "extra " + extra);
+        }
+    }
+
+    @Test
+    void overflowingLiteralLengthIsRejected() {
+        // 255 * 9M 超过 int 的范围，累加的长度溢出为负数，最后一个字节结束长度
+        byte[] block = new byte[SIZE_OF_INT + 1 + 9_000_000];
+        new UnsafeBuffer(block).putInt(0, 1000, ByteOrder.LITTLE_ENDIAN);
+        block[SIZE_OF_INT] = (byte) 0xF0;
+        Arrays.fill(block, SIZE_OF_INT + 1, block.length - 1, (byte) 0xFF);
+        assertRejected(block, "literal length overflow");
+    }
+
+    @Test
+    void overflowingMatchLengthIsRejected() {
+        int header = SIZE_OF_INT + 1 + 4 + 2;
+        byte[] block = new byte[header + 9_000_000];
+        UnsafeBuffer buffer = new UnsafeBuffer(block);
+        buffer.putInt(0, 1000, ByteOrder.LITTLE_ENDIAN);
+        block[SIZE_OF_INT] = 0x4F;
+        block[SIZE_OF_INT + 5] = 1;
+        Arrays.fill(block, header, block.length - 1, (byte) 0xFF);
+        assertRejected(block, "match length overflow");
+    }
+
+    private void assertRoundTrip(byte[] data, String message) {
+        byte[] compressed = compress(data);
+        assertNotNull(compressed, message);
+        assertArrayEquals(data, decompress(compressed), message);
+    }
+
+    private void assertRejected(byte[] block, String message) {
+        UnsafeBuffer src = new UnsafeBuffer(block);
+        int length = Lz4Codec.decompressedLength(src, 0, block.length);
+        if (length != Lz4Codec.NOT_COMPRESSED) {
+            assertEquals(Lz4Codec.NOT_COMPRESSED,
+                    codec.decompress(src, 0, block.length, new UnsafeBuffer(new byte[length]), 0), message);
+        }
+    }
+
+    /**
+     * @return 压缩后的字节，不比原始数据小时返回 null
+     */
+    private byte[] compress(byte[] data) {
+        UnsafeBuffer dst = new UnsafeBuffer(new byte[Lz4Codec.maxCompressedLength(data.length)]);
+        int length = codec.compress(new UnsafeBuffer(data), 0, data.length, dst, 0);
+        if (length == Lz4Codec.NOT_COMPRESSED) {
+            return null;
+        }
+        return Arrays.copyOf(dst.byteArray(), length);
+    }
+
+    private byte[] decompress(byte[] block) {
+        UnsafeBuffer src = new UnsafeBuffer(block);
+        int length = Lz4Codec.decompressedLength(src, 0, block.length);
+        assertNotEquals(Lz4Codec.NOT_COMPRESSED, length);
+        byte[] data = new byte[length];
+        assertEquals(length, codec.decompress(src, 0, block.length, new UnsafeBuffer(data), 0));
+        return data;
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] block(int length, int... bytes) {
+        byte[] block = new byte[SIZE_OF_INT + bytes.length];
+        new UnsafeBuffer(block).putInt(0, length, ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < bytes.length; i++) {
+            block[SIZE_OF_INT + i] = (byte) bytes[i];
+        }
+        return block;
+    }
+
+    private static byte[] lastLiteralsBlock(byte[] literals) {
+        UnsafeBuffer block = new UnsafeBuffer(new byte[Lz4Codec.maxCompressedLength(literals.length)]);
+        block.putInt(0, literals.length, ByteOrder.LITTLE_ENDIAN);
+        int length = lastLiterals(block, SIZE_OF_INT, literals);
+        return Arrays.copyOf(block.byteArray(), length);
+    }
+
+    private static int sequence(MutableDirectBuffer dst, int dp, byte[] literals, int distance, int matchLength) {
+        int matchCode = matchLength - 4;
+        dst.putByte(dp++, (byte) (Math.min(literals.length, 15) << 4 | Math.min(matchCode, 15)));
+        if (literals.length >= 15) {
+            dp = length(dst, dp, literals.length - 15);
+        }
+        dst.putBytes(dp, literals);
+        dp += literals.length;
+        dst.putByte(dp++, (byte) distance);
+        dst.putByte(dp++, (byte) (distance >>> 8));
+        if (matchCode >= 15) {
+            dp = length(dst, dp, matchCode - 15);
+        }
+        return dp;
+    }
+
+    private static int lastLiterals(MutableDirectBuffer dst, int dp, byte[] literals) {
+        dst.putByte(dp++, (byte) (Math.min(literals.length, 15) << 4));
+        if (literals.length >= 15) {
+            dp = length(dst, dp, literals.length - 15);
+        }
+        dst.putBytes(dp, literals);
+        return dp + literals.length;
+    }
+
+    private static int length(MutableDirectBuffer dst, int dp, int length) {
+        int remaining = length;
+        while (remaining >= 255) {
+            dst.putByte(dp++, (byte) 255);
+            remaining -= 255;
+        }
+        dst.putByte(dp++, (byte) remaining);
+        return dp;
+    }
+}
@@ -1,14 +1,33 @@
 package com.cdf.aeron.rpc;
 
-import static com.cdf.aeron.common.constant.Constants.AERON_UDP_ENDPOINT;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * 协议和 RPC 行为相关的常量，与部署环境相关的配置见 {@link RpcConfig}
+ *
  * @author chendifan
  * @date 2024-09-01
  */
 public class Constants {
     public static final int RPC_STREAM = 1;
-    public static final String SERVER_INBOUND_URI = AERON_UDP_ENDPOINT + "127.0.0.1:2000";
-    public static final String CLIENT_INBOUND_URI = AERON_UDP_ENDPOINT + "127.0.0.1:2001";
-    public static final String AERON_DIR = "./aeron-dir";
+    // 响应 stream，与请求的 stream（分片 i 为 RPC_STREAM + i）分开，IPC 模式下请求和响应在同一个 channel 上，不能共用 stream
+    public static final int RESPONSE_STREAM = 1001;
+    // topic t 的推送在 PUSH_STREAM_BASE + t 上
+    public static final int PUSH_STREAM_BASE = 3000;
+    // client 的最大在途请求数
+    public static final int MAX_IN_FLIGHT = 1024;
+    public static final long REQUEST_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(10L);
+    public static final long TIMEOUT_CHECK_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(1L);
+    // client 打印延迟直方图的周期
+    public static final long LATENCY_REPORT_INTERVAL_NS = TimeUnit.SECONDS.toNanos(10L);
+    // server 从 conductor 线程接收 image 事件的队列容量
+    public static final int MAX_SESSION_EVENTS = 1024;
+    // server 等待 client 响应 channel 建连的超时时间
+    public static final long CONNECT_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(5L);
+    // server 检查 session 存活的周期
+    public static final long LIVENESS_CHECK_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(100L);
+    // 流式响应因背压挂起后最多多久没有进展，超过则放弃该流
+    public static final long STREAM_STALL_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(1L);
+    // 响应 channel 建连前，每个 session 最多缓存的请求数
+    public static final int MAX_PENDING_REQUESTS = 64;
 }
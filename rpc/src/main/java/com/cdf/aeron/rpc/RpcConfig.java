@@ -0,0 +1,273 @@
+package com.cdf.aeron.rpc;
+
+import com.cdf.aeron.rpc.client.LoadBalance;
+import com.cdf.aeron.rpc.sbe.PayloadEncoding;
+import com.cdf.aeron.rpc.server.FlushPolicy;
+import com.cdf.aeron.rpc.server.OverloadPolicy;
+import com.cdf.aeron.rpc.server.WorkerPoolConfig;
+import io.aeron.ChannelUri;
+import io.aeron.CommonContext;
+import io.aeron.driver.Configuration;
+import io.aeron.driver.MediaDriver;
+import io.aeron.driver.ThreadingMode;
+import org.agrona.SystemUtil;
+import org.agrona.concurrent.IdleStrategy;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static com.cdf.aeron.common.constant.Constants.LOCAL_IPC_CHANNEL;
+
+/**
+ * 运行时配置，从系统属性读取，也可以用 {@code -Drpc.config.file=rpc.properties} 指定配置文件，
+ * 命令行上的 -D 优先于配置文件。配置文件中的 {@code aeron.*} 属性同样会生效，由 Aeron 自己读取。
+ * <p>
+ * idle strategy 的取值与 Aeron 一致：{@code noop}, {@code spin}, {@code yield}, {@code sleep-ns}, {@code backoff}
+ * 或 IdleStrategy 的全限定类名，在延迟和 CPU 占用之间取舍
+ *
+ * @param transport                client 与 server 之间的传输方式
+ * @param serverEndpoint           UDP 模式下 server 监听的地址
+ * @param serverEndpoints          UDP 模式下 {@link com.cdf.aeron.rpc.client.ClientPool} 连接的所有 server 地址，默认只有 serverEndpoint
+ * @param loadBalance              ClientPool 在多个 server 之间的负载均衡方式
+ * @param clientEndpoint           UDP 模式下 client 接收响应的地址，端口为 0 时由系统分配
+ * @param aeronDir                 MediaDriver 目录的父目录
+ * @param threadingMode            MediaDriver 的线程模型
+ * @param driverIdleStrategy       MediaDriver 各线程的 idle strategy
+ * @param agentIdleStrategy        RPC agent 的 duty cycle 以及背压重试的 idle strategy
+ * @param termLength               publication 的 term 长度，为 0 时使用 Aeron 的默认值
+ * @param mtu                      UDP 的 MTU，为 0 时使用 Aeron 的默认值
+ * @param socketSndBuf             UDP socket 的 SO_SNDBUF，为 0 时使用 Aeron 的默认值
+ * @param socketRcvBuf             UDP socket 的 SO_RCVBUF，为 0 时使用 Aeron 的默认值
+ * @param bufferLength             编码消息的可复用 buffer 的初始长度
+ * @param batchLength              client 合并请求的 MyBatchRequest 的字节上限，超过 publication 的 maxPayloadLength 时取后者，
+ *                                 为 0 时每个请求单独发送
+ * @param batchLingerNs            client 合并请求最多等待多久，为 0 时每个 duty cycle 发出一次
+ * @param overloadPolicy           server 的响应 publication 背压、出站队列积压时的处理策略
+ * @param outboundQueueLength      server 每个 session 出站队列的字节数，必须是 2 的幂
+ * @param journal                  server 是否用 Aeron Archive 录制入站请求，见 {@link com.cdf.aeron.rpc.journal.RequestJournal}
+ * @param journalSegmentLength     录制的 segment 文件长度，为 0 时使用 Aeron Archive 的默认值
+ * @param cacheLength              server 每个分片幂等方法响应缓存的堆外内存字节数，为 0 时不缓存
+ * @param cacheEntryLength         响应缓存每个条目的上限，请求内容加编码后的响应超过它的不缓存
+ * @param cacheTtlNs               响应缓存条目的存活时间，为 0 时只按 LRU 淘汰
+ * @param heartbeatIntervalNs      client 超过这么久没有发出请求时发一个心跳
+ * @param clientLivenessTimeoutNs  client 超过这么久没有收到任何响应或心跳时认为 server 已不可用，重连
+ * @param sessionLivenessTimeoutNs server 超过这么久没有收到 client 的任何消息时回收其 session
+ * @param pushChannel              server 推送使用的 channel，为空时 UDP 使用 manual MDC，IPC 使用 aeron:ipc，
+ *                                 也可以配置为 multicast 地址，见 {@link #resolvePushChannel()}
+ * @param compression              client 压缩请求，并在 MyConnect 中声明能接收的响应编码；server 对同样声明了 LZ4 的 client 压缩响应
+ * @param compressionThreshold     请求/响应内容不小于这个字节数时才尝试压缩，压缩后不变小的按原样发送
+ * @param maxInflatedLength        压缩的请求/响应解压后的字节上限，声明的原始长度超过它的视为不合法，防止伪造的长度撑大解压 buffer
+ * @param workerCount              server 每个分片的 worker 线程数，为 0 时 handler 在 agent 线程上直接执行，见 {@link #workerPoolConfig()}
+ * @param workerRingSize           worker pool 的 ring 大小，必须是 2 的幂
+ * @param workerWaitStrategy       worker 等待新请求的策略，取值见 {@link WorkerPoolConfig#waitStrategy}
+ * @param serverShards             server 的分片数，分片 i 监听 {@link Sharding#streamId}(i)，client 按同一个配置选择分片
+ * @param shardsShareThread        多个分片是用 CompositeAgent 跑在同一个线程上，还是每个分片一个线程
+ * @param serverFragmentLimit      server agent 每个 duty cycle 最多处理的请求 fragment 数
+ * @param clientFragmentLimit      client agent 每个 duty cycle 最多处理的响应 fragment 数
+ * @param serverFlushPolicy        server 响应的发送时机，逐个发送或一次 poll 结束后按 session 批量发送
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public record RpcConfig(Transport transport, String serverEndpoint, List<String> serverEndpoints,
+                        LoadBalance loadBalance, String clientEndpoint, String aeronDir,
+                        ThreadingMode threadingMode, String driverIdleStrategy, String agentIdleStrategy,
+                        int termLength, int mtu, int socketSndBuf, int socketRcvBuf, int bufferLength,
+                        int batchLength, long batchLingerNs, OverloadPolicy overloadPolicy, int outboundQueueLength,
+                        boolean journal, int journalSegmentLength, int cacheLength, int cacheEntryLength, long cacheTtlNs,
+                        long heartbeatIntervalNs, long clientLivenessTimeoutNs, long sessionLivenessTimeoutNs,
+                        String pushChannel, PayloadEncoding compression, int compressionThreshold,
+                        int maxInflatedLength, int workerCount, int workerRingSize, String workerWaitStrategy,
+                        int serverShards, boolean shardsShareThread, int serverFragmentLimit,
+                        int clientFragmentLimit, FlushPolicy serverFlushPolicy) {
+    public static final String CONFIG_FILE_PROP = "rpc.config.file";
+    public static final String TRANSPORT_PROP = "rpc.transport";
+    public static final String SERVER_ENDPOINT_PROP = "rpc.server.endpoint";
+    public static final String SERVER_ENDPOINTS_PROP = "rpc.server.endpoints";
+    public static final String LOAD_BALANCE_PROP = "rpc.client.load.balance";
+    public static final String CLIENT_ENDPOINT_PROP = "rpc.client.endpoint";
+    public static final String AERON_DIR_PROP = "rpc.dir";
+    public static final String THREADING_MODE_PROP = "rpc.driver.threading.mode";
+    public static final String DRIVER_IDLE_STRATEGY_PROP = "rpc.driver.idle.strategy";
+    public static final String AGENT_IDLE_STRATEGY_PROP = "rpc.agent.idle.strategy";
+    public static final String TERM_LENGTH_PROP = "rpc.term.length";
+    public static final String MTU_PROP = "rpc.mtu";
+    public static final String SOCKET_SNDBUF_PROP = "rpc.socket.sndbuf";
+    public static final String SOCKET_RCVBUF_PROP = "rpc.socket.rcvbuf";
+    public static final String BUFFER_LENGTH_PROP = "rpc.buffer.length";
+    public static final String BATCH_LENGTH_PROP = "rpc.client.batch.length";
+    public static final String BATCH_LINGER_PROP = "rpc.client.batch.linger";
+    public static final String OVERLOAD_POLICY_PROP = "rpc.overload.policy";
+    public static final String OUTBOUND_QUEUE_LENGTH_PROP = "rpc.outbound.queue.length";
+    public static final String JOURNAL_PROP = "rpc.journal";
+    public static final String JOURNAL_SEGMENT_LENGTH_PROP = "rpc.journal.segment.length";
+    public static final String CACHE_LENGTH_PROP = "rpc.cache.length";
+    public static final String CACHE_ENTRY_LENGTH_PROP = "rpc.cache.entry.length";
+    public static final String CACHE_TTL_PROP = "rpc.cache.ttl";
+    public static final String HEARTBEAT_INTERVAL_PROP = "rpc.heartbeat.interval";
+    public static final String CLIENT_LIVENESS_TIMEOUT_PROP = "rpc.client.liveness.timeout";
+    public static final String SESSION_LIVENESS_TIMEOUT_PROP = "rpc.session.liveness.timeout";
+    public static final String PUSH_CHANNEL_PROP = "rpc.push.channel";
+    public static final String COMPRESSION_PROP = "rpc.compression";
+    public static final String COMPRESSION_THRESHOLD_PROP = "rpc.compression.threshold";
+    public static final String MAX_INFLATED_LENGTH_PROP = "rpc.compression.max.inflated";
+    public static final String WORKER_COUNT_PROP = "rpc.workers.count";
+    public static final String WORKER_RING_SIZE_PROP = "rpc.workers.ring.size";
+    public static final String WORKER_WAIT_STRATEGY_PROP = "rpc.workers.wait.strategy";
+    public static final String SERVER_SHARDS_PROP = "rpc.server.shards";
+    public static final String SHARDS_SHARE_THREAD_PROP = "rpc.server.shards.shareThread";
+    public static final String SERVER_FRAGMENT_LIMIT_PROP = "rpc.server.fragmentLimit";
+    public static final String CLIENT_FRAGMENT_LIMIT_PROP = "rpc.client.fragmentLimit";
+    public static final String SERVER_FLUSH_POLICY_PROP = "rpc.server.flushPolicy";
+    // manual MDC，destination 由 server 在 client 订阅时逐个添加
+    public static final String MDC_PUSH_CHANNEL = "aeron:udp?control-mode=manual";
+
+    /**
+     * 读取配置，未配置的项使用默认值，即原先写死在代码里的值
+     */
+    public static RpcConfig load() {
+        String configFile = System.getProperty(CONFIG_FILE_PROP);
+        if (configFile != null) {
+            SystemUtil.loadPropertiesFiles(SystemUtil.PropertyAction.PRESERVE, configFile);
+        }
+        String serverEndpoint = System.getProperty(SERVER_ENDPOINT_PROP, "127.0.0.1:2000");
+        return new RpcConfig(
+                Transport.valueOf(System.getProperty(TRANSPORT_PROP, "UDP").toUpperCase(Locale.ROOT)),
+                serverEndpoint,
+                List.of(System.getProperty(SERVER_ENDPOINTS_PROP, serverEndpoint).split("\\s*,\\s*")),
+                LoadBalance.valueOf(System.getProperty(LOAD_BALANCE_PROP, "ROUND_ROBIN").toUpperCase(Locale.ROOT)),
+                System.getProperty(CLIENT_ENDPOINT_PROP, "127.0.0.1:0"),
+                System.getProperty(AERON_DIR_PROP, "./aeron-dir"),
+                ThreadingMode.valueOf(System.getProperty(THREADING_MODE_PROP, "DEDICATED").toUpperCase(Locale.ROOT)),
+                System.getProperty(DRIVER_IDLE_STRATEGY_PROP, "backoff"),
+                System.getProperty(AGENT_IDLE_STRATEGY_PROP, "backoff"),
+                SystemUtil.getSizeAsInt(TERM_LENGTH_PROP, 0),
+                SystemUtil.getSizeAsInt(MTU_PROP, 0),
+                SystemUtil.getSizeAsInt(SOCKET_SNDBUF_PROP, 0),
+                SystemUtil.getSizeAsInt(SOCKET_RCVBUF_PROP, 0),
+                SystemUtil.getSizeAsInt(BUFFER_LENGTH_PROP, 512),
+                SystemUtil.getSizeAsInt(BATCH_LENGTH_PROP, 0),
+                SystemUtil.getDurationInNanos(BATCH_LINGER_PROP, 0),
+                OverloadPolicy.valueOf(System.getProperty(OVERLOAD_POLICY_PROP, "REJECT").toUpperCase(Locale.ROOT)),
+                SystemUtil.getSizeAsInt(OUTBOUND_QUEUE_LENGTH_PROP, 64 * 1024),
+                Boolean.parseBoolean(System.getProperty(JOURNAL_PROP, "false")),
+                SystemUtil.getSizeAsInt(JOURNAL_SEGMENT_LENGTH_PROP, 0),
+                SystemUtil.getSizeAsInt(CACHE_LENGTH_PROP, 0),
+                SystemUtil.getSizeAsInt(CACHE_ENTRY_LENGTH_PROP, 1024),
+                SystemUtil.getDurationInNanos(CACHE_TTL_PROP, 0),
+                SystemUtil.getDurationInNanos(HEARTBEAT_INTERVAL_PROP, TimeUnit.SECONDS.toNanos(1)),
+                SystemUtil.getDurationInNanos(CLIENT_LIVENESS_TIMEOUT_PROP, TimeUnit.SECONDS.toNanos(10)),
+                SystemUtil.getDurationInNanos(SESSION_LIVENESS_TIMEOUT_PROP, TimeUnit.SECONDS.toNanos(10)),
+                System.getProperty(PUSH_CHANNEL_PROP, ""),
+                PayloadEncoding.valueOf(System.getProperty(COMPRESSION_PROP, "NONE").toUpperCase(Locale.ROOT)),
+                SystemUtil.getSizeAsInt(COMPRESSION_THRESHOLD_PROP, 1024),
+                SystemUtil.getSizeAsInt(MAX_INFLATED_LENGTH_PROP, 16 * 1024 * 1024),
+                Integer.getInteger(WORKER_COUNT_PROP, 0),
+                SystemUtil.getSizeAsInt(WORKER_RING_SIZE_PROP, 1024),
+                System.getProperty(WORKER_WAIT_STRATEGY_PROP, "blocking"),
+                Integer.getInteger(SERVER_SHARDS_PROP, 1),
+                Boolean.parseBoolean(System.getProperty(SHARDS_SHARE_THREAD_PROP, "false")),
+                Integer.getInteger(SERVER_FRAGMENT_LIMIT_PROP, 16),
+                Integer.getInteger(CLIENT_FRAGMENT_LIMIT_PROP, 16),
+                FlushPolicy.valueOf(System.getProperty(SERVER_FLUSH_POLICY_PROP, "END_OF_POLL").toUpperCase(Locale.ROOT)));
+    }
+
+    public RpcConfig withTransport(Transport transport) {
+        return new RpcConfig(transport, serverEndpoint, serverEndpoints, loadBalance, clientEndpoint, aeronDir,
+                threadingMode, driverIdleStrategy, agentIdleStrategy, termLength, mtu, socketSndBuf, socketRcvBuf,
+                bufferLength, batchLength, batchLingerNs, overloadPolicy, outboundQueueLength, journal,
+                journalSegmentLength, cacheLength, cacheEntryLength, cacheTtlNs, heartbeatIntervalNs,
+                clientLivenessTimeoutNs, sessionLivenessTimeoutNs, pushChannel, compression, compressionThreshold,
+                maxInflatedLength, workerCount, workerRingSize, workerWaitStrategy, serverShards, shardsShareThread,
+                serverFragmentLimit, clientFragmentLimit, serverFlushPolicy);
+    }
+
+    /**
+     * @return 请求发往 endpoint 的配置，{@link com.cdf.aeron.rpc.client.ClientPool} 为每个 server 生成一份
+     */
+    public RpcConfig withServerEndpoint(String endpoint) {
+        return new RpcConfig(transport, endpoint, List.of(endpoint), loadBalance, clientEndpoint, aeronDir,
+                threadingMode, driverIdleStrategy, agentIdleStrategy, termLength, mtu, socketSndBuf, socketRcvBuf,
+                bufferLength, batchLength, batchLingerNs, overloadPolicy, outboundQueueLength, journal,
+                journalSegmentLength, cacheLength, cacheEntryLength, cacheTtlNs, heartbeatIntervalNs,
+                clientLivenessTimeoutNs, sessionLivenessTimeoutNs, pushChannel, compression, compressionThreshold,
+                maxInflatedLength, workerCount, workerRingSize, workerWaitStrategy, serverShards, shardsShareThread,
+                serverFragmentLimit, clientFragmentLimit, serverFlushPolicy);
+    }
+
+    /**
+     * IPC 模式下 server 启动 MediaDriver，同机的 client 连接到同一个目录
+     */
+    public String ipcAeronDir() {
+        return aeronDir + "/aeron-rpc-ipc";
+    }
+
+    /**
+     * 开启 journal 时 Aeron Archive 的目录，保存录制的 segment 文件和 catalog，server 重启后保留
+     */
+    public String archiveDir() {
+        return aeronDir + "/aeron-rpc-archive";
+    }
+
+    /**
+     * @return server 推送使用的 channel，client 与 server 需要一致
+     */
+    public String resolvePushChannel() {
+        if (!pushChannel.isEmpty()) {
+            return pushChannel;
+        }
+        return transport == Transport.IPC ? LOCAL_IPC_CHANNEL : MDC_PUSH_CHANNEL;
+    }
+
+    /**
+     * @return 推送是否使用 manual MDC，此时 client 需要在订阅时告知接收推送的地址
+     */
+    public boolean isMdcPush() {
+        return CommonContext.MDC_CONTROL_MODE_MANUAL.equals(
+                ChannelUri.parse(resolvePushChannel()).get(CommonContext.MDC_CONTROL_MODE_PARAM_NAME));
+    }
+
+    /**
+     * wait strategy 可能带状态，每次调用返回一个新实例，每个 worker pool 一个
+     *
+     * @return worker pool 的配置，workerCount 为 0 时返回 null，handler 在 agent 线程上直接执行
+     */
+    public WorkerPoolConfig workerPoolConfig() {
+        if (workerCount <= 0) {
+            return null;
+        }
+        return new WorkerPoolConfig(workerCount, workerRingSize, WorkerPoolConfig.waitStrategy(workerWaitStrategy));
+    }
+
+    /**
+     * idle strategy 带状态，每次调用返回一个新实例
+     */
+    public IdleStrategy newAgentIdleStrategy() {
+        return Configuration.agentIdleStrategy(agentIdleStrategy, null);
+    }
+
+    /**
+     * 把 MediaDriver 相关的配置应用到 context 上，为 0 的项保留 Aeron 的默认值
+     */
+    public MediaDriver.Context applyTo(MediaDriver.Context ctx) {
+        ctx.threadingMode(threadingMode)
+                .conductorIdleStrategy(Configuration.agentIdleStrategy(driverIdleStrategy, null))
+                .senderIdleStrategy(Configuration.agentIdleStrategy(driverIdleStrategy, null))
+                .receiverIdleStrategy(Configuration.agentIdleStrategy(driverIdleStrategy, null))
+                .sharedNetworkIdleStrategy(Configuration.agentIdleStrategy(driverIdleStrategy, null))
+                .sharedIdleStrategy(Configuration.agentIdleStrategy(driverIdleStrategy, null));
+        if (termLength > 0) {
+            ctx.publicationTermBufferLength(termLength).ipcTermBufferLength(termLength);
+        }
+        if (mtu > 0) {
+            ctx.mtuLength(mtu);
+        }
+        if (socketSndBuf > 0) {
+            ctx.socketSndbufLength(socketSndBuf);
+        }
+        if (socketRcvBuf > 0) {
+            ctx.socketRcvbufLength(socketRcvBuf);
+        }
+        return ctx;
+    }
+}
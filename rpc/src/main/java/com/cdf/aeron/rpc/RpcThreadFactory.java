@@ -0,0 +1,47 @@
+package com.cdf.aeron.rpc;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 创建 agent 线程，线程名取 agent 的 roleName（由 AgentRunner.startOnThread 设置），
+ * 启动时打印 Linux 上的线程 id，便于用 {@code taskset -pc <cpus> <tid>} 把热点线程绑到隔离的核上
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@Slf4j
+public class RpcThreadFactory implements ThreadFactory {
+    private static final Path THREAD_SELF = Path.of("/proc/thread-self");
+
+    private final boolean daemon;
+
+    public RpcThreadFactory(boolean daemon) {
+        this.daemon = daemon;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(() -> {
+            log.info("agent thread started, name: {}, tid: {}", Thread.currentThread().getName(), nativeThreadId());
+            runnable.run();
+        });
+        thread.setDaemon(daemon);
+        return thread;
+    }
+
+    /**
+     * /proc/thread-self 指向 {@code <pid>/task/<tid>}，非 Linux 系统返回 -1
+     */
+    private static long nativeThreadId() {
+        try {
+            return Long.parseLong(Files.readSymbolicLink(THREAD_SELF).getFileName().toString());
+        } catch (IOException | UnsupportedOperationException | NumberFormatException e) {
+            return -1L;
+        }
+    }
+}
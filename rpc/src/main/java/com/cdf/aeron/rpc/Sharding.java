@@ -0,0 +1,28 @@
+package com.cdf.aeron.rpc;
+
+import org.agrona.collections.Hashing;
+
+/**
+ * server 分片的选择，分片 i 监听 {@link Constants#RPC_STREAM} + i，client 每次调用按请求的 key 的哈希选一个分片，
+ * 同一个 key 总是落到同一个分片上，见 {@link com.cdf.aeron.rpc.client.ShardedClient}
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public class Sharding {
+
+    private Sharding() {
+    }
+
+    public static int shardFor(long key, int shardCount) {
+        return Math.floorMod(Hashing.hash(key), shardCount);
+    }
+
+    public static int shardFor(Object key, int shardCount) {
+        return Math.floorMod(Hashing.hash(key.hashCode()), shardCount);
+    }
+
+    public static int streamId(int shard) {
+        return Constants.RPC_STREAM + shard;
+    }
+}
@@ -0,0 +1,75 @@
+package com.cdf.aeron.rpc;
+
+import io.aeron.ChannelUriStringBuilder;
+import io.aeron.Subscription;
+
+import static com.cdf.aeron.common.constant.Constants.AERON_UDP_ENDPOINT;
+import static com.cdf.aeron.common.constant.Constants.LOCAL_IPC_CHANNEL;
+
+/**
+ * client 与 server 之间的传输方式，同一套 agent 可以跑在 UDP 或 IPC 上
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public enum Transport {
+    /**
+     * 跨机器部署，client 与 server 各自启动 MediaDriver
+     */
+    UDP {
+        @Override
+        public String serverInboundChannel(RpcConfig config) {
+            return AERON_UDP_ENDPOINT + config.serverEndpoint();
+        }
+
+        @Override
+        public String clientInboundChannel(RpcConfig config, int requestSessionId) {
+            return AERON_UDP_ENDPOINT + config.clientEndpoint();
+        }
+
+        @Override
+        public String resolveResponseChannel(Subscription subscription) {
+            // 临时端口需要等 MediaDriver 绑定完成才能拿到
+            return subscription.tryResolveChannelEndpointPort();
+        }
+    },
+    /**
+     * 同机部署，client 与 server 共用一个 MediaDriver（同一个 aeron 目录），消息直接写共享内存的 log buffer，不经过网络栈
+     */
+    IPC {
+        @Override
+        public String serverInboundChannel(RpcConfig config) {
+            return LOCAL_IPC_CHANNEL;
+        }
+
+        /**
+         * 所有 client 的响应都在同一个 IPC stream 上，用请求 publication 的 sessionId 过滤，
+         * server 以该 sessionId 建立响应 publication，每个 client 只会看到发给自己的响应
+         */
+        @Override
+        public String clientInboundChannel(RpcConfig config, int requestSessionId) {
+            return new ChannelUriStringBuilder(LOCAL_IPC_CHANNEL).sessionId(requestSessionId).build();
+        }
+
+        @Override
+        public String resolveResponseChannel(Subscription subscription) {
+            return subscription.channel();
+        }
+    };
+
+    /**
+     * @return server 监听请求的 channel
+     */
+    public abstract String serverInboundChannel(RpcConfig config);
+
+    /**
+     * @param requestSessionId client 请求 publication 的 sessionId，与 server 端该 client 的 session 对应
+     * @return client 接收响应的 channel
+     */
+    public abstract String clientInboundChannel(RpcConfig config, int requestSessionId);
+
+    /**
+     * @return 通过 MyConnect 告知 server 的响应 channel，尚未就绪时返回 null
+     */
+    public abstract String resolveResponseChannel(Subscription subscription);
+}
@@ -0,0 +1,169 @@
+package com.cdf.aeron.rpc.client;
+
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.concurrent.Agent;
+import org.agrona.concurrent.ManyToOneConcurrentArrayQueue;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 阻塞式的 RPC 调用门面，可以在任意线程上调用，适合每个请求一个虚拟线程的写法：
+ * 调用方把 {@link CallHandle} 放进 Agrona 的 {@link ManyToOneConcurrentArrayQueue}，然后在 handle 上 park；
+ * 这个 agent 是队列唯一的消费者，与 {@link ClientAgent} 或 {@link ClientPool} 组合在同一个线程上，
+ * 把请求交给 {@link RpcCaller}，并以 handle 作为 callback，响应到达时唤醒调用方。
+ * <pre>{@code
+ * BlockingRpcClient blockingClient = new BlockingRpcClient(clientPool, 4096, Constants.REQUEST_TIMEOUT_NS);
+ * AgentRunner runner = new AgentRunner(idleStrategy, errorHandler, null, new CompositeAgent(clientPool, blockingClient));
+ * // 任意线程，包括虚拟线程
+ * String res = blockingClient.call(Methods.SERVER_TIME, "hello");
+ * }</pre>
+ * 队列满时调用方 park 等待，把背压传回调用方；client 未就绪或没有信用时请求留在队列中，超过请求超时时间仍未发出则以
+ * {@link CallFailure#TIMEOUT} 失败。每次调用分配一个 handle 和请求、响应的 byte[]，热路径仍应在 agent 线程上直接使用 RpcCaller
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@Slf4j
+public class BlockingRpcClient implements Agent {
+    // 队列满时调用方每次 park 的时间
+    private static final long QUEUE_FULL_PARK_NS = TimeUnit.MICROSECONDS.toNanos(50L);
+
+    private final RpcCaller caller;
+    private final ManyToOneConcurrentArrayQueue<CallHandle> queue;
+    private final long requestTimeoutNs;
+    private final UnsafeBuffer sendBuffer;
+
+    private volatile boolean closed;
+    // 从队列中取出但 caller 暂时不接收的请求，下个 duty cycle 优先重试
+    private CallHandle blocked;
+
+    /**
+     * @param caller           发送请求的 ClientAgent 或 ClientPool，必须与本 agent 在同一个线程上
+     * @param queueCapacity    等待发送的请求数上限
+     * @param requestTimeoutNs 请求在队列中等待发送的超时时间，发出后的超时由 caller 负责，调用方最多等待两者之和
+     */
+    public BlockingRpcClient(RpcCaller caller, int queueCapacity, long requestTimeoutNs) {
+        this.caller = caller;
+        this.queue = new ManyToOneConcurrentArrayQueue<>(queueCapacity);
+        this.requestTimeoutNs = requestTimeoutNs;
+        this.sendBuffer = new UnsafeBuffer();
+    }
+
+    /**
+     * 发起调用并阻塞等待响应，线程安全
+     *
+     * @throws RpcCallException 调用失败、超时或等待的线程被中断
+     */
+    public byte[] call(int methodId, byte[] req) {
+        return submit(methodId, req).await(2 * requestTimeoutNs);
+    }
+
+    /**
+     * 便捷方法，请求和响应按 UTF-8 编解码
+     */
+    public String call(int methodId, String req) {
+        return new String(call(methodId, req.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 发起调用，返回 handle 由调用方稍后等待，线程安全。队列满时阻塞直到有空位或超时，req 在发出前不能修改
+     *
+     * @throws RpcCallException client 已关闭，或者队列一直是满的直到超时
+     */
+    public CallHandle submit(int methodId, byte[] req) {
+        CallHandle handle = new CallHandle(methodId, req, System.nanoTime() + requestTimeoutNs);
+        while (!queue.offer(handle)) {
+            if (closed) {
+                throw new RpcCallException(methodId, CallFailure.CLOSED);
+            }
+            if (System.nanoTime() - handle.deadlineNs >= 0) {
+                throw new RpcCallException(methodId, CallFailure.TIMEOUT);
+            }
+            LockSupport.parkNanos(QUEUE_FULL_PARK_NS);
+            if (Thread.currentThread().isInterrupted()) {
+                throw new RpcCallException(methodId, CallFailure.INTERRUPTED);
+            }
+        }
+        if (closed) {
+            // 与 onClose 竞争时可能没被清理，这里自己失败
+            handle.fail(CallFailure.CLOSED);
+        }
+        return handle;
+    }
+
+    @Override
+    public int doWork() {
+        if (blocked != null) {
+            if (!send(blocked)) {
+                return 0;
+            }
+            blocked = null;
+        }
+        int workCount = 0;
+        CallHandle handle;
+        while ((handle = queue.poll()) != null) {
+            workCount++;
+            if (!send(handle)) {
+                blocked = handle;
+                break;
+            }
+        }
+        return workCount;
+    }
+
+    /**
+     * @return caller 接收了请求，或者请求已经完成、超时而不需要再发时返回 true
+     */
+    private boolean send(CallHandle handle) {
+        if (handle.isDone()) {
+            // 调用方已经放弃等待
+            return true;
+        }
+        if (System.nanoTime() - handle.deadlineNs >= 0) {
+            handle.fail(CallFailure.TIMEOUT);
+            return true;
+        }
+        sendBuffer.wrap(handle.request);
+        long callId;
+        try {
+            callId = caller.call(handle.methodId, sendBuffer, 0, handle.request.length, handle);
+        } catch (IllegalArgumentException e) {
+            // 请求超过 maxMessageLength，连接之后才知道上限，不能在入队时检查；异常不能抛出 doWork，否则调用方一直等待
+            log.warn("request rejected, methodId: {}, length: {}, {}", handle.methodId, handle.request.length,
+                    e.getMessage());
+            handle.fail(CallFailure.REQUEST_TOO_LARGE);
+            return true;
+        }
+        return callId != ClientAgent.NULL_CALL_ID;
+    }
+
+    @Override
+    public void onClose() {
+        closed = true;
+        int failed = 0;
+        if (blocked != null) {
+            blocked.fail(CallFailure.CLOSED);
+            blocked = null;
+            failed++;
+        }
+        failed += queue.drain(handle -> handle.fail(CallFailure.CLOSED));
+        if (failed > 0) {
+            log.info("blocking client closed, pending calls failed: {}", failed);
+        }
+    }
+
+    @Override
+    public String roleName() {
+        return "rpc-blocking-client";
+    }
+
+    /**
+     * @return 等待发送的请求数，近似值
+     */
+    public int queued() {
+        return queue.size() + (blocked == null ? 0 : 1);
+    }
+}
@@ -0,0 +1,60 @@
+package com.cdf.aeron.rpc.client;
+
+import com.cdf.aeron.rpc.sbe.ResponseStatus;
+
+/**
+ * 客户端侧的调用失败原因
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public enum CallFailure {
+    /**
+     * 超过请求超时时间仍未收到响应
+     */
+    TIMEOUT,
+    /**
+     * server 拒绝了请求，例如响应 channel 尚未建连时 server 缓冲区已满
+     */
+    REJECTED,
+    /**
+     * server 没有注册该 methodId
+     */
+    UNKNOWN_METHOD,
+    /**
+     * server 端 handler 处理出错
+     */
+    SERVER_ERROR,
+    /**
+     * server 过载，拒绝了请求，可以稍后重试
+     */
+    SERVER_BUSY,
+    /**
+     * 与 server 的请求或响应 channel 断开，在途请求全部失败，client 会自动重连，可以重试
+     */
+    DISCONNECTED,
+    /**
+     * client 已关闭，在途请求全部失败
+     */
+    CLOSED,
+    /**
+     * 阻塞等待的调用方线程被中断，请求可能已经发出，之后到达的响应被丢弃，见 {@link BlockingRpcClient}
+     */
+    INTERRUPTED,
+    /**
+     * 请求编码后超过 publication 的 maxMessageLength，没有发出，重试也不会成功
+     */
+    REQUEST_TOO_LARGE;
+
+    /**
+     * server 返回的非 OK 状态对应的失败原因
+     */
+    public static CallFailure of(ResponseStatus status) {
+        return switch (status) {
+            case UNKNOWN_METHOD -> UNKNOWN_METHOD;
+            case HANDLER_ERROR -> SERVER_ERROR;
+            case SERVER_BUSY -> SERVER_BUSY;
+            default -> REJECTED;
+        };
+    }
+}
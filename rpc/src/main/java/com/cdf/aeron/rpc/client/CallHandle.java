@@ -0,0 +1,139 @@
+package com.cdf.aeron.rpc.client;
+
+import org.agrona.DirectBuffer;
+import org.agrona.ExpandableArrayBuffer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link BlockingRpcClient} 的一次调用：调用方线程创建并等待，agent 线程发送并作为 callback 完成它。
+ * <p>
+ * 等待用 {@link LockSupport#parkNanos}，虚拟线程 park 时会让出载体线程，成千上万个虚拟线程同时等待也只占少量平台线程；
+ * 完成时先 CAS 抢占 state，写结果后再发布最终的 state，然后 unpark 等待的线程，不加锁。一个 handle 只能由一个线程等待
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public final class CallHandle implements RpcCallback {
+    private static final int PENDING = 0;
+    // 已被 agent 线程或等待方抢占，正在写结果
+    private static final int COMPLETING = 1;
+    private static final int COMPLETED = 2;
+    private static final int FAILED = 3;
+    private static final VarHandle STATE;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(CallHandle.class, "state", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    final int methodId;
+    final byte[] request;
+    final long deadlineNs;
+
+    private volatile int state;
+    private volatile Thread waiter;
+    private byte[] response;
+    private CallFailure failure;
+    // 流式方法的分块，在 agent 线程上累积，结束时拼成完整响应
+    private ExpandableArrayBuffer chunks;
+    private int chunksLength;
+
+    CallHandle(int methodId, byte[] request, long deadlineNs) {
+        this.methodId = methodId;
+        this.request = request;
+        this.deadlineNs = deadlineNs;
+    }
+
+    /**
+     * @return 是否已经完成，成功或失败
+     */
+    public boolean isDone() {
+        return state > COMPLETING;
+    }
+
+    /**
+     * 阻塞等待响应，适合在虚拟线程上调用
+     *
+     * @param timeoutNs 最长等待时间
+     * @return 响应内容，流式方法为所有分块拼接后的内容
+     * @throws RpcCallException 调用失败、等待超时或等待的线程被中断，中断时保留中断标志
+     */
+    public byte[] await(long timeoutNs) {
+        if (state <= COMPLETING) {
+            long deadlineNs = System.nanoTime() + timeoutNs;
+            waiter = Thread.currentThread();
+            // 写 waiter 之后再检查 state，与 complete 中写 state 之后再读 waiter 对应，不会丢失唤醒
+            while (state <= COMPLETING) {
+                long remainingNs = deadlineNs - System.nanoTime();
+                if (remainingNs <= 0) {
+                    fail(CallFailure.TIMEOUT);
+                } else {
+                    LockSupport.parkNanos(this, remainingNs);
+                    if (Thread.currentThread().isInterrupted()) {
+                        fail(CallFailure.INTERRUPTED);
+                    }
+                }
+            }
+            waiter = null;
+        }
+        if (state == FAILED) {
+            throw new RpcCallException(methodId, failure);
+        }
+        return response;
+    }
+
+    @Override
+    public void onChunk(long id, DirectBuffer buffer, int offset, int length) {
+        if (chunks == null) {
+            chunks = new ExpandableArrayBuffer(Math.max(length, 256));
+        }
+        chunks.putBytes(chunksLength, buffer, offset, length);
+        chunksLength += length;
+    }
+
+    @Override
+    public void onResponse(long id, DirectBuffer buffer, int offset, int length) {
+        byte[] bytes;
+        if (chunks == null) {
+            bytes = new byte[length];
+            buffer.getBytes(offset, bytes);
+        } else {
+            // 流式方法的结束响应内容为空
+            bytes = new byte[chunksLength];
+            chunks.getBytes(0, bytes);
+            chunks = null;
+        }
+        complete(COMPLETED, bytes, null);
+    }
+
+    @Override
+    public void onFailure(long id, CallFailure failure) {
+        fail(failure);
+    }
+
+    void fail(CallFailure failure) {
+        complete(FAILED, null, failure);
+    }
+
+    /**
+     * agent 线程完成调用，或者等待方超时、被中断时放弃，先到的生效
+     */
+    private void complete(int result, byte[] response, CallFailure failure) {
+        if (!STATE.compareAndSet(this, PENDING, COMPLETING)) {
+            return;
+        }
+        this.response = response;
+        this.failure = failure;
+        state = result;
+        Thread thread = waiter;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
@@ -1,11 +1,18 @@
 package com.cdf.aeron.rpc.client;
 
+import com.cdf.aeron.common.codec.Lz4Codec;
 import com.cdf.aeron.rpc.sbe.HeaderDecoder;
+import com.cdf.aeron.rpc.sbe.MyBatchResponseDecoder;
+import com.cdf.aeron.rpc.sbe.MyHeartbeatDecoder;
+import com.cdf.aeron.rpc.sbe.MyResponseChunkDecoder;
 import com.cdf.aeron.rpc.sbe.MyResponseDecoder;
+import com.cdf.aeron.rpc.sbe.PayloadEncoding;
+import com.cdf.aeron.rpc.sbe.ResponseStatus;
 import io.aeron.logbuffer.FragmentHandler;
 import io.aeron.logbuffer.Header;
 import lombok.extern.slf4j.Slf4j;
 import org.agrona.DirectBuffer;
+import org.agrona.ExpandableDirectByteBuffer;
 
 /**
  * 模拟 RPC client，从响应 buffer 中识别完整的请求并进行处理
@@ -17,22 +24,138 @@ import org.agrona.DirectBuffer;
 public class ClientAdapter implements FragmentHandler {
     private final HeaderDecoder headerDecoder;
     private final MyResponseDecoder responseDecoder;
+    private final MyResponseChunkDecoder chunkDecoder;
+    private final MyBatchResponseDecoder batchDecoder;
+    private final PendingCalls pendingCalls;
+    private final Lz4Codec lz4Codec;
+    // 解压后的响应内容，只在回调期间有效
+    private final ExpandableDirectByteBuffer inflateBuffer;
+    private final int maxInflatedLength;
 
-    public ClientAdapter() {
+    /**
+     * @param bufferLength      解压 buffer 的初始长度
+     * @param maxInflatedLength 解压后的字节上限，超过的响应按不合法的数据处理
+     */
+    public ClientAdapter(PendingCalls pendingCalls, int bufferLength, int maxInflatedLength) {
         this.headerDecoder = new HeaderDecoder();
         this.responseDecoder = new MyResponseDecoder();
+        this.chunkDecoder = new MyResponseChunkDecoder();
+        this.batchDecoder = new MyBatchResponseDecoder();
+        this.pendingCalls = pendingCalls;
+        this.lz4Codec = new Lz4Codec();
+        this.inflateBuffer = new ExpandableDirectByteBuffer(bufferLength);
+        this.maxInflatedLength = maxInflatedLength;
     }
 
     @Override
     public void onFragment(DirectBuffer buffer, int offset, int length, Header header) {
-        headerDecoder.wrap(buffer, offset);
-        if (headerDecoder.templateId() == MyResponseDecoder.TEMPLATE_ID) {
-            responseDecoder.wrap(buffer, offset + headerDecoder.encodedLength(), headerDecoder.blockLength(), headerDecoder.version());
-            if (log.isInfoEnabled()) {
-                log.info("response received, id: {}, res: {}", responseDecoder.id(), responseDecoder.res());
+        // server 批量发送时，一个 Aeron 消息里会有多个连续的响应
+        int position = offset;
+        int limit = offset + length;
+        while (position < limit) {
+            headerDecoder.wrap(buffer, position);
+            int templateId = headerDecoder.templateId();
+            if (templateId == MyResponseChunkDecoder.TEMPLATE_ID) {
+                position = onChunk(buffer, position);
+                continue;
             }
-        } else {
-            log.warn("unknown message, templateId: {}", headerDecoder.templateId());
+            if (templateId == MyBatchResponseDecoder.TEMPLATE_ID) {
+                position = onBatchResponse(buffer, position);
+                continue;
+            }
+            // 心跳回复只用来证明 server 存活，ClientAgent 在 poll 时已经记录
+            if (templateId == MyHeartbeatDecoder.TEMPLATE_ID) {
+                position += headerDecoder.encodedLength() + headerDecoder.blockLength();
+                continue;
+            }
+            if (templateId != MyResponseDecoder.TEMPLATE_ID) {
+                log.warn("unknown message, templateId: {}", templateId);
+                return;
+            }
+            responseDecoder.wrap(buffer, position + headerDecoder.encodedLength(), headerDecoder.blockLength(), headerDecoder.version());
+            long id = responseDecoder.id();
+            ResponseStatus status = responseDecoder.status();
+            if (status == ResponseStatus.NULL_VAL) {
+                // version 1 的 server 没有 status 字段，只返回成功的响应
+                status = ResponseStatus.OK;
+            }
+            // 不物化 String，直接把 res 在 buffer 中的位置交给回调
+            int resOffset = responseDecoder.limit() + MyResponseDecoder.resHeaderLength();
+            int resLength = responseDecoder.skipRes();
+            if (responseDecoder.encoding() == PayloadEncoding.LZ4) {
+                onCompressedResponse(id, status, buffer, resOffset, resLength);
+            } else {
+                onResponse(id, status, buffer, resOffset, resLength);
+            }
+            // 变长字段读完后 limit 即为下一个消息的起始位置
+            position = responseDecoder.limit();
+        }
+    }
+
+    /**
+     * 按 correlation id 找到在途请求，响应可以乱序到达
+     */
+    private void onResponse(long id, ResponseStatus status, DirectBuffer buffer, int resOffset, int resLength) {
+        boolean found = status == ResponseStatus.OK ?
+                pendingCalls.onResponse(id, buffer, resOffset, resLength) :
+                pendingCalls.onFailure(id, CallFailure.of(status));
+        if (!found) {
+            log.warn("response of unknown or expired request, id: {}", id);
+        }
+    }
+
+    /**
+     * 解压到可复用的 buffer 再回调，数据不合法或解压后超过上限时该请求以 SERVER_ERROR 失败
+     */
+    private void onCompressedResponse(long id, ResponseStatus status, DirectBuffer buffer, int resOffset,
+                                      int resLength) {
+        int length = Lz4Codec.decompressedLength(buffer, resOffset, resLength);
+        if (length > maxInflatedLength) {
+            length = Lz4Codec.NOT_COMPRESSED;
+        } else if (length != Lz4Codec.NOT_COMPRESSED) {
+            inflateBuffer.checkLimit(length);
+            length = lz4Codec.decompress(buffer, resOffset, resLength, inflateBuffer, 0);
+        }
+        if (length == Lz4Codec.NOT_COMPRESSED) {
+            log.warn("malformed compressed response, id: {}, length: {}", id, resLength);
+            pendingCalls.onFailure(id, CallFailure.SERVER_ERROR);
+            return;
+        }
+        onResponse(id, status, inflateBuffer, 0, length);
+    }
+
+    /**
+     * server 对 MyBatchRequest 的合并响应，逐个元素回调，同样不拷贝
+     *
+     * @return 下一个消息的起始位置
+     */
+    private int onBatchResponse(DirectBuffer buffer, int position) {
+        batchDecoder.wrap(buffer, position + headerDecoder.encodedLength(), headerDecoder.blockLength(), headerDecoder.version());
+        MyBatchResponseDecoder.ResultsDecoder results = batchDecoder.results();
+        while (results.hasNext()) {
+            results.next();
+            long id = results.id();
+            ResponseStatus status = results.status();
+            int resOffset = batchDecoder.limit() + MyBatchResponseDecoder.ResultsDecoder.resHeaderLength();
+            int resLength = results.skipRes();
+            onResponse(id, status, buffer, resOffset, resLength);
+        }
+        return batchDecoder.limit();
+    }
+
+    /**
+     * 流式响应的分块，一个 frame 一块，同样不拷贝
+     *
+     * @return 下一个消息的起始位置
+     */
+    private int onChunk(DirectBuffer buffer, int position) {
+        chunkDecoder.wrap(buffer, position + headerDecoder.encodedLength(), headerDecoder.blockLength(), headerDecoder.version());
+        long id = chunkDecoder.id();
+        int dataOffset = chunkDecoder.limit() + MyResponseChunkDecoder.dataHeaderLength();
+        int dataLength = chunkDecoder.skipData();
+        if (!pendingCalls.onChunk(id, buffer, dataOffset, dataLength)) {
+            log.warn("chunk of unknown or expired request, id: {}", id);
         }
+        return chunkDecoder.limit();
     }
 }
@@ -1,66 +1,222 @@
 package com.cdf.aeron.rpc.client;
 
-import com.cdf.aeron.common.util.ProcessUtils;
+import com.cdf.aeron.common.codec.Lz4Codec;
+import com.cdf.aeron.common.diagnostics.AeronDiagnostics;
 import com.cdf.aeron.rpc.Constants;
+import com.cdf.aeron.rpc.RpcConfig;
+import com.cdf.aeron.rpc.metrics.ClientCounters;
+import com.cdf.aeron.rpc.metrics.LatencyRecorder;
+import com.cdf.aeron.rpc.sbe.GroupSizeEncodingEncoder;
 import com.cdf.aeron.rpc.sbe.HeaderEncoder;
+import com.cdf.aeron.rpc.sbe.MyBatchRequestEncoder;
 import com.cdf.aeron.rpc.sbe.MyConnectEncoder;
+import com.cdf.aeron.rpc.sbe.MyHeartbeatEncoder;
 import com.cdf.aeron.rpc.sbe.MyRequestEncoder;
+import com.cdf.aeron.rpc.sbe.PayloadEncoding;
 import io.aeron.Aeron;
 import io.aeron.ExclusivePublication;
+import io.aeron.FragmentAssembler;
+import io.aeron.Image;
+import io.aeron.Publication;
+import io.aeron.ReservedValueSupplier;
 import io.aeron.Subscription;
+import io.aeron.logbuffer.BufferClaim;
 import lombok.extern.slf4j.Slf4j;
 import org.agrona.DirectBuffer;
 import org.agrona.ExpandableDirectByteBuffer;
+import org.agrona.MutableDirectBuffer;
 import org.agrona.concurrent.Agent;
-import org.agrona.concurrent.BackoffIdleStrategy;
-import org.agrona.concurrent.IdleStrategy;
-
-import java.io.File;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.LockSupport;
+import org.agrona.concurrent.NanoClock;
 
 import static org.agrona.CloseHelper.quietClose;
 
 /**
- * 状态机，模拟 RPC client 不断处理入站字节（RPC server 给的响应），然后发送请求
+ * 状态机，模拟 RPC client 不断处理入站字节（RPC server 给的响应），然后发送请求。
+ * <p>
+ * 建连完成后，请求通过 {@link #call} 异步发出，以 MyRequest.id 作为 correlation id，
+ * 同一个 publication 上可以有多个请求在途（pipelining），不再是一问一答的 stop-and-wait。
+ * <p>
+ * 建连的每一步都不阻塞 duty cycle，多个 ClientAgent 可以组合在同一个线程上（见 {@link ClientPool}）。
+ * 就绪后请求或响应 channel 断开（publication 未连接、响应 Image 不可用导致 subscription 未连接），
+ * 或者超过 clientLivenessTimeout 没有收到任何响应和心跳回复，在途请求以 {@link CallFailure#DISCONNECTED} 失败，
+ * 重建 publication 和 subscription 并重新握手。没有请求时每个 heartbeatInterval 发一个心跳。
+ * <p>
+ * 配置了 batchLength 时，请求先合并进一个 MyBatchRequest，在 duty cycle 中按 batchLinger 发出，
+ * 或者在合并的请求快要超过 batchLength（不超过一个 frame）时发出，小请求不再各自占一个消息头和 frame header。
+ * <p>
+ * 配置了 compression 时，不小于 compressionThreshold 的请求内容先用 LZ4 压缩（压缩后不变小的按原样发送），
+ * 压缩的请求单独发送，不合并；MyConnect 中声明能接收 LZ4 的响应，由 server 决定是否压缩。
+ * <p>
+ * 通过 {@link #subscribe} 订阅 server 推送的 topic，见 {@link TopicSubscriber}
  *
  * @author chendifan
  * @date 2024-09-01
  */
 @Slf4j
-public class ClientAgent implements Agent {
+public class ClientAgent implements Agent, RpcCaller {
+    public static final long NULL_CALL_ID = -1L;
+    // 返回给调用方的 id 中，低 32 位是 MyRequest.id，高 32 位是命名空间
+    private static final int ID_NAMESPACE_SHIFT = 32;
+    // 一个 MyBatchRequest 除元素外的长度
+    private static final int BATCH_OVERHEAD = HeaderEncoder.ENCODED_LENGTH + MyBatchRequestEncoder.BLOCK_LENGTH +
+            MyBatchRequestEncoder.CallsEncoder.sbeHeaderSize();
     private final Aeron aeron;
-    private final IdleStrategy idleStrategy;
+    private final NanoClock nanoClock;
     // 虽然 decoder 带状态，但这里是模拟 RPC client，只有一个线程顺序处理所有事件
-    private final ClientAdapter clientAdapter;
+    // 超过 MTU 的响应会被 Aeron 分片，先重组再交给 ClientAdapter
+    private final FragmentAssembler fragmentAssembler;
+    private final PendingCalls pendingCalls;
+    private final LatencyRecorder latencyRecorder;
+    private final ClientCounters counters;
+    // 建连时在诊断线程上打印 channel、socket 和 MediaDriver 目录的状态，不在 agent 线程上做 I/O
+    private final AeronDiagnostics diagnostics;
+    private final TopicSubscriber topicSubscriber;
     private final HeaderEncoder headerEncoder;
     private final MyConnectEncoder connectEncoder;
     private final MyRequestEncoder requestEncoder;
+    private final MyHeartbeatEncoder heartbeatEncoder;
+    private final MyBatchRequestEncoder batchEncoder;
+    private final GroupSizeEncodingEncoder groupSizeEncoder;
+    private final ExpandableDirectByteBuffer batchBuffer;
     private final ExpandableDirectByteBuffer buffer;
+    private final BufferClaim bufferClaim;
+    // 把发送时间写入 frame header 的 reserved value，server 开启 journal 时随请求一起录制，回放时据此还原原始节奏
+    private final ReservedValueSupplier sendTimeSupplier;
+    private final RpcConfig config;
+    private final int streamId;
+    private final int fragmentLimit;
+    // 为 0 时不合并请求
+    private final int batchLength;
+    private final long batchLingerNs;
+    private final boolean compression;
+    private final int compressionThreshold;
+    private final Lz4Codec lz4Codec;
+    // 压缩后的请求内容
+    private final ExpandableDirectByteBuffer compressBuffer;
+    private final long idBase;
 
     private State state;
     private ExclusivePublication publication;
     private Subscription subscription;
     private long id;
+    private long sendTimeNs;
+    private long handshakeDeadlineNs;
+    private long lastReceivedNs;
+    private long nextTimeoutCheckNs;
+    private long nextLatencyReportNs;
+    private MyBatchRequestEncoder.CallsEncoder batchCalls;
+    // 已合并但还没发出的请求数
+    private int batchCount;
+    private long batchStartNs;
 
     public ClientAgent(Aeron aeron) {
+        this(aeron, RpcConfig.load());
+    }
+
+    private ClientAgent(Aeron aeron, RpcConfig config) {
+        this(aeron, config, Constants.RPC_STREAM, Constants.MAX_IN_FLIGHT, Constants.REQUEST_TIMEOUT_NS,
+                config.clientFragmentLimit());
+    }
+
+    /**
+     * @param config           传输方式、channel、idle strategy 等运行时配置，IPC 要求与 server 连接同一个 MediaDriver
+     * @param streamId         请求发往的 stream，server 分片部署时每个分片一个，见 {@link ShardedClient}
+     * @param maxInFlight      最大在途请求数，超过后 {@link #call} 直接返回 {@link #NULL_CALL_ID}
+     * @param requestTimeoutNs 单个请求的超时时间
+     * @param fragmentLimit    每个 duty cycle 最多处理的响应 fragment 数
+     */
+    public ClientAgent(Aeron aeron, RpcConfig config, int streamId, int maxInFlight, long requestTimeoutNs,
+                       int fragmentLimit) {
+        this(aeron, config, streamId, maxInFlight, requestTimeoutNs, fragmentLimit, 0);
+    }
+
+    /**
+     * @param idNamespace 放在 correlation id 的高 32 位，多个 ClientAgent 组合使用（如 {@link ClientPool}）时各不相同，
+     *                    共用的 callback 可以据此区分来自不同 server 的同一个 MyRequest.id
+     */
+    public ClientAgent(Aeron aeron, RpcConfig config, int streamId, int maxInFlight, long requestTimeoutNs,
+                       int fragmentLimit, int idNamespace) {
+        if (idNamespace < 0) {
+            throw new IllegalArgumentException("idNamespace must not be negative: " + idNamespace);
+        }
         this.aeron = aeron;
-        this.idleStrategy = new BackoffIdleStrategy();
-        this.clientAdapter = new ClientAdapter();
+        this.config = config;
+        this.streamId = streamId;
+        this.fragmentLimit = fragmentLimit;
+        this.nanoClock = aeron.context().nanoClock();
+        this.idBase = (long) idNamespace << ID_NAMESPACE_SHIFT;
+        this.latencyRecorder = new LatencyRecorder("rpc-client-" + streamId + "-" + config.serverEndpoint(),
+                nanoClock.nanoTime());
+        this.counters = new ClientCounters(aeron, streamId, config.serverEndpoint());
+        this.diagnostics = AeronDiagnostics.forDirectory(aeron.context().aeronDirectoryName());
+        this.topicSubscriber = new TopicSubscriber(aeron, config, fragmentLimit);
+        this.pendingCalls = new PendingCalls(maxInFlight, requestTimeoutNs, nanoClock, latencyRecorder, counters,
+                idBase);
+        this.fragmentAssembler = new FragmentAssembler(new ClientAdapter(pendingCalls, config.bufferLength(),
+                config.maxInflatedLength()));
         this.headerEncoder = new HeaderEncoder();
         this.connectEncoder = new MyConnectEncoder();
         this.requestEncoder = new MyRequestEncoder();
-        this.buffer = new ExpandableDirectByteBuffer(250);
+        this.heartbeatEncoder = new MyHeartbeatEncoder();
+        this.batchEncoder = new MyBatchRequestEncoder();
+        this.groupSizeEncoder = new GroupSizeEncodingEncoder();
+        this.batchBuffer = new ExpandableDirectByteBuffer(config.bufferLength());
+        this.batchLength = config.batchLength();
+        this.batchLingerNs = config.batchLingerNs();
+        this.compression = config.compression() == PayloadEncoding.LZ4;
+        this.compressionThreshold = config.compressionThreshold();
+        this.lz4Codec = new Lz4Codec();
+        this.compressBuffer = new ExpandableDirectByteBuffer(config.bufferLength());
+        this.buffer = new ExpandableDirectByteBuffer(config.bufferLength());
+        this.bufferClaim = new BufferClaim();
+        this.sendTimeSupplier = (termBuffer, termOffset, frameLength) -> sendTimeNs;
     }
 
     @Override
     public void onStart() {
+        connect();
+        log.info("rpc client started, transport: {}, endpoint: {}, streamId: {}", config.transport(),
+                config.serverEndpoint(), streamId);
+    }
+
+    private void connect() {
         state = State.AWAITING_OUTBOUND_CONNECT;
         // 声明一个 publication，用于发送请求到 server，对应 outbound channel
-        publication = aeron.addExclusivePublication(Constants.SERVER_INBOUND_URI, Constants.RPC_STREAM);
+        publication = aeron.addExclusivePublication(config.transport().serverInboundChannel(config), streamId);
         // onConnect 会使用 client 的 uri 告诉 server 响应应当发送到哪个 channel，这里建立对应的 subscription，对应 inbound channel
-        subscription = aeron.addSubscription(Constants.CLIENT_INBOUND_URI, Constants.RPC_STREAM);
-        log.info("rpc client started");
+        subscription = aeron.addSubscription(config.transport().clientInboundChannel(config, publication.sessionId()),
+                Constants.RESPONSE_STREAM, this::onAvailableImage, this::onUnavailableImage);
+    }
+
+    /**
+     * 断开后重建 publication 和 subscription，而不是复用：新的 sessionId 让 server 建立新的 session，
+     * 也不会把旧 server 尚未超时的响应 Image 误认为握手完成
+     */
+    private void reconnect(String reason) {
+        log.warn("rpc client disconnected, endpoint: {}, reason: {}, in flight: {}", config.serverEndpoint(), reason,
+                pendingCalls.size());
+        // 回调里可能立即重试，先离开 READY，call 直接返回 NULL_CALL_ID
+        state = State.AWAITING_OUTBOUND_CONNECT;
+        // 合并中的请求也已登记，随在途请求一起失败
+        batchCount = 0;
+        pendingCalls.failAll(CallFailure.DISCONNECTED);
+        fragmentAssembler.clear();
+        topicSubscriber.reset();
+        quietClose(publication);
+        quietClose(subscription);
+        connect();
+    }
+
+    private void onAvailableImage(Image image) {
+        log.info("response image available, endpoint: {}, sessionId: {}, source: {}", config.serverEndpoint(),
+                image.sessionId(), image.sourceIdentity());
+    }
+
+    /**
+     * conductor 线程回调，server 进程退出或响应 publication 关闭，之后 subscription 不再 connected，由 agent 线程重连
+     */
+    private void onUnavailableImage(Image image) {
+        log.warn("response image unavailable, endpoint: {}, sessionId: {}", config.serverEndpoint(), image.sessionId());
     }
 
     @Override
@@ -68,37 +224,70 @@ public class ClientAgent implements Agent {
         switch (state) {
             // 写请求的 publication，相当于等待与 Server 建立请求 channel
             case AWAITING_OUTBOUND_CONNECT -> {
-                awaitConnected();
+                if (!publication.isConnected()) {
+                    return 0;
+                }
+                log.info("outbound connected, uri: {}", publication.channel());
                 state = State.CONNECTED;
+                return 1;
             }
             // 请求 channel 建连完成，发送 connect 消息告知 server 响应 channel
             case CONNECTED -> {
-                sendConnectRequest();
+                // UDP 的响应 channel 使用临时端口，需要等 MediaDriver 绑定完成才能拿到实际端口
+                String responseChannel = config.transport().resolveResponseChannel(subscription);
+                if (responseChannel == null || !sendConnectRequest(responseChannel)) {
+                    return 0;
+                }
+                handshakeDeadlineNs = nanoClock.nanoTime() + Constants.CONNECT_TIMEOUT_NS;
                 state = State.AWAITING_INBOUND_CONNECT;
+                return 1;
             }
-            // 等待与 server 建立响应 channel
+            // 等待与 server 建立响应 channel，server 没有响应 MyConnect（例如建连超时）时重新握手
             case AWAITING_INBOUND_CONNECT -> {
-                awaitSubscriptionConnected();
-                state = State.READY;
+                if (subscription.isConnected()) {
+                    onInboundConnected();
+                    lastReceivedNs = nanoClock.nanoTime();
+                    state = State.READY;
+                    return 1;
+                }
+                if (nanoClock.nanoTime() - handshakeDeadlineNs >= 0) {
+                    reconnect("handshake timeout");
+                    return 1;
+                }
+                return 0;
             }
-            // 响应 channel 建连完成，双工通信条件具备，开始发请求消息
+            // 双工通信条件具备，收响应、检查超时都不阻塞，请求由 call 随时发出，请求和响应可以交错进行
             case READY -> {
-                sendMessage();
-                state = State.AWAITING_RESULT;
-            }
-            // 等响应，这里直接模拟请求响应模型，阻塞等待
-            case AWAITING_RESULT -> {
-                int workCount = 0;
-                while (workCount <= 0) {
-                    workCount = subscription.poll(clientAdapter, 1);
-                    idleStrategy.idle(workCount);
-                    if (state == State.CLOSED) {
-                        idleStrategy.reset();
-                        return workCount;
-                    }
+                if (!publication.isConnected() || !subscription.isConnected()) {
+                    reconnect(publication.isConnected() ? "response channel lost" : "request channel lost");
+                    return 1;
+                }
+                long nowNs = nanoClock.nanoTime();
+                int workCount = subscription.poll(fragmentAssembler, fragmentLimit);
+                // 响应和心跳回复都算 server 存活的证据，server 进程卡死或退出而 Image 尚未超时的情况靠这里发现
+                if (workCount > 0) {
+                    lastReceivedNs = nowNs;
+                } else if (nowNs - lastReceivedNs > config.clientLivenessTimeoutNs()) {
+                    reconnect("liveness timeout");
+                    return 1;
+                }
+                // 放在 poll 之后，响应回调中发起的请求在本轮就能发出
+                if (batchCount > 0 && nowNs - batchStartNs >= batchLingerNs && flushBatch()) {
+                    workCount++;
+                }
+                workCount += topicSubscriber.doWork(publication);
+                if (nowNs - sendTimeNs >= config.heartbeatIntervalNs()) {
+                    workCount += sendHeartbeat(nowNs);
                 }
-                idleStrategy.reset();
-                state = State.READY;
+                if (nowNs - nextTimeoutCheckNs >= 0) {
+                    workCount += pendingCalls.expire(nowNs);
+                    nextTimeoutCheckNs = nowNs + Constants.TIMEOUT_CHECK_INTERVAL_NS;
+                }
+                if (nowNs - nextLatencyReportNs >= 0) {
+                    latencyRecorder.report(nowNs);
+                    nextLatencyReportNs = nowNs + Constants.LATENCY_REPORT_INTERVAL_NS;
+                }
+                return workCount;
             }
             case CLOSED -> {
                 return 0;
@@ -112,8 +301,12 @@ public class ClientAgent implements Agent {
     @Override
     public void onClose() {
         state = State.CLOSED;
+        batchCount = 0;
+        pendingCalls.failAll(CallFailure.CLOSED);
+        topicSubscriber.reset();
         quietClose(publication);
         quietClose(subscription);
+        quietClose(counters);
     }
 
     @Override
@@ -121,52 +314,249 @@ public class ClientAgent implements Agent {
         return "rpc-client";
     }
 
-    private void sendMessage() {
-        // 5s 一次请求
-        LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(5L));
-        String req = "client time: " + System.currentTimeMillis();
+    /**
+     * 异步发送一个请求，只能在 agent 线程上调用，响应或失败通过 callback 通知。
+     * 请求内容直接从 buffer 拷贝到 log buffer，稳态下不产生垃圾。
+     * <p>
+     * 不会阻塞：在途请求数达到当前的信用窗口（server 繁忙或超时时收缩，见 {@link PendingCalls}），
+     * 或 publication 背压、未连接时直接返回 {@link #NULL_CALL_ID}，由调用方决定稍后重试还是放弃。
+     * 合并请求时返回的 id 表示请求已进入合并中的 MyBatchRequest，由 doWork 发出
+     *
+     * @param methodId server 端注册的方法
+     * @param req      请求内容所在的 buffer，UTF-8 编码
+     * @param offset   请求内容的起始位置
+     * @param length   请求内容的字节数，超过 MTU 时由 Aeron 分片，编码后不能超过 publication 的 maxMessageLength
+     * @return 请求的 correlation id，高 32 位是构造时的 idNamespace，回调中的 id 与之相同，
+     * 未就绪、没有信用或发送失败时返回 {@link #NULL_CALL_ID}
+     */
+    @Override
+    public long call(int methodId, DirectBuffer req, int offset, int length, RpcCallback callback) {
+        if (state != State.READY || pendingCalls.isFull()) {
+            return NULL_CALL_ID;
+        }
+        if (compression && length >= compressionThreshold) {
+            compressBuffer.checkLimit(Lz4Codec.maxCompressedLength(length));
+            int compressedLength = lz4Codec.compress(req, offset, length, compressBuffer, 0);
+            if (compressedLength != Lz4Codec.NOT_COMPRESSED) {
+                return send(methodId, PayloadEncoding.LZ4, compressBuffer, 0, compressedLength, callback);
+            }
+        }
+        int entryLength = MyBatchRequestEncoder.CallsEncoder.sbeBlockLength() +
+                MyBatchRequestEncoder.CallsEncoder.reqHeaderLength() + length;
+        if (batchLength > 0 && BATCH_OVERHEAD + entryLength <= batchLimit()) {
+            return batchCall(entryLength, methodId, req, offset, length, callback);
+        }
+        return send(methodId, PayloadEncoding.NONE, req, offset, length, callback);
+    }
+
+    /**
+     * 单独发送一个 MyRequest
+     */
+    private long send(int methodId, PayloadEncoding encoding, DirectBuffer req, int offset, int length,
+                      RpcCallback callback) {
+        int messageLength = HeaderEncoder.ENCODED_LENGTH + MyRequestEncoder.BLOCK_LENGTH +
+                MyRequestEncoder.reqHeaderLength() + length;
+        if (messageLength > publication.maxMessageLength()) {
+            throw new IllegalArgumentException("request too large: length=" + messageLength +
+                    " maxMessageLength=" + publication.maxMessageLength());
+        }
+        long callId = nextId();
+        sendTimeNs = nanoClock.nanoTime();
+        // 先登记再发送，避免响应比登记先到
+        pendingCalls.register(callId, callback, sendTimeNs);
+        long result;
+        if (messageLength <= publication.maxPayloadLength()) {
+            // 直接在 log buffer 上编码，省掉 buffer -> term 的拷贝
+            result = claim(messageLength);
+            if (result >= 0) {
+                encodeRequest(bufferClaim.buffer(), bufferClaim.offset(), callId, methodId, encoding, req, offset,
+                        length);
+                bufferClaim.reservedValue(sendTimeNs);
+                bufferClaim.commit();
+            }
+        } else {
+            // 超过 maxPayloadLength 的消息需要分片，tryClaim 不支持，只能 offer
+            encodeRequest(buffer, 0, callId, methodId, encoding, req, offset, length);
+            result = offer(buffer, messageLength);
+        }
+        if (result < 0) {
+            // 没发出去，撤销登记，不触发回调
+            pendingCalls.cancel(callId);
+            return NULL_CALL_ID;
+        }
+        counters.onRequestSent();
+        return idBase | callId;
+    }
+
+    /**
+     * 把请求追加到合并中的 MyBatchRequest，加上它会超过上限时先把已合并的发出，背压时不追加
+     */
+    private long batchCall(int entryLength, int methodId, DirectBuffer req, int offset, int length,
+                           RpcCallback callback) {
+        boolean full = HeaderEncoder.ENCODED_LENGTH + batchEncoder.encodedLength() + entryLength > batchLimit() ||
+                batchCount == MyBatchRequestEncoder.CallsEncoder.countMaxValue();
+        if (batchCount > 0 && full && !flushBatch()) {
+            return NULL_CALL_ID;
+        }
+        long callId = nextId();
+        sendTimeNs = nanoClock.nanoTime();
+        if (batchCount == 0) {
+            batchEncoder.wrapAndApplyHeader(batchBuffer, 0, headerEncoder);
+            // 元素个数先按上限声明，发出前改写为实际个数
+            batchCalls = batchEncoder.callsCount(MyBatchRequestEncoder.CallsEncoder.countMaxValue());
+            batchStartNs = sendTimeNs;
+        }
+        pendingCalls.register(callId, callback, sendTimeNs);
+        batchCalls.next().id(callId).methodId(methodId).putReq(req, offset, length);
+        batchCount++;
+        counters.onRequestSent();
+        return idBase | callId;
+    }
+
+    /**
+     * @return 合并的请求已发出时返回 true，背压时返回 false，保留到下次再发
+     */
+    private boolean flushBatch() {
+        groupSizeEncoder.wrap(batchBuffer, HeaderEncoder.ENCODED_LENGTH + MyBatchRequestEncoder.BLOCK_LENGTH)
+                .numInGroup(batchCount);
+        sendTimeNs = nanoClock.nanoTime();
+        if (offer(batchBuffer, HeaderEncoder.ENCODED_LENGTH + batchEncoder.encodedLength()) < 0) {
+            return false;
+        }
+        batchCount = 0;
+        return true;
+    }
+
+    /**
+     * 一个 MyBatchRequest 的字节上限，不超过一个 frame，不需要分片
+     */
+    private int batchLimit() {
+        return Math.min(batchLength, publication.maxPayloadLength());
+    }
+
+    private void encodeRequest(MutableDirectBuffer buffer, int offset, long callId, int methodId,
+                               PayloadEncoding encoding, DirectBuffer req, int reqOffset, int reqLength) {
         // 把 header 写入 buffer
-        requestEncoder.wrapAndApplyHeader(buffer, 0, headerEncoder);
-        requestEncoder.id(id);
-        requestEncoder.req(req);
-        send(buffer, headerEncoder.encodedLength() + requestEncoder.encodedLength());
-        log.info("request sent, id: {}, req: {}", id, req);
-        id++;
+        requestEncoder.wrapAndApplyHeader(buffer, offset, headerEncoder);
+        requestEncoder.id(callId);
+        requestEncoder.methodId(methodId);
+        requestEncoder.encoding(encoding);
+        requestEncoder.putReq(req, reqOffset, reqLength);
+    }
+
+    /**
+     * 订阅 server 推送的 topic，只能在 agent 线程上或 agent 启动前调用，就绪后生效，重连后自动重新订阅
+     */
+    public void subscribe(int topicId, PushListener listener) {
+        topicSubscriber.subscribe(topicId, listener);
+    }
+
+    @Override
+    public boolean isReady() {
+        return state == State.READY;
+    }
+
+    @Override
+    public int inFlight() {
+        return pendingCalls.size();
+    }
+
+    /**
+     * @return 当前的信用窗口，即允许的最大在途请求数
+     */
+    public int window() {
+        return pendingCalls.window();
+    }
+
+    /**
+     * @return 在途请求数是否已达到信用窗口
+     */
+    public boolean isFull() {
+        return pendingCalls.isFull();
     }
 
-    private void sendConnectRequest() {
+    /**
+     * @return 请求发往的 server 地址，IPC 模式下没有意义
+     */
+    public String endpoint() {
+        return config.serverEndpoint();
+    }
+
+    /**
+     * MyRequest.id 是 uint32，到达上限后回绕，并跳过仍在途的 id
+     */
+    private long nextId() {
+        long callId = id;
+        while (pendingCalls.contains(callId)) {
+            callId = callId >= MyRequestEncoder.idMaxValue() ? 0 : callId + 1;
+        }
+        id = callId >= MyRequestEncoder.idMaxValue() ? 0 : callId + 1;
+        return callId;
+    }
+
+    /**
+     * @return 没发出去时返回 false，下个 duty cycle 重试
+     */
+    private boolean sendConnectRequest(String responseChannel) {
         connectEncoder.wrapAndApplyHeader(buffer, 0, headerEncoder);
         // subscription 对应的 inbound channel，告诉 server 应当 pub 到哪个 channel
-        connectEncoder.channel(Constants.CLIENT_INBOUND_URI);
-        connectEncoder.streamId(1);
-        send(buffer, headerEncoder.encodedLength() + connectEncoder.encodedLength());
+        connectEncoder.streamId(Constants.RESPONSE_STREAM);
+        // 声明能接收的响应编码
+        connectEncoder.compression(config.compression());
+        connectEncoder.channel(responseChannel);
+        int length = headerEncoder.encodedLength() + connectEncoder.encodedLength();
+        sendTimeNs = nanoClock.nanoTime();
+        long result = offer(buffer, length);
+        if (result < 0 && result != Publication.BACK_PRESSURED) {
+            log.warn("connect not sent, result: {}", Publication.errorString(result));
+        }
+        return result >= 0;
     }
 
-    private void awaitSubscriptionConnected() {
-        while (state != State.CLOSED && !subscription.isConnected()) {
-            aeron.context().idleStrategy().idle();
+    /**
+     * 一段时间没有请求时发一个心跳，让 server 知道 client 还在，server 的回复让 client 知道 server 还在。
+     * 尽力而为，背压时跳过，等下一个间隔
+     */
+    private int sendHeartbeat(long nowNs) {
+        sendTimeNs = nowNs;
+        if (claim(HeaderEncoder.ENCODED_LENGTH + MyHeartbeatEncoder.BLOCK_LENGTH) < 0) {
+            return 0;
         }
-        log.info("inbound connected, uri: {}", subscription.channel());
-        ProcessUtils.lsofUdp();
-        ProcessUtils.tree(new File(Constants.AERON_DIR));
+        heartbeatEncoder.wrapAndApplyHeader(bufferClaim.buffer(), bufferClaim.offset(), headerEncoder);
+        heartbeatEncoder.timestamp(nowNs);
+        bufferClaim.reservedValue(nowNs);
+        bufferClaim.commit();
+        return 1;
+    }
+
+    private void onInboundConnected() {
+        log.info("inbound connected, uri: {}", config.transport().resolveResponseChannel(subscription));
+        diagnostics.requestSnapshot("client inbound connected");
     }
 
-    private void awaitConnected() {
-        while (state != State.CLOSED && !publication.isConnected()) {
-            aeron.context().idleStrategy().idle();
+    /**
+     * ADMIN_ACTION 是 term 轮转之类的瞬时状态，立即重试，其它失败（背压、未连接、已关闭）交给调用方处理，不自旋
+     */
+    private long claim(int length) {
+        long result;
+        do {
+            result = publication.tryClaim(length, bufferClaim);
+        } while (result == Publication.ADMIN_ACTION);
+        if (result < 0) {
+            counters.onOfferFailed(result);
         }
-        log.info("outbound connected, uri: {}", publication.channel());
+        return result;
     }
 
-    private void send(DirectBuffer buffer, int length) {
-        while (state != State.CLOSED) {
-            long streamPos = publication.offer(buffer, 0, length);
-            if (streamPos >= 0) {
-                break;
-            }
-            idleStrategy.idle();
+    private long offer(DirectBuffer buffer, int length) {
+        long result;
+        do {
+            result = publication.offer(buffer, 0, length, sendTimeSupplier);
+        } while (result == Publication.ADMIN_ACTION);
+        if (result < 0) {
+            counters.onOfferFailed(result);
         }
-        idleStrategy.reset();
+        return result;
     }
 
     enum State {
@@ -174,7 +564,6 @@ public class ClientAgent implements Agent {
         CONNECTED,
         AWAITING_INBOUND_CONNECT,
         READY,
-        AWAITING_RESULT,
         CLOSED
     }
 }
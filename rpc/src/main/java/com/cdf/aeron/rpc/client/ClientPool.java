@@ -0,0 +1,221 @@
+package com.cdf.aeron.rpc.client;
+
+import com.cdf.aeron.rpc.RpcConfig;
+import com.cdf.aeron.rpc.Transport;
+import io.aeron.Aeron;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.DirectBuffer;
+import org.agrona.collections.Hashing;
+import org.agrona.concurrent.Agent;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 连接多个 server 的 client，每个 server 一个 {@link ClientAgent}（各自的 publication、响应 subscription 和 MyConnect 握手），
+ * 组合在同一个线程上，按 {@link LoadBalance} 选择请求发往哪个 server。
+ * <p>
+ * server 是否可用直接看对应 ClientAgent 是否就绪：publication 未连接、响应 Image 不可用时 ClientAgent 自动重连并重新握手，
+ * 期间不会被选中，恢复后自动重新加入。IPC 模式下只有一个 MediaDriver，忽略 serverEndpoints
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@Slf4j
+public class ClientPool implements Agent, RpcCaller {
+    // 每个 server 在哈希环上的虚拟节点数，越多 key 分布越均匀
+    private static final int VIRTUAL_NODES = 128;
+
+    private final ClientAgent[] clients;
+    private final LoadBalance loadBalance;
+    // 一致性哈希环，按哈希值排序，ringClients[i] 是 ringHashes[i] 对应的 client 下标
+    private final int[] ringHashes;
+    private final int[] ringClients;
+
+    private int nextIndex;
+
+    /**
+     * @param config           serverEndpoints 和 loadBalance 决定连接哪些 server 以及如何选择，其它配置所有 server 共用
+     * @param maxInFlight      每个 server 的最大在途请求数
+     * @param requestTimeoutNs 单个请求的超时时间
+     * @param fragmentLimit    每个 server 每个 duty cycle 最多处理的响应 fragment 数
+     */
+    public ClientPool(Aeron aeron, RpcConfig config, int streamId, int maxInFlight, long requestTimeoutNs,
+                      int fragmentLimit) {
+        this(aeron, config, streamId, maxInFlight, requestTimeoutNs, fragmentLimit, 0);
+    }
+
+    /**
+     * @param idNamespaceBase 第 i 个 server 的 id 命名空间为 idNamespaceBase + i，多个 pool 组合使用时（{@link ShardedClient}）错开
+     */
+    public ClientPool(Aeron aeron, RpcConfig config, int streamId, int maxInFlight, long requestTimeoutNs,
+                      int fragmentLimit, int idNamespaceBase) {
+        List<String> endpoints = config.transport() == Transport.IPC ?
+                List.of(config.serverEndpoint()) : config.serverEndpoints();
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("no server endpoint");
+        }
+        this.loadBalance = config.loadBalance();
+        this.clients = new ClientAgent[endpoints.size()];
+        for (int i = 0; i < clients.length; i++) {
+            // 以下标作为 id 的命名空间，各 server 的 correlation id 互不重复
+            clients[i] = new ClientAgent(aeron, config.withServerEndpoint(endpoints.get(i)), streamId, maxInFlight,
+                    requestTimeoutNs, fragmentLimit, idNamespaceBase + i);
+        }
+        this.ringHashes = new int[clients.length * VIRTUAL_NODES];
+        this.ringClients = new int[ringHashes.length];
+        buildRing(endpoints);
+    }
+
+    private void buildRing(List<String> endpoints) {
+        // 高 32 位是哈希值，低 32 位是 client 下标，排序后拆开
+        long[] nodes = new long[ringHashes.length];
+        for (int i = 0; i < clients.length; i++) {
+            long endpointHash = endpoints.get(i).hashCode();
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                int hash = Hashing.hash((endpointHash << 32) | v);
+                nodes[i * VIRTUAL_NODES + v] = ((long) hash << 32) | i;
+            }
+        }
+        Arrays.sort(nodes);
+        for (int i = 0; i < nodes.length; i++) {
+            ringHashes[i] = (int) (nodes[i] >> 32);
+            ringClients[i] = (int) nodes[i];
+        }
+    }
+
+    @Override
+    public void onStart() {
+        for (ClientAgent client : clients) {
+            client.onStart();
+        }
+        log.info("client pool started, servers: {}, loadBalance: {}", clients.length, loadBalance);
+    }
+
+    @Override
+    public int doWork() {
+        int workCount = 0;
+        for (ClientAgent client : clients) {
+            workCount += client.doWork();
+        }
+        return workCount;
+    }
+
+    @Override
+    public void onClose() {
+        for (ClientAgent client : clients) {
+            client.onClose();
+        }
+    }
+
+    @Override
+    public String roleName() {
+        return "rpc-client-pool";
+    }
+
+    /**
+     * 按 ROUND_ROBIN 或 LEAST_OUTSTANDING 选择 server，CONSISTENT_HASH 需要 key，这里退化为轮询。
+     * correlation id 的高 32 位是 idNamespaceBase 加上 server 在 serverEndpoints 中的下标，在整个 pool 内唯一，多个调用可以共用一个 callback
+     */
+    @Override
+    public long call(int methodId, DirectBuffer req, int offset, int length, RpcCallback callback) {
+        if (loadBalance == LoadBalance.LEAST_OUTSTANDING) {
+            ClientAgent client = leastOutstanding();
+            return client == null ? ClientAgent.NULL_CALL_ID : client.call(methodId, req, offset, length, callback);
+        }
+        return roundRobin(methodId, req, offset, length, callback);
+    }
+
+    /**
+     * CONSISTENT_HASH 时按 key 选择 server，同一个 key 总是发往同一个可用的 server，其它方式忽略 key
+     */
+    public long call(long key, int methodId, DirectBuffer req, int offset, int length, RpcCallback callback) {
+        if (loadBalance != LoadBalance.CONSISTENT_HASH) {
+            return call(methodId, req, offset, length, callback);
+        }
+        ClientAgent client = hashed(key);
+        return client == null ? ClientAgent.NULL_CALL_ID : client.call(methodId, req, offset, length, callback);
+    }
+
+    private long roundRobin(int methodId, DirectBuffer req, int offset, int length, RpcCallback callback) {
+        for (int i = 0; i < clients.length; i++) {
+            ClientAgent client = clients[nextIndex];
+            nextIndex = nextIndex + 1 == clients.length ? 0 : nextIndex + 1;
+            if (client.isReady() && !client.isFull()) {
+                long callId = client.call(methodId, req, offset, length, callback);
+                if (callId != ClientAgent.NULL_CALL_ID) {
+                    return callId;
+                }
+            }
+        }
+        return ClientAgent.NULL_CALL_ID;
+    }
+
+    private ClientAgent leastOutstanding() {
+        ClientAgent selected = null;
+        for (ClientAgent client : clients) {
+            if (client.isReady() && !client.isFull() && (selected == null || client.inFlight() < selected.inFlight())) {
+                selected = client;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 从 key 的哈希值在环上顺时针找第一个就绪的 server
+     */
+    private ClientAgent hashed(long key) {
+        int position = Arrays.binarySearch(ringHashes, Hashing.hash(key));
+        if (position < 0) {
+            position = -position - 1;
+        }
+        for (int i = 0; i < ringHashes.length; i++) {
+            ClientAgent client = clients[ringClients[(position + i) % ringHashes.length]];
+            if (client.isReady()) {
+                return client;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 在每个 server 上订阅 topic，任何一个 server 广播的消息都能收到，只能在 agent 线程上或 agent 启动前调用
+     */
+    public void subscribe(int topicId, PushListener listener) {
+        for (ClientAgent client : clients) {
+            client.subscribe(topicId, listener);
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+        for (ClientAgent client : clients) {
+            if (client.isReady()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int inFlight() {
+        int inFlight = 0;
+        for (ClientAgent client : clients) {
+            inFlight += client.inFlight();
+        }
+        return inFlight;
+    }
+
+    /**
+     * @return 已就绪的 server 数
+     */
+    public int readyCount() {
+        int count = 0;
+        for (ClientAgent client : clients) {
+            if (client.isReady()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,79 @@
+package com.cdf.aeron.rpc.client;
+
+import com.cdf.aeron.rpc.service.Methods;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.Agent;
+import org.agrona.concurrent.NanoClock;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 示例请求方，与 {@link ClientAgent}、{@link ClientPool} 或 {@link ShardedClient} 组合成 CompositeAgent 跑在同一个线程上，client 就绪后每 5s 发一个请求，
+ * 交替调用 SERVER_TIME 和 BROADCAST，后者的内容由 server 推送给所有订阅了 {@link Methods#BROADCAST_TOPIC} 的 client
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@Slf4j
+public class DemoAgent implements Agent {
+    private static final long SEND_INTERVAL_NS = TimeUnit.SECONDS.toNanos(5L);
+    private static final byte[] REQ_PREFIX = "client time: ".getBytes(StandardCharsets.US_ASCII);
+    private static final RpcCallback LOGGING_CALLBACK = new RpcCallback() {
+        @Override
+        public void onResponse(long id, DirectBuffer buffer, int offset, int length) {
+            if (log.isInfoEnabled()) {
+                log.info("response received, id: {}, res: {}", id, buffer.getStringWithoutLengthUtf8(offset, length));
+            }
+        }
+
+        @Override
+        public void onFailure(long id, CallFailure failure) {
+            log.warn("request failed, id: {}, failure: {}", id, failure);
+        }
+    };
+
+    private final RpcCaller clientAgent;
+    private final NanoClock nanoClock;
+    private final UnsafeBuffer reqBuffer;
+
+    private long nextSendNs;
+    private long sendCount;
+
+    public DemoAgent(RpcCaller clientAgent, NanoClock nanoClock) {
+        this.clientAgent = clientAgent;
+        this.nanoClock = nanoClock;
+        this.reqBuffer = new UnsafeBuffer(new byte[64]);
+        this.reqBuffer.putBytes(0, REQ_PREFIX);
+    }
+
+    @Override
+    public int doWork() {
+        long nowNs = nanoClock.nanoTime();
+        // 5s 一次请求
+        if (!clientAgent.isReady() || nowNs - nextSendNs < 0) {
+            return 0;
+        }
+        nextSendNs = nowNs + SEND_INTERVAL_NS;
+        // 前缀只写一次，之后每次只覆盖数字部分
+        int length = REQ_PREFIX.length + reqBuffer.putLongAscii(REQ_PREFIX.length, System.currentTimeMillis());
+        int methodId = (sendCount++ & 1) == 0 ? Methods.SERVER_TIME : Methods.BROADCAST;
+        long callId = clientAgent.call(methodId, reqBuffer, 0, length, LOGGING_CALLBACK);
+        if (callId == ClientAgent.NULL_CALL_ID) {
+            log.warn("request not sent, in flight: {}", clientAgent.inFlight());
+            return 0;
+        }
+        if (log.isInfoEnabled()) {
+            log.info("request sent, id: {}, methodId: {}, req: {}", callId, methodId,
+                    reqBuffer.getStringWithoutLengthAscii(0, length));
+        }
+        return 1;
+    }
+
+    @Override
+    public String roleName() {
+        return "rpc-demo";
+    }
+}
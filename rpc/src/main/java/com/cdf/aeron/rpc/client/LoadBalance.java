@@ -0,0 +1,23 @@
+package com.cdf.aeron.rpc.client;
+
+/**
+ * {@link ClientPool} 在多个 server 之间选择目标的方式，未就绪（未连接、重连中）的 server 总是被跳过
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public enum LoadBalance {
+    /**
+     * 轮询，选中的 server 没有信用或背压时依次尝试下一个
+     */
+    ROUND_ROBIN,
+    /**
+     * 选在途请求最少的 server，各 server 处理能力不同或有慢节点时更均衡
+     */
+    LEAST_OUTSTANDING,
+    /**
+     * 按调用方给出的 key 做一致性哈希，同一个 key 总是落到同一个 server（例如利用 server 端的响应缓存），
+     * 增减 server 时只有少部分 key 迁移；目标 server 不可用时顺延到哈希环上的下一个
+     */
+    CONSISTENT_HASH
+}
@@ -0,0 +1,222 @@
+package com.cdf.aeron.rpc.client;
+
+import com.cdf.aeron.rpc.metrics.ClientCounters;
+import com.cdf.aeron.rpc.metrics.LatencyRecorder;
+import org.agrona.DirectBuffer;
+import org.agrona.collections.Long2ObjectHashMap;
+import org.agrona.concurrent.NanoClock;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * 在途请求表，以 correlation id（MyRequest.id / MyResponse.id）为 key，使用原始类型 long 的 map 避免装箱，
+ * 回调给调用方的 id 在此基础上加上所属 ClientAgent 的命名空间（高 32 位），见 {@link ClientAgent}。
+ * 表项对象池化复用，稳态下登记和完成请求都不产生垃圾。表项记录了发送时间，收到响应时顺带记录往返延迟。
+ * <p>
+ * 在途请求数受信用窗口限制，窗口按 AIMD 调整：server 返回 SERVER_BUSY 或请求超时时减半，
+ * 每收到一个窗口的成功响应加一，最大为 maxInFlight，server 过载时 client 自动降低发送速率。
+ * 只在 {@link ClientAgent} 的线程上访问，所以不需要同步
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public class PendingCalls {
+    private final Long2ObjectHashMap<PendingCall> calls;
+    private final ArrayDeque<PendingCall> pool;
+    // 先收集再回调，回调中可能会发起新的请求，不能在遍历 map 时修改它
+    private final ArrayList<PendingCall> failedCalls;
+    private final int maxInFlight;
+    private final long requestTimeoutNs;
+    private final NanoClock nanoClock;
+    private final LatencyRecorder latencyRecorder;
+    private final ClientCounters counters;
+    // 回调中的 id 为 idBase | correlation id
+    private final long idBase;
+
+    private int window;
+    // 窗口增长前还需要的成功响应数
+    private int successesUntilGrowth;
+
+    /**
+     * @param latencyRecorder 记录从登记到收到响应的往返延迟
+     * @param idBase          回调中的 id 的高 32 位
+     */
+    public PendingCalls(int maxInFlight, long requestTimeoutNs, NanoClock nanoClock,
+                        LatencyRecorder latencyRecorder, ClientCounters counters, long idBase) {
+        this.calls = new Long2ObjectHashMap<>();
+        this.pool = new ArrayDeque<>(maxInFlight);
+        this.failedCalls = new ArrayList<>();
+        this.maxInFlight = maxInFlight;
+        this.requestTimeoutNs = requestTimeoutNs;
+        this.nanoClock = nanoClock;
+        this.latencyRecorder = latencyRecorder;
+        this.counters = counters;
+        this.idBase = idBase;
+        this.window = maxInFlight;
+        this.successesUntilGrowth = maxInFlight;
+        for (int i = 0; i < maxInFlight; i++) {
+            pool.addLast(new PendingCall());
+        }
+    }
+
+    /**
+     * 在途请求数是否已经达到信用窗口
+     */
+    public boolean isFull() {
+        return calls.size() >= window;
+    }
+
+    public int window() {
+        return window;
+    }
+
+    public int size() {
+        return calls.size();
+    }
+
+    public boolean contains(long id) {
+        return calls.containsKey(id);
+    }
+
+    public void register(long id, RpcCallback callback, long nowNs) {
+        PendingCall call = pool.pollFirst();
+        if (call == null) {
+            call = new PendingCall();
+        }
+        call.id = id;
+        call.callback = callback;
+        call.sendTimeNs = nowNs;
+        call.deadlineNs = nowNs + requestTimeoutNs;
+        calls.put(id, call);
+    }
+
+    /**
+     * 请求未能发出时撤销登记，不触发回调
+     */
+    public void cancel(long id) {
+        PendingCall call = calls.remove(id);
+        if (call != null) {
+            release(call);
+        }
+    }
+
+    /**
+     * 收到响应，找到对应的在途请求并回调，已超时的响应直接丢弃
+     *
+     * @return 是否找到对应的在途请求
+     */
+    public boolean onResponse(long id, DirectBuffer buffer, int offset, int length) {
+        PendingCall call = calls.remove(id);
+        if (call == null) {
+            return false;
+        }
+        latencyRecorder.record(nanoClock.nanoTime() - call.sendTimeNs);
+        counters.onResponseReceived();
+        if (--successesUntilGrowth <= 0 && window < maxInFlight) {
+            window++;
+            successesUntilGrowth = window;
+        }
+        RpcCallback callback = call.callback;
+        release(call);
+        callback.onResponse(idBase | id, buffer, offset, length);
+        return true;
+    }
+
+    /**
+     * 收到流式响应的一个分块，在途请求保持登记，超时时间从此刻重新计算，持续有分块到达的长流不会超时
+     *
+     * @return 是否找到对应的在途请求
+     */
+    public boolean onChunk(long id, DirectBuffer buffer, int offset, int length) {
+        PendingCall call = calls.get(id);
+        if (call == null) {
+            return false;
+        }
+        call.deadlineNs = nanoClock.nanoTime() + requestTimeoutNs;
+        call.callback.onChunk(idBase | id, buffer, offset, length);
+        return true;
+    }
+
+    /**
+     * server 返回了非 OK 的状态，以指定原因让对应的在途请求失败
+     *
+     * @return 是否找到对应的在途请求
+     */
+    public boolean onFailure(long id, CallFailure failure) {
+        PendingCall call = calls.remove(id);
+        if (call == null) {
+            return false;
+        }
+        counters.onCallFailed();
+        if (failure == CallFailure.SERVER_BUSY) {
+            onCongestion();
+        }
+        RpcCallback callback = call.callback;
+        release(call);
+        callback.onFailure(idBase | id, failure);
+        return true;
+    }
+
+    /**
+     * 超时检查，回调并移除所有已超时的请求
+     *
+     * @return 超时的请求数
+     */
+    public int expire(long nowNs) {
+        Iterator<PendingCall> iterator = calls.values().iterator();
+        while (iterator.hasNext()) {
+            PendingCall call = iterator.next();
+            if (nowNs - call.deadlineNs >= 0) {
+                iterator.remove();
+                failedCalls.add(call);
+            }
+        }
+        if (!failedCalls.isEmpty()) {
+            // server 丢弃响应或处理不过来时表现为超时，一批超时只收缩一次
+            onCongestion();
+        }
+        return failCollected(CallFailure.TIMEOUT);
+    }
+
+    /**
+     * 以指定原因让所有在途请求失败
+     */
+    public void failAll(CallFailure failure) {
+        failedCalls.addAll(calls.values());
+        calls.clear();
+        failCollected(failure);
+    }
+
+    private int failCollected(CallFailure failure) {
+        int size = failedCalls.size();
+        for (int i = 0; i < size; i++) {
+            PendingCall call = failedCalls.get(i);
+            long id = idBase | call.id;
+            RpcCallback callback = call.callback;
+            release(call);
+            counters.onCallFailed();
+            callback.onFailure(id, failure);
+        }
+        failedCalls.clear();
+        return size;
+    }
+
+    private void onCongestion() {
+        window = Math.max(1, window / 2);
+        successesUntilGrowth = window;
+    }
+
+    private void release(PendingCall call) {
+        call.callback = null;
+        pool.addFirst(call);
+    }
+
+    private static final class PendingCall {
+        private long id;
+        private RpcCallback callback;
+        private long sendTimeNs;
+        private long deadlineNs;
+    }
+}
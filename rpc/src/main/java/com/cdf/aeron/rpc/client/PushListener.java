@@ -0,0 +1,24 @@
+package com.cdf.aeron.rpc.client;
+
+import org.agrona.DirectBuffer;
+
+/**
+ * server 推送的回调，由 {@link ClientAgent} 所在的线程执行，实现中不应有阻塞操作
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@FunctionalInterface
+public interface PushListener {
+
+    /**
+     * 收到一条推送，内容以 buffer 切片的形式给出，只在回调期间有效
+     *
+     * @param topicId  订阅的 topic
+     * @param sequence 该 topic 的推送序号，中途订阅或 server 重启时不从 0 开始或重新从 0 开始
+     * @param buffer   推送内容所在的 buffer
+     * @param offset   推送内容的起始位置
+     * @param length   推送内容的字节数
+     */
+    void onPush(int topicId, long sequence, DirectBuffer buffer, int offset, int length);
+}
@@ -0,0 +1,20 @@
+package com.cdf.aeron.rpc.client;
+
+/**
+ * 阻塞调用失败，见 {@link BlockingRpcClient}。异步调用的失败通过 {@link RpcCallback#onFailure} 通知，不抛异常
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public class RpcCallException extends RuntimeException {
+    private final CallFailure failure;
+
+    public RpcCallException(int methodId, CallFailure failure) {
+        super("rpc call failed, methodId: " + methodId + ", failure: " + failure, null, false, false);
+        this.failure = failure;
+    }
+
+    public CallFailure failure() {
+        return failure;
+    }
+}
@@ -0,0 +1,43 @@
+package com.cdf.aeron.rpc.client;
+
+import org.agrona.DirectBuffer;
+
+/**
+ * 异步 RPC 调用的回调，由 {@link ClientAgent} 所在的线程执行，实现中不应有阻塞操作
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public interface RpcCallback {
+
+    /**
+     * 收到响应，响应内容以 buffer 切片的形式给出，不会物化成 String。
+     * 切片只在回调期间有效，需要保留时应拷贝出去
+     *
+     * @param id     correlation id，即 MyRequest.id / MyResponse.id
+     * @param buffer 响应内容所在的 buffer
+     * @param offset 响应内容的起始位置
+     * @param length 响应内容的字节数（UTF-8）
+     */
+    void onResponse(long id, DirectBuffer buffer, int offset, int length);
+
+    /**
+     * 流式方法的一个响应分块，所有分块按顺序到达，之后以一个内容为空的 {@link #onResponse} 结束，
+     * 中途失败时以 {@link #onFailure} 结束。切片只在回调期间有效
+     *
+     * @param id     correlation id
+     * @param buffer 分块内容所在的 buffer
+     * @param offset 分块内容的起始位置
+     * @param length 分块内容的字节数
+     */
+    default void onChunk(long id, DirectBuffer buffer, int offset, int length) {
+    }
+
+    /**
+     * 调用失败，此后不会再有该 id 的 {@link #onResponse} 回调
+     *
+     * @param id      correlation id
+     * @param failure 失败原因
+     */
+    void onFailure(long id, CallFailure failure);
+}
@@ -0,0 +1,41 @@
+package com.cdf.aeron.rpc.client;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 发起异步 RPC 调用的一方：{@link ClientAgent} 连接一个 server，{@link ClientPool} 在多个 server 之间负载均衡，
+ * 调用方只依赖这个接口，server 水平扩展时不需要改动。只能在所属 agent 的线程上调用
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public interface RpcCaller {
+
+    /**
+     * 异步发送一个请求，不阻塞，响应或失败通过 callback 通知，见 {@link ClientAgent#call(int, DirectBuffer, int, int, RpcCallback)}
+     *
+     * @return 请求的 correlation id，未就绪、没有信用或发送失败时返回 {@link ClientAgent#NULL_CALL_ID}
+     */
+    long call(int methodId, DirectBuffer req, int offset, int length, RpcCallback callback);
+
+    /**
+     * 便捷方法，会分配 byte[]，热路径上应使用 {@link #call(int, DirectBuffer, int, int, RpcCallback)}
+     */
+    default long call(int methodId, String req, RpcCallback callback) {
+        byte[] reqBytes = req.getBytes(StandardCharsets.UTF_8);
+        return call(methodId, new UnsafeBuffer(reqBytes), 0, reqBytes.length, callback);
+    }
+
+    /**
+     * @return 是否可以发送请求
+     */
+    boolean isReady();
+
+    /**
+     * @return 在途请求数
+     */
+    int inFlight();
+}
@@ -2,13 +2,18 @@ package com.cdf.aeron.rpc.client;
 
 import com.cdf.aeron.common.help.DefaultErrorHandler;
 import com.cdf.aeron.rpc.Constants;
+import com.cdf.aeron.rpc.RpcConfig;
+import com.cdf.aeron.rpc.RpcThreadFactory;
+import com.cdf.aeron.rpc.Transport;
+import com.cdf.aeron.rpc.loadgen.LoadGenConfig;
+import com.cdf.aeron.rpc.loadgen.LoadGenerator;
+import com.cdf.aeron.rpc.service.Methods;
 import io.aeron.Aeron;
 import io.aeron.driver.MediaDriver;
-import io.aeron.driver.ThreadingMode;
 import lombok.extern.slf4j.Slf4j;
 import org.agrona.CloseHelper;
 import org.agrona.concurrent.AgentRunner;
-import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.CompositeAgent;
 import org.agrona.concurrent.ShutdownSignalBarrier;
 
 /**
@@ -19,28 +24,51 @@ import org.agrona.concurrent.ShutdownSignalBarrier;
 public class RpcClient {
     static void main() {
         ShutdownSignalBarrier ssb = new ShutdownSignalBarrier();
+        RpcConfig config = RpcConfig.load();
+        log.info("rpc config: {}", config);
+        // 压测模式，跑完计划的请求即退出，有回归时退出码为 1
+        if (LoadGenConfig.isEnabled()) {
+            boolean passed = LoadGenerator.run(config, LoadGenConfig.load());
+            if (!passed) {
+                System.exit(1);
+            }
+            return;
+        }
 
-        // 创建一个 MediaDriver
-        MediaDriver.Context mediaDriverCtx = new MediaDriver.Context()
-                .aeronDirectoryName(Constants.AERON_DIR + "/aeron-rpc-client")
-                .dirDeleteOnStart(true)
-                .dirDeleteOnShutdown(false)
-                // 三个线程的模型，请求、响应、Conductor 各一个
-                .threadingMode(ThreadingMode.DEDICATED);
-        // embedded
-        MediaDriver mediaDriver = MediaDriver.launch(mediaDriverCtx);
+        // IPC 模式下不启动自己的 MediaDriver，连接 server 启动的那个，因此需要先启动 server
+        MediaDriver mediaDriver = null;
+        String aeronDir = config.ipcAeronDir();
+        if (config.transport() == Transport.UDP) {
+            // 创建一个 MediaDriver，线程模型默认 DEDICATED，请求、响应、Conductor 各一个线程
+            MediaDriver.Context mediaDriverCtx = config.applyTo(new MediaDriver.Context()
+                    .aeronDirectoryName(config.aeronDir() + "/aeron-rpc-client")
+                    .dirDeleteOnStart(true)
+                    .dirDeleteOnShutdown(false));
+            // embedded
+            mediaDriver = MediaDriver.launch(mediaDriverCtx);
+            aeronDir = mediaDriver.aeronDirectoryName();
+        }
 
         // 创建一个 Aeron 实例，连接到 MediaDriver 以进行 pub
-        Aeron.Context aeronCtx = new Aeron.Context().aeronDirectoryName(mediaDriver.aeronDirectoryName());
+        Aeron.Context aeronCtx = new Aeron.Context().aeronDirectoryName(aeronDir);
         Aeron aeron = Aeron.connect(aeronCtx);
 
         /*
           agrona 编程模型，创建一个 Agent，包装成 AgentRunner 这个 Runnable，然后不断地运行 doWork 方法，
-          这里是模拟 RPC client 单独一个线程发送请求、处理响应
+          这里是模拟 RPC client 单独一个线程发送请求、处理响应，DemoAgent 与 ShardedClient 组合在同一个线程上发起请求，
+          ShardedClient 每个 server 分片一个 ClientPool，ClientPool 按 rpc.server.endpoints 连接一个或多个 server，
+          增加 server 只需要改配置
          */
-        ClientAgent clientAgent = new ClientAgent(aeron);
-        AgentRunner agentRunner = new AgentRunner(new BackoffIdleStrategy(), DefaultErrorHandler.INSTANCE, null, clientAgent);
-        AgentRunner.startOnThread(agentRunner);
+        // server 分片部署时，带 key 的调用按 key 的哈希选分片，DemoAgent 的调用不带 key，轮流发往各分片
+        ShardedClient shardedClient = new ShardedClient(aeron, config, Constants.MAX_IN_FLIGHT,
+                Constants.REQUEST_TIMEOUT_NS, config.clientFragmentLimit());
+        shardedClient.subscribe(Methods.BROADCAST_TOPIC, (topicId, sequence, buffer, offset, length) ->
+                log.info("push received, topicId: {}, sequence: {}, data: {}", topicId, sequence,
+                        buffer.getStringWithoutLengthUtf8(offset, length)));
+        DemoAgent demoAgent = new DemoAgent(shardedClient, aeron.context().nanoClock());
+        AgentRunner agentRunner = new AgentRunner(config.newAgentIdleStrategy(), DefaultErrorHandler.INSTANCE, null,
+                new CompositeAgent(shardedClient, demoAgent));
+        AgentRunner.startOnThread(agentRunner, new RpcThreadFactory(false));
 
         // 等待进程退出
         ssb.await();
@@ -0,0 +1,128 @@
+package com.cdf.aeron.rpc.client;
+
+import com.cdf.aeron.rpc.RpcConfig;
+import com.cdf.aeron.rpc.Sharding;
+import io.aeron.Aeron;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.Agent;
+
+/**
+ * 连接分片部署的 server，每个分片（stream）一个 {@link ClientPool}，组合在同一个线程上，
+ * 每次调用按请求的 key 由 {@link Sharding#shardFor} 选择分片，同一个 key 的请求总是落到同一个分片上，
+ * 分片内的状态（如按 key 划分的数据）不需要跨线程共享。
+ * <p>
+ * 没有 key 的调用不需要亲和性，轮流发往各个分片。各分片的 correlation id 命名空间互相错开，共用的 callback 也能区分
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@Slf4j
+public class ShardedClient implements Agent, RpcCaller {
+    // id 命名空间的高 16 位是分片，低 16 位是分片内 server 的下标
+    private static final int SHARD_NAMESPACE_SHIFT = 16;
+
+    private final ClientPool[] shards;
+
+    private int nextShard;
+
+    /**
+     * @param config           分片数取 {@link RpcConfig#serverShards()}，与 server 一致，分片 i 监听 {@link Sharding#streamId}(i)
+     * @param maxInFlight      每个分片每个 server 的最大在途请求数
+     * @param requestTimeoutNs 单个请求的超时时间
+     * @param fragmentLimit    每个 server 每个 duty cycle 最多处理的响应 fragment 数
+     */
+    public ShardedClient(Aeron aeron, RpcConfig config, int maxInFlight, long requestTimeoutNs, int fragmentLimit) {
+        this.shards = new ClientPool[config.serverShards()];
+        for (int shard = 0; shard < shards.length; shard++) {
+            shards[shard] = new ClientPool(aeron, config, Sharding.streamId(shard), maxInFlight, requestTimeoutNs,
+                    fragmentLimit, shard << SHARD_NAMESPACE_SHIFT);
+        }
+    }
+
+    @Override
+    public void onStart() {
+        for (ClientPool shard : shards) {
+            shard.onStart();
+        }
+        log.info("sharded client started, shards: {}", shards.length);
+    }
+
+    @Override
+    public int doWork() {
+        int workCount = 0;
+        for (ClientPool shard : shards) {
+            workCount += shard.doWork();
+        }
+        return workCount;
+    }
+
+    @Override
+    public void onClose() {
+        for (ClientPool shard : shards) {
+            shard.onClose();
+        }
+    }
+
+    @Override
+    public String roleName() {
+        return "rpc-sharded-client";
+    }
+
+    /**
+     * 按 key 选择分片，分片内再按 {@link ClientPool#call(long, int, DirectBuffer, int, int, RpcCallback)} 选择 server。
+     * 所选分片没有可用的 server 时返回 {@link ClientAgent#NULL_CALL_ID}，不会改发其它分片
+     */
+    public long call(long key, int methodId, DirectBuffer req, int offset, int length, RpcCallback callback) {
+        return shards[Sharding.shardFor(key, shards.length)].call(key, methodId, req, offset, length, callback);
+    }
+
+    /**
+     * 没有 key 的调用，轮流发往各个分片，跳过没有可用 server 的分片
+     */
+    @Override
+    public long call(int methodId, DirectBuffer req, int offset, int length, RpcCallback callback) {
+        for (int i = 0; i < shards.length; i++) {
+            ClientPool shard = shards[nextShard];
+            nextShard = nextShard + 1 == shards.length ? 0 : nextShard + 1;
+            if (shard.isReady()) {
+                long callId = shard.call(methodId, req, offset, length, callback);
+                if (callId != ClientAgent.NULL_CALL_ID) {
+                    return callId;
+                }
+            }
+        }
+        return ClientAgent.NULL_CALL_ID;
+    }
+
+    /**
+     * 在每个分片上订阅 topic，任何一个分片广播的消息都能收到，只能在 agent 线程上或 agent 启动前调用
+     */
+    public void subscribe(int topicId, PushListener listener) {
+        for (ClientPool shard : shards) {
+            shard.subscribe(topicId, listener);
+        }
+    }
+
+    /**
+     * @return 每个分片都有可用的 server，任意 key 的请求都能发出
+     */
+    @Override
+    public boolean isReady() {
+        for (ClientPool shard : shards) {
+            if (!shard.isReady()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int inFlight() {
+        int inFlight = 0;
+        for (ClientPool shard : shards) {
+            inFlight += shard.inFlight();
+        }
+        return inFlight;
+    }
+}
@@ -0,0 +1,172 @@
+package com.cdf.aeron.rpc.client;
+
+import com.cdf.aeron.rpc.Constants;
+import com.cdf.aeron.rpc.RpcConfig;
+import com.cdf.aeron.rpc.sbe.HeaderDecoder;
+import com.cdf.aeron.rpc.sbe.HeaderEncoder;
+import com.cdf.aeron.rpc.sbe.MyPushDecoder;
+import com.cdf.aeron.rpc.sbe.MySubscribeEncoder;
+import io.aeron.Aeron;
+import io.aeron.ExclusivePublication;
+import io.aeron.FragmentAssembler;
+import io.aeron.Publication;
+import io.aeron.Subscription;
+import io.aeron.logbuffer.FragmentHandler;
+import io.aeron.logbuffer.Header;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.DirectBuffer;
+import org.agrona.ExpandableDirectByteBuffer;
+import org.agrona.collections.Int2ObjectHashMap;
+
+import static com.cdf.aeron.common.constant.Constants.AERON_UDP_ENDPOINT;
+import static org.agrona.CloseHelper.quietClose;
+
+/**
+ * client 端的 topic 订阅，每个 topic 一个 subscription（stream 为 {@link Constants#PUSH_STREAM_BASE} + topicId），
+ * 在 {@link ClientAgent} 就绪后建立，并通过请求 publication 发送 MySubscribe：
+ * <ul>
+ *     <li>manual MDC：订阅 clientEndpoint，端口为 0 时等 MediaDriver 绑定后把实际地址告诉 server，由 server 加为 destination</li>
+ *     <li>multicast、IPC：直接订阅推送 channel，MySubscribe 只用来让 server 建立 topic 的 publication</li>
+ * </ul>
+ * 重连后 server 端是新的 session，subscription 重建并重新订阅。只在 ClientAgent 的线程上使用
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@Slf4j
+public class TopicSubscriber implements FragmentHandler {
+    private final Aeron aeron;
+    private final String pushChannel;
+    private final boolean mdc;
+    private final String clientEndpoint;
+    private final int fragmentLimit;
+    private final Int2ObjectHashMap<Topic> topics;
+    private final HeaderEncoder headerEncoder;
+    private final MySubscribeEncoder subscribeEncoder;
+    private final HeaderDecoder headerDecoder;
+    private final MyPushDecoder pushDecoder;
+    private final ExpandableDirectByteBuffer buffer;
+    // 超过 MTU 的推送会被 Aeron 分片
+    private final FragmentAssembler fragmentAssembler;
+
+    public TopicSubscriber(Aeron aeron, RpcConfig config, int fragmentLimit) {
+        this.aeron = aeron;
+        this.pushChannel = config.resolvePushChannel();
+        this.mdc = config.isMdcPush();
+        this.clientEndpoint = config.clientEndpoint();
+        this.fragmentLimit = fragmentLimit;
+        this.topics = new Int2ObjectHashMap<>();
+        this.headerEncoder = new HeaderEncoder();
+        this.subscribeEncoder = new MySubscribeEncoder();
+        this.headerDecoder = new HeaderDecoder();
+        this.pushDecoder = new MyPushDecoder();
+        this.buffer = new ExpandableDirectByteBuffer(128);
+        this.fragmentAssembler = new FragmentAssembler(this);
+    }
+
+    /**
+     * 订阅一个 topic，client 就绪后生效，同一个 topic 重复订阅时替换 listener
+     */
+    public void subscribe(int topicId, PushListener listener) {
+        if (topicId < 0 || topicId > MySubscribeEncoder.topicIdMaxValue()) {
+            throw new IllegalArgumentException("topicId out of range: " + topicId);
+        }
+        Topic topic = topics.get(topicId);
+        if (topic == null) {
+            topics.put(topicId, new Topic(topicId, listener));
+        } else {
+            topic.listener = listener;
+        }
+    }
+
+    /**
+     * client 就绪后每个 duty cycle 调用，建立 subscription、发送订阅、接收推送
+     *
+     * @param publication client 的请求 publication，MySubscribe 随请求一起发往 server
+     */
+    public int doWork(ExclusivePublication publication) {
+        int workCount = 0;
+        for (Topic topic : topics.values()) {
+            if (topic.subscription == null) {
+                String channel = mdc ? AERON_UDP_ENDPOINT + clientEndpoint : pushChannel;
+                topic.subscription = aeron.addSubscription(channel, Constants.PUSH_STREAM_BASE + topic.topicId);
+                workCount++;
+            }
+            if (!topic.subscribed && sendSubscribe(publication, topic)) {
+                topic.subscribed = true;
+                workCount++;
+            }
+            workCount += topic.subscription.poll(fragmentAssembler, fragmentLimit);
+        }
+        return workCount;
+    }
+
+    /**
+     * @return 没发出去时返回 false，下个 duty cycle 重试
+     */
+    private boolean sendSubscribe(ExclusivePublication publication, Topic topic) {
+        String destination = "";
+        if (mdc) {
+            // 端口为 0 时等 MediaDriver 绑定完成
+            destination = topic.subscription.tryResolveChannelEndpointPort();
+            if (destination == null) {
+                return false;
+            }
+        }
+        subscribeEncoder.wrapAndApplyHeader(buffer, 0, headerEncoder);
+        subscribeEncoder.topicId(topic.topicId);
+        subscribeEncoder.channel(destination);
+        long result = publication.offer(buffer, 0, HeaderEncoder.ENCODED_LENGTH + subscribeEncoder.encodedLength());
+        if (result < 0) {
+            if (result != Publication.BACK_PRESSURED && result != Publication.ADMIN_ACTION) {
+                log.warn("subscribe not sent, topicId: {}, result: {}", topic.topicId, Publication.errorString(result));
+            }
+            return false;
+        }
+        log.info("topic subscribed, topicId: {}, uri: {}", topic.topicId, mdc ? destination : pushChannel);
+        return true;
+    }
+
+    @Override
+    public void onFragment(DirectBuffer buffer, int offset, int length, Header header) {
+        headerDecoder.wrap(buffer, offset);
+        if (headerDecoder.templateId() != MyPushDecoder.TEMPLATE_ID) {
+            log.warn("unknown push message, templateId: {}", headerDecoder.templateId());
+            return;
+        }
+        pushDecoder.wrap(buffer, offset + headerDecoder.encodedLength(), headerDecoder.blockLength(),
+                headerDecoder.version());
+        int topicId = pushDecoder.topicId();
+        long sequence = pushDecoder.sequence();
+        int dataOffset = pushDecoder.limit() + MyPushDecoder.dataHeaderLength();
+        int dataLength = pushDecoder.dataLength();
+        Topic topic = topics.get(topicId);
+        if (topic != null) {
+            topic.listener.onPush(topicId, sequence, buffer, dataOffset, dataLength);
+        }
+    }
+
+    /**
+     * 断开或关闭时释放所有 subscription，重连就绪后由 {@link #doWork} 重新建立和订阅
+     */
+    public void reset() {
+        for (Topic topic : topics.values()) {
+            quietClose(topic.subscription);
+            topic.subscription = null;
+            topic.subscribed = false;
+        }
+        fragmentAssembler.clear();
+    }
+
+    private static final class Topic {
+        private final int topicId;
+        private PushListener listener;
+        private Subscription subscription;
+        private boolean subscribed;
+
+        Topic(int topicId, PushListener listener) {
+            this.topicId = topicId;
+            this.listener = listener;
+        }
+    }
+}
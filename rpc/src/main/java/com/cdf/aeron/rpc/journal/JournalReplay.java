@@ -0,0 +1,119 @@
+package com.cdf.aeron.rpc.journal;
+
+import com.cdf.aeron.rpc.RpcConfig;
+import io.aeron.Aeron;
+import io.aeron.archive.ArchivingMediaDriver;
+import io.aeron.archive.client.AeronArchive;
+import io.aeron.driver.MediaDriver;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.CloseHelper;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.SigInt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 回放 {@link RequestJournal} 录制的请求，用于排查问题和按真实流量做压测。
+ * <p>
+ * 启动自己的 MediaDriver 和 Archive，读取 {@link RpcConfig#archiveDir()}，所以录制它的 server 需要先停掉
+ * （或者把目录拷贝一份，用 {@code -Drpc.dir} 指过去），然后把每个 recording 回放给 {@link ReplayAgent}：
+ * <ul>
+ *     <li>{@code -Drpc.replay.speed=original}：默认，按录制时各 client 的开始时间和消息间隔回放</li>
+ *     <li>{@code -Drpc.replay.speed=max}：尽快回放，测 server 处理路径的上限</li>
+ *     <li>{@code -Drpc.replay.recording=<recordingId>}：只回放一个 recording，默认全部</li>
+ * </ul>
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@Slf4j
+public class JournalReplay {
+    public static final String SPEED_PROP = "rpc.replay.speed";
+    public static final String RECORDING_PROP = "rpc.replay.recording";
+
+    static void main() {
+        RpcConfig config = RpcConfig.load();
+        boolean paced = switch (System.getProperty(SPEED_PROP, "original").toLowerCase(Locale.ROOT)) {
+            case "original" -> true;
+            case "max" -> false;
+            default -> throw new IllegalArgumentException("unknown " + SPEED_PROP + ": " +
+                    System.getProperty(SPEED_PROP));
+        };
+        long recordingIdFilter = Long.getLong(RECORDING_PROP, Aeron.NULL_VALUE);
+        log.info("replay config: {}, paced: {}, recordingId: {}", config, paced, recordingIdFilter);
+
+        String aeronDir = config.aeronDir() + "/aeron-rpc-replay";
+        MediaDriver.Context mediaDriverCtx = config.applyTo(new MediaDriver.Context()
+                .aeronDirectoryName(aeronDir)
+                .dirDeleteOnStart(true)
+                .dirDeleteOnShutdown(true));
+        ArchivingMediaDriver driver = ArchivingMediaDriver.launch(mediaDriverCtx,
+                RequestJournal.newArchiveContext(config, aeronDir));
+        Aeron aeron = Aeron.connect(new Aeron.Context().aeronDirectoryName(aeronDir));
+        AeronArchive archive = AeronArchive.connect(RequestJournal.newClientContext(aeron));
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        SigInt.register(() -> running.set(false));
+        try {
+            List<Recording> recordings = listRecordings(archive, recordingIdFilter);
+            if (recordings.isEmpty()) {
+                log.warn("no recording to replay, dir: {}", config.archiveDir());
+                return;
+            }
+            long firstStartTimestamp = recordings.stream().mapToLong(Recording::startTimestamp).min().orElse(0);
+            ReplayAgent agent = new ReplayAgent(aeron, config, paced);
+            agent.onStart();
+            for (Recording recording : recordings) {
+                long replaySessionId = archive.startReplay(recording.recordingId(), recording.startPosition(),
+                        recording.stopPosition() - recording.startPosition(),
+                        ReplayAgent.REPLAY_CHANNEL, ReplayAgent.REPLAY_STREAM);
+                agent.expect(replaySessionId,
+                        TimeUnit.MILLISECONDS.toNanos(recording.startTimestamp() - firstStartTimestamp));
+                log.info("replay started, {}", recording);
+            }
+            IdleStrategy idleStrategy = config.newAgentIdleStrategy();
+            while (running.get() && !agent.isDone()) {
+                idleStrategy.idle(agent.doWork());
+            }
+            agent.onClose();
+        } finally {
+            CloseHelper.quietCloseAll(archive, aeron, driver);
+        }
+    }
+
+    /**
+     * 只回放已经停止的 recording，server 异常退出时未正常结束的 recording 没有 stopPosition，跳过
+     */
+    private static List<Recording> listRecordings(AeronArchive archive, long recordingIdFilter) {
+        List<Recording> recordings = new ArrayList<>();
+        archive.listRecordings(0, Integer.MAX_VALUE,
+                (controlSessionId, correlationId, recordingId, startTimestamp, stopTimestamp, startPosition,
+                 stopPosition, initialTermId, segmentFileLength, termBufferLength, mtuLength, sessionId, streamId,
+                 strippedChannel, originalChannel, sourceIdentity) -> {
+                    if (recordingIdFilter != Aeron.NULL_VALUE && recordingId != recordingIdFilter) {
+                        return;
+                    }
+                    if (stopPosition == AeronArchive.NULL_POSITION) {
+                        log.warn("skip unfinished recording, recordingId: {}, source: {}", recordingId, sourceIdentity);
+                        return;
+                    }
+                    if (stopPosition > startPosition) {
+                        recordings.add(new Recording(recordingId, startTimestamp, startPosition, stopPosition,
+                                streamId, sourceIdentity));
+                    }
+                });
+        return recordings;
+    }
+
+    /**
+     * @param startTimestamp 开始录制的时间，epoch ms
+     * @param source         client 的地址，IPC 时为 aeron:ipc
+     */
+    private record Recording(long recordingId, long startTimestamp, long startPosition, long stopPosition,
+                             int streamId, String source) {
+    }
+}
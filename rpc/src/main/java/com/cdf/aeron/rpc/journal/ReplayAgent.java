@@ -0,0 +1,177 @@
+package com.cdf.aeron.rpc.journal;
+
+import com.cdf.aeron.rpc.Constants;
+import com.cdf.aeron.rpc.RpcConfig;
+import com.cdf.aeron.rpc.metrics.ServerCounters;
+import com.cdf.aeron.rpc.server.ServerAdapter;
+import com.cdf.aeron.rpc.server.ServerSession;
+import com.cdf.aeron.rpc.service.ServiceRegistry;
+import io.aeron.Aeron;
+import io.aeron.Image;
+import io.aeron.Subscription;
+import io.aeron.logbuffer.ControlledFragmentHandler;
+import io.aeron.logbuffer.FragmentHandler;
+import io.aeron.logbuffer.FrameDescriptor;
+import io.aeron.logbuffer.Header;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.DirectBuffer;
+import org.agrona.collections.Int2ObjectHashMap;
+import org.agrona.concurrent.Agent;
+import org.agrona.concurrent.NanoClock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.cdf.aeron.common.constant.Constants.LOCAL_IPC_CHANNEL;
+import static org.agrona.CloseHelper.quietClose;
+
+/**
+ * 把 Archive 回放出来的请求交给 {@link ServerAdapter}，与 {@link com.cdf.aeron.rpc.server.ServerAgent} 走同一套
+ * 解码、分发、编码、发送的路径。每个 recording 的回放是 replay subscription 上的一个 Image，即一个 session。
+ * <p>
+ * 原来的 client 已经不在了，响应统一发往本地 IPC 的 {@link Constants#RESPONSE_STREAM}，由本 agent 读取后丢弃。
+ * 按原始节奏回放时，每条消息的发送时间取自 frame header 的 reserved value（client 写入），
+ * 还没到时间的 Image 用 controlledPoll ABORT 停在原位，下个 duty cycle 再读
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@Slf4j
+public class ReplayAgent implements Agent {
+    public static final String REPLAY_CHANNEL = LOCAL_IPC_CHANNEL;
+    public static final int REPLAY_STREAM = 2001;
+
+    private final Aeron aeron;
+    private final NanoClock nanoClock;
+    private final ServerCounters counters;
+    private final ServerAdapter serverAdapter;
+    private final boolean paced;
+    private final int fragmentLimit;
+    // key 为回放 Image 的 sessionId
+    private final Int2ObjectHashMap<Replay> replays;
+    // image 回调发生在 Aeron 的 conductor 线程上
+    private final AtomicInteger completedReplays;
+    private final ControlledFragmentHandler pacingHandler;
+    private final FragmentHandler sinkHandler;
+
+    private Subscription subscription;
+    private Subscription sink;
+    private Replay current;
+    private long startNs;
+    private long nowNs;
+    private long messages;
+    private long responseBytes;
+
+    /**
+     * @param paced true 时按录制时的节奏回放，false 时尽快回放
+     */
+    public ReplayAgent(Aeron aeron, RpcConfig config, boolean paced) {
+        this.aeron = aeron;
+        this.nanoClock = aeron.context().nanoClock();
+        this.counters = new ServerCounters(aeron, REPLAY_STREAM);
+        this.serverAdapter = new ServerAdapter(aeron, config, ServiceRegistry.withDefaults(),
+                config.serverFlushPolicy(), null, counters, LOCAL_IPC_CHANNEL);
+        this.paced = paced;
+        this.fragmentLimit = config.serverFragmentLimit();
+        this.replays = new Int2ObjectHashMap<>();
+        this.completedReplays = new AtomicInteger();
+        this.pacingHandler = this::onReplayedFragment;
+        this.sinkHandler = (buffer, offset, length, header) -> responseBytes += length;
+    }
+
+    @Override
+    public void onStart() {
+        subscription = aeron.addSubscription(REPLAY_CHANNEL, REPLAY_STREAM, serverAdapter::onAvailableImage,
+                image -> {
+                    serverAdapter.onUnavailableImage(image);
+                    completedReplays.incrementAndGet();
+                });
+        sink = aeron.addSubscription(LOCAL_IPC_CHANNEL, Constants.RESPONSE_STREAM);
+        startNs = nanoClock.nanoTime();
+    }
+
+    /**
+     * 登记一个已经开始的回放，应在 agent 开始 doWork 之前调用
+     *
+     * @param replaySessionId {@code AeronArchive.startReplay} 的返回值，低 32 位是回放 Image 的 sessionId
+     * @param startOffsetNs   该 recording 相对于最早的 recording 开始录制的时间差
+     */
+    public void expect(long replaySessionId, long startOffsetNs) {
+        replays.put((int) replaySessionId, new Replay(startOffsetNs));
+    }
+
+    /**
+     * @return 所有登记的回放都已结束，且 session 都已回收
+     */
+    public boolean isDone() {
+        return completedReplays.get() >= replays.size() && serverAdapter.sessionCount() == 0;
+    }
+
+    @Override
+    public int doWork() {
+        int workCount = serverAdapter.doSessionWork();
+        nowNs = nanoClock.nanoTime();
+        for (int i = 0, count = subscription.imageCount(); i < count; i++) {
+            Image image = subscription.imageAtIndex(i);
+            current = replays.get(image.sessionId());
+            if (current != null && !serverAdapter.isPaused(image.sessionId())) {
+                workCount += image.controlledPoll(pacingHandler, fragmentLimit);
+            }
+        }
+        workCount += serverAdapter.doDispatchWork();
+        serverAdapter.flush();
+        workCount += sink.poll(sinkHandler, fragmentLimit);
+        return workCount;
+    }
+
+    private ControlledFragmentHandler.Action onReplayedFragment(DirectBuffer buffer, int offset, int length,
+                                                               Header header) {
+        // 响应 publication 建连前不往下读，否则请求会先缓存，缓存满了被拒绝，回放就失真了
+        ServerSession session = serverAdapter.session(header.sessionId());
+        if (session != null && !session.isActive()) {
+            return ControlledFragmentHandler.Action.ABORT;
+        }
+        boolean begin = (header.flags() & FrameDescriptor.BEGIN_FRAG_FLAG) != 0;
+        if (paced && begin) {
+            long sendTimeNs = header.reservedValue();
+            if (current.firstSendTimeNs == Aeron.NULL_VALUE) {
+                current.firstSendTimeNs = sendTimeNs;
+            }
+            long dueNs = startNs + current.startOffsetNs + (sendTimeNs - current.firstSendTimeNs);
+            if (dueNs - nowNs > 0) {
+                return ControlledFragmentHandler.Action.ABORT;
+            }
+        }
+        serverAdapter.fragmentHandler().onFragment(buffer, offset, length, header);
+        if ((header.flags() & FrameDescriptor.END_FRAG_FLAG) != 0) {
+            messages++;
+        }
+        return ControlledFragmentHandler.Action.CONTINUE;
+    }
+
+    @Override
+    public void onClose() {
+        long elapsedNs = nanoClock.nanoTime() - startNs;
+        log.info("replay finished, recordings: {}, messages: {}, response bytes: {}, elapsed: {}ms",
+                replays.size(), messages, responseBytes, TimeUnit.NANOSECONDS.toMillis(elapsedNs));
+        serverAdapter.onClose();
+        quietClose(subscription);
+        quietClose(sink);
+        quietClose(counters);
+    }
+
+    @Override
+    public String roleName() {
+        return "rpc-replay";
+    }
+
+    private static final class Replay {
+        private final long startOffsetNs;
+        // 第一条消息的发送时间，后续消息按与它的差值排期
+        private long firstSendTimeNs = Aeron.NULL_VALUE;
+
+        Replay(long startOffsetNs) {
+            this.startOffsetNs = startOffsetNs;
+        }
+    }
+}
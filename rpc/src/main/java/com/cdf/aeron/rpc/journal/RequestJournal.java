@@ -0,0 +1,97 @@
+package com.cdf.aeron.rpc.journal;
+
+import com.cdf.aeron.rpc.RpcConfig;
+import com.cdf.aeron.rpc.Transport;
+import io.aeron.Aeron;
+import io.aeron.archive.Archive;
+import io.aeron.archive.ArchiveThreadingMode;
+import io.aeron.archive.client.AeronArchive;
+import io.aeron.archive.codecs.SourceLocation;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.collections.LongArrayList;
+
+import static com.cdf.aeron.common.constant.Constants.AERON_UDP_ENDPOINT;
+import static com.cdf.aeron.common.constant.Constants.LOCAL_IPC_CHANNEL;
+import static org.agrona.CloseHelper.quietClose;
+
+/**
+ * 用 Aeron Archive 把 server 各分片的入站请求 stream 录制到 {@link RpcConfig#archiveDir()} 下的 segment 文件。
+ * 录制由与 MediaDriver 同进程启动的 Archive 完成，RPC agent 的处理路径上没有额外的拷贝，
+ * 只是请求 Image 多了一个订阅者：Archive 跟不上时会和慢的 agent 一样对 client 形成背压。
+ * <p>
+ * 每个 client（请求 Image）对应一个 recording，包含它的 MyConnect 和全部 MyRequest，
+ * frame header 的 reserved value 是 client 的发送时间，用 {@link JournalReplay} 回放
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@Slf4j
+public class RequestJournal implements AutoCloseable {
+    private final RpcConfig config;
+    private final AeronArchive archive;
+    // startRecording 返回的 subscriptionId，停止录制时使用
+    private final LongArrayList subscriptionIds;
+
+    public RequestJournal(Aeron aeron, RpcConfig config) {
+        this.config = config;
+        this.archive = AeronArchive.connect(newClientContext(aeron));
+        this.subscriptionIds = new LongArrayList();
+    }
+
+    /**
+     * 开始录制一个分片的请求 stream，应在 server agent 启动前调用，否则会漏掉先连上的 client
+     */
+    public void record(int streamId) {
+        String channel = config.transport().serverInboundChannel(config);
+        // UDP 的请求来自 client 的 MediaDriver，IPC 的请求由同一个 MediaDriver 上的 publication 写入
+        SourceLocation sourceLocation = config.transport() == Transport.IPC ?
+                SourceLocation.LOCAL : SourceLocation.REMOTE;
+        subscriptionIds.addLong(archive.startRecording(channel, streamId, sourceLocation));
+        log.info("journal recording, uri: {}, streamId: {}, dir: {}", channel, streamId, config.archiveDir());
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0, size = subscriptionIds.size(); i < size; i++) {
+            try {
+                archive.stopRecording(subscriptionIds.getLong(i));
+            } catch (Exception e) {
+                log.warn("failed to stop recording, subscriptionId: {}", subscriptionIds.getLong(i), e);
+            }
+        }
+        subscriptionIds.clear();
+        quietClose(archive);
+    }
+
+    /**
+     * 与 MediaDriver 同进程启动的 Archive，只开放本机 IPC 的控制 channel，录制文件在 server 重启后保留
+     *
+     * @param aeronDir MediaDriver 的目录
+     */
+    public static Archive.Context newArchiveContext(RpcConfig config, String aeronDir) {
+        Archive.Context ctx = new Archive.Context()
+                .aeronDirectoryName(aeronDir)
+                .archiveDirectoryName(config.archiveDir())
+                .deleteArchiveOnStart(false)
+                .controlChannelEnabled(false)
+                .recordingEventsEnabled(false)
+                // 不做跨 Archive 的复制，但 Archive 要求配置
+                .replicationChannel(AERON_UDP_ENDPOINT + "localhost:0")
+                // 录制量不大，recorder、replayer、conductor 共用一个线程
+                .threadingMode(ArchiveThreadingMode.SHARED);
+        if (config.journalSegmentLength() > 0) {
+            ctx.segmentFileLength(config.journalSegmentLength());
+        }
+        return ctx;
+    }
+
+    /**
+     * 通过本机 IPC 控制 Archive，复用已有的 Aeron 实例，关闭时不会关闭它
+     */
+    public static AeronArchive.Context newClientContext(Aeron aeron) {
+        return new AeronArchive.Context()
+                .aeron(aeron)
+                .controlRequestChannel(LOCAL_IPC_CHANNEL)
+                .controlResponseChannel(LOCAL_IPC_CHANNEL);
+    }
+}
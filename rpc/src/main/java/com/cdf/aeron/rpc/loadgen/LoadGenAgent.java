@@ -0,0 +1,204 @@
+package com.cdf.aeron.rpc.loadgen;
+
+import com.cdf.aeron.rpc.client.CallFailure;
+import com.cdf.aeron.rpc.client.ClientAgent;
+import com.cdf.aeron.rpc.client.RpcCallback;
+import com.cdf.aeron.rpc.client.RpcCaller;
+import com.cdf.aeron.rpc.metrics.LatencyRecorder;
+import org.HdrHistogram.Recorder;
+import org.agrona.DirectBuffer;
+import org.agrona.collections.Hashing;
+import org.agrona.collections.Long2LongHashMap;
+import org.agrona.concurrent.Agent;
+import org.agrona.concurrent.NanoClock;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 开环的压测请求方，与一个 {@link ClientAgent} 组合在同一个线程上。
+ * <p>
+ * 第 n 个请求的计划发送时间固定为 {@code start + n * interval}，不取决于之前的响应什么时候回来：
+ * 没有信用或背压时请求推迟到之后的 duty cycle，但计划时间不变，响应时间从计划时间算起，
+ * 因此 server 卡顿期间"本该发出"的请求也计入延迟，避免 coordinated omission。另外记录从实际发出算起的服务时间，
+ * 两者的差距就是 client 侧的排队。
+ * <p>
+ * 请求长度按 {@link PayloadSizes} 用固定种子抽样，同样的配置产生同样的请求序列。预热期间的请求照常发送但不统计。
+ * 直方图用 HdrHistogram 的 {@link Recorder}，agent 线程记录不加锁，报告线程按区间取走
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public class LoadGenAgent implements Agent, RpcCallback {
+    // 一个 duty cycle 最多补发的请求数，落后很多时也要留出时间处理响应
+    private static final int MAX_SENDS_PER_CYCLE = 64;
+    private static final long NULL_TIME = Long.MIN_VALUE;
+
+    private final int index;
+    private final RpcCaller caller;
+    private final NanoClock nanoClock;
+    private final int methodId;
+    private final PayloadSizes payloadSizes;
+    private final SplittableRandom random;
+    private final UnsafeBuffer payload;
+    private final double intervalNs;
+    private final long warmupNs;
+    private final long scheduleNs;
+    // callId -> 计划发送时间 / 实际发送时间
+    private final Long2LongHashMap intendedSendNs;
+    private final Long2LongHashMap actualSendNs;
+    private final Recorder responseTime;
+    private final Recorder serviceTime;
+    // agent 线程写，报告线程读
+    private final AtomicLong sent;
+    private final AtomicLong completed;
+    private final AtomicLong failed;
+
+    private long startNs = NULL_TIME;
+    private long sequence;
+    // 下一个请求的长度，发出后才抽下一个，重试不影响请求序列
+    private int nextLength = -1;
+    private volatile boolean done;
+
+    /**
+     * @param index  第几个 client，与种子一起决定该 client 的请求序列
+     * @param caller 与本 agent 在同一个线程上的 ClientAgent
+     */
+    public LoadGenAgent(int index, RpcCaller caller, NanoClock nanoClock, LoadGenConfig config) {
+        this.index = index;
+        this.caller = caller;
+        this.nanoClock = nanoClock;
+        this.methodId = config.methodId();
+        this.payloadSizes = config.payloadSizes();
+        this.random = new SplittableRandom(config.seed() + index);
+        int maxSize = payloadSizes.maxSize();
+        this.payload = new UnsafeBuffer(ByteBuffer.allocateDirect(Math.max(maxSize, 1)));
+        for (int i = 0; i < maxSize; i++) {
+            payload.putByte(i, (byte) ('a' + i % 26));
+        }
+        this.intervalNs = 1e9 * config.clients() / config.rate();
+        this.warmupNs = config.warmupNs();
+        this.scheduleNs = config.warmupNs() + config.durationNs();
+        this.intendedSendNs = new Long2LongHashMap(config.maxInFlight() * 2, Hashing.DEFAULT_LOAD_FACTOR, NULL_TIME);
+        this.actualSendNs = new Long2LongHashMap(config.maxInFlight() * 2, Hashing.DEFAULT_LOAD_FACTOR, NULL_TIME);
+        this.responseTime = new Recorder(LatencyRecorder.HIGHEST_TRACKABLE_NS, 3);
+        this.serviceTime = new Recorder(LatencyRecorder.HIGHEST_TRACKABLE_NS, 3);
+        this.sent = new AtomicLong();
+        this.completed = new AtomicLong();
+        this.failed = new AtomicLong();
+    }
+
+    @Override
+    public int doWork() {
+        if (done) {
+            return 0;
+        }
+        // 断线重连期间计划时间照常推进，恢复后补发，停顿体现在响应时间里
+        if (!caller.isReady()) {
+            return 0;
+        }
+        long nowNs = nanoClock.nanoTime();
+        if (startNs == NULL_TIME) {
+            startNs = nowNs;
+        }
+        int workCount = 0;
+        long intendedNs = intendedTime(sequence);
+        while (workCount < MAX_SENDS_PER_CYCLE && intendedNs - nowNs <= 0 && intendedNs - startNs < scheduleNs) {
+            if (nextLength < 0) {
+                nextLength = payloadSizes.next(random);
+            }
+            long callId = caller.call(methodId, payload, 0, nextLength, this);
+            if (callId == ClientAgent.NULL_CALL_ID) {
+                // 没有信用或背压，计划时间不变，下个 duty cycle 再发
+                break;
+            }
+            intendedSendNs.put(callId, intendedNs);
+            actualSendNs.put(callId, nowNs);
+            sent.lazySet(sent.get() + 1);
+            nextLength = -1;
+            intendedNs = intendedTime(++sequence);
+            workCount++;
+        }
+        if (intendedNs - startNs >= scheduleNs && intendedSendNs.isEmpty()) {
+            done = true;
+        }
+        return workCount;
+    }
+
+    private long intendedTime(long n) {
+        return startNs + (long) (n * intervalNs);
+    }
+
+    @Override
+    public void onResponse(long id, DirectBuffer buffer, int offset, int length) {
+        onComplete(id, false);
+    }
+
+    @Override
+    public void onFailure(long id, CallFailure failure) {
+        onComplete(id, true);
+    }
+
+    private void onComplete(long id, boolean failure) {
+        long intendedNs = intendedSendNs.remove(id);
+        long actualNs = actualSendNs.remove(id);
+        // 预热期间的请求不统计
+        if (intendedNs == NULL_TIME || intendedNs - startNs < warmupNs) {
+            return;
+        }
+        if (failure) {
+            failed.lazySet(failed.get() + 1);
+            return;
+        }
+        long nowNs = nanoClock.nanoTime();
+        responseTime.recordValue(Math.min(nowNs - intendedNs, LatencyRecorder.HIGHEST_TRACKABLE_NS));
+        serviceTime.recordValue(Math.min(nowNs - actualNs, LatencyRecorder.HIGHEST_TRACKABLE_NS));
+        completed.lazySet(completed.get() + 1);
+    }
+
+    @Override
+    public String roleName() {
+        return "rpc-loadgen-" + index;
+    }
+
+    /**
+     * @return 所有计划的请求都已发出并完成
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * 从计划发送时间算起的响应时间，已修正 coordinated omission
+     */
+    public Recorder responseTime() {
+        return responseTime;
+    }
+
+    /**
+     * 从实际发出算起的服务时间
+     */
+    public Recorder serviceTime() {
+        return serviceTime;
+    }
+
+    public long sent() {
+        return sent.get();
+    }
+
+    /**
+     * @return 统计期内成功的请求数
+     */
+    public long completed() {
+        return completed.get();
+    }
+
+    /**
+     * @return 统计期内失败的请求数
+     */
+    public long failed() {
+        return failed.get();
+    }
+}
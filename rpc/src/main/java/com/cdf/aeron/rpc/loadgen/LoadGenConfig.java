@@ -0,0 +1,77 @@
+package com.cdf.aeron.rpc.loadgen;
+
+import com.cdf.aeron.rpc.Constants;
+import com.cdf.aeron.rpc.service.Methods;
+import org.agrona.SystemUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 压测配置，与 {@link com.cdf.aeron.rpc.RpcConfig} 一样从系统属性或 {@code rpc.config.file} 读取，
+ * 需要在 RpcConfig.load() 之后读取，配置文件才已加载
+ *
+ * @param rate                目标请求速率（每秒），所有 client 平分
+ * @param clients             并发的 client 数，每个 client 一个 ClientAgent、一个线程
+ * @param warmupNs            预热时间，期间照常发送但不统计
+ * @param durationNs          预热之后的统计时间
+ * @param reportIntervalNs    打印区间统计的周期
+ * @param payloadSizes        请求内容长度的分布，见 {@link PayloadSizes#parse}
+ * @param methodId            调用的方法，默认 ECHO，响应与请求一样长
+ * @param maxInFlight         每个 client 的最大在途请求数
+ * @param embedded            是否在进程内启动 server，MediaDriver 与 client 共用
+ * @param seed                随机种子，同样的配置和种子产生同样的请求序列
+ * @param baselineFile        上一次的结果文件，为空时不做回归比较
+ * @param resultFile          本次结果的输出文件，可作为下一次的 baseline，为空时不输出
+ * @param regressionTolerance 吞吐低于 baseline（或目标速率）、p99 高于 baseline 超过这个比例时判为回归
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public record LoadGenConfig(int rate, int clients, long warmupNs, long durationNs, long reportIntervalNs,
+                            PayloadSizes payloadSizes, int methodId, int maxInFlight, boolean embedded, long seed,
+                            String baselineFile, String resultFile, double regressionTolerance) {
+    public static final String ENABLED_PROP = "rpc.loadgen";
+    public static final String RATE_PROP = "rpc.loadgen.rate";
+    public static final String CLIENTS_PROP = "rpc.loadgen.clients";
+    public static final String WARMUP_PROP = "rpc.loadgen.warmup";
+    public static final String DURATION_PROP = "rpc.loadgen.duration";
+    public static final String REPORT_INTERVAL_PROP = "rpc.loadgen.report.interval";
+    public static final String PAYLOAD_SIZES_PROP = "rpc.loadgen.payload.sizes";
+    public static final String METHOD_PROP = "rpc.loadgen.method";
+    public static final String MAX_IN_FLIGHT_PROP = "rpc.loadgen.max.in.flight";
+    public static final String EMBEDDED_PROP = "rpc.loadgen.embedded";
+    public static final String SEED_PROP = "rpc.loadgen.seed";
+    public static final String BASELINE_PROP = "rpc.loadgen.baseline";
+    public static final String RESULT_PROP = "rpc.loadgen.result";
+    public static final String REGRESSION_TOLERANCE_PROP = "rpc.loadgen.regression.tolerance";
+
+    public LoadGenConfig {
+        if (rate <= 0 || clients <= 0 || durationNs <= 0) {
+            throw new IllegalArgumentException("invalid load: rate=" + rate + " clients=" + clients +
+                    " durationNs=" + durationNs);
+        }
+    }
+
+    /**
+     * @return 是否以压测模式运行 RpcClient
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(ENABLED_PROP);
+    }
+
+    public static LoadGenConfig load() {
+        return new LoadGenConfig(
+                Integer.getInteger(RATE_PROP, 10_000),
+                Integer.getInteger(CLIENTS_PROP, 1),
+                SystemUtil.getDurationInNanos(WARMUP_PROP, TimeUnit.SECONDS.toNanos(10)),
+                SystemUtil.getDurationInNanos(DURATION_PROP, TimeUnit.SECONDS.toNanos(60)),
+                SystemUtil.getDurationInNanos(REPORT_INTERVAL_PROP, TimeUnit.SECONDS.toNanos(5)),
+                PayloadSizes.parse(System.getProperty(PAYLOAD_SIZES_PROP, "64")),
+                Integer.getInteger(METHOD_PROP, Methods.ECHO),
+                Integer.getInteger(MAX_IN_FLIGHT_PROP, Constants.MAX_IN_FLIGHT),
+                Boolean.parseBoolean(System.getProperty(EMBEDDED_PROP, "true")),
+                Long.getLong(SEED_PROP, 1L),
+                System.getProperty(BASELINE_PROP, ""),
+                System.getProperty(RESULT_PROP, ""),
+                Double.parseDouble(System.getProperty(REGRESSION_TOLERANCE_PROP, "0.1")));
+    }
+}
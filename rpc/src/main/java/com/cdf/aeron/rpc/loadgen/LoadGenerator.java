@@ -0,0 +1,231 @@
+package com.cdf.aeron.rpc.loadgen;
+
+import com.cdf.aeron.common.help.DefaultErrorHandler;
+import com.cdf.aeron.rpc.Constants;
+import com.cdf.aeron.rpc.RpcConfig;
+import com.cdf.aeron.rpc.RpcThreadFactory;
+import com.cdf.aeron.rpc.Transport;
+import com.cdf.aeron.rpc.client.ClientAgent;
+import com.cdf.aeron.rpc.metrics.LatencyRecorder;
+import com.cdf.aeron.rpc.server.ServerAgent;
+import com.cdf.aeron.rpc.service.ServiceRegistry;
+import io.aeron.Aeron;
+import io.aeron.driver.MediaDriver;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.agrona.CloseHelper;
+import org.agrona.concurrent.AgentRunner;
+import org.agrona.concurrent.CompositeAgent;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * RpcClient 的压测模式（{@code -Drpc.loadgen=true}），用于容量规划和发布前的浸泡测试：
+ * 按目标速率开环发送，每个 client 一个 {@link ClientAgent} + {@link LoadGenAgent}，各占一个线程，
+ * 默认在进程内启动 server，与 client 共用一个 MediaDriver，单机即可运行。
+ * <p>
+ * 每个报告周期打印区间的吞吐、响应时间（已修正 coordinated omission）和服务时间，结束后打印整个统计期的汇总。
+ * 配置了 baseline 时与之比较，吞吐下降或 p99 上升超过容差即判为回归；达不到目标速率同样判为回归
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@Slf4j
+public class LoadGenerator {
+    private static final String THROUGHPUT_KEY = "throughput";
+    private static final String P50_KEY = "p50.us";
+    private static final String P99_KEY = "p99.us";
+    private static final String P999_KEY = "p99.9.us";
+    private static final String MAX_KEY = "max.us";
+
+    private LoadGenerator() {
+    }
+
+    /**
+     * 运行到所有计划的请求完成
+     *
+     * @return 没有回归时返回 true
+     */
+    public static boolean run(RpcConfig config, LoadGenConfig loadConfig) {
+        log.info("load generator config: {}", loadConfig);
+        MediaDriver mediaDriver = null;
+        String aeronDir = config.ipcAeronDir();
+        // 独立 server 的 IPC 模式连接 server 的 MediaDriver，其余情况自己启动一个
+        if (loadConfig.embedded() || config.transport() == Transport.UDP) {
+            mediaDriver = MediaDriver.launch(config.applyTo(new MediaDriver.Context()
+                    .aeronDirectoryName(config.aeronDir() + "/aeron-rpc-loadgen")
+                    .dirDeleteOnStart(true)
+                    .dirDeleteOnShutdown(true)));
+            aeronDir = mediaDriver.aeronDirectoryName();
+        }
+        Aeron aeron = Aeron.connect(new Aeron.Context().aeronDirectoryName(aeronDir));
+        RpcThreadFactory threadFactory = new RpcThreadFactory(true);
+        List<AgentRunner> agentRunners = new ArrayList<>();
+        if (loadConfig.embedded()) {
+            ServerAgent serverAgent = new ServerAgent(aeron, ServiceRegistry.withDefaults(), config, Constants.RPC_STREAM,
+                    config.serverFragmentLimit(), config.serverFlushPolicy(), config.workerPoolConfig());
+            agentRunners.add(new AgentRunner(config.newAgentIdleStrategy(), DefaultErrorHandler.INSTANCE, null,
+                    serverAgent));
+        }
+        // 进程内的 server 只监听 serverEndpoint，独立部署时 client 依次分配到各个 server
+        List<String> endpoints = loadConfig.embedded() || config.transport() == Transport.IPC ?
+                List.of(config.serverEndpoint()) : config.serverEndpoints();
+        LoadGenAgent[] loadAgents = new LoadGenAgent[loadConfig.clients()];
+        for (int i = 0; i < loadAgents.length; i++) {
+            ClientAgent clientAgent = new ClientAgent(aeron, config.withServerEndpoint(endpoints.get(i % endpoints.size())),
+                    Constants.RPC_STREAM, loadConfig.maxInFlight(), Constants.REQUEST_TIMEOUT_NS,
+                    config.clientFragmentLimit());
+            loadAgents[i] = new LoadGenAgent(i, clientAgent, aeron.context().nanoClock(), loadConfig);
+            agentRunners.add(new AgentRunner(config.newAgentIdleStrategy(), DefaultErrorHandler.INSTANCE, null,
+                    new CompositeAgent(clientAgent, loadAgents[i])));
+        }
+        for (AgentRunner agentRunner : agentRunners) {
+            AgentRunner.startOnThread(agentRunner, threadFactory);
+        }
+
+        try {
+            Result result = measure(loadAgents, loadConfig);
+            return check(result, loadConfig);
+        } finally {
+            CloseHelper.quietCloseAll(agentRunners);
+            CloseHelper.quietCloseAll(aeron, mediaDriver);
+        }
+    }
+
+    /**
+     * 在当前线程上按周期汇总各 client 的直方图，直到所有 client 完成
+     */
+    private static Result measure(LoadGenAgent[] loadAgents, LoadGenConfig loadConfig) {
+        Histogram scratch = new Histogram(LatencyRecorder.HIGHEST_TRACKABLE_NS, 3);
+        Histogram intervalResponse = new Histogram(LatencyRecorder.HIGHEST_TRACKABLE_NS, 3);
+        Histogram intervalService = new Histogram(LatencyRecorder.HIGHEST_TRACKABLE_NS, 3);
+        Histogram totalResponse = new Histogram(LatencyRecorder.HIGHEST_TRACKABLE_NS, 3);
+        Histogram totalService = new Histogram(LatencyRecorder.HIGHEST_TRACKABLE_NS, 3);
+        long lastSent = 0;
+        long lastNs = System.nanoTime();
+        boolean allDone = false;
+        while (!allDone) {
+            LockSupport.parkNanos(loadConfig.reportIntervalNs());
+            long nowNs = System.nanoTime();
+            intervalResponse.reset();
+            intervalService.reset();
+            long sent = 0;
+            long failed = 0;
+            allDone = true;
+            for (LoadGenAgent agent : loadAgents) {
+                // 先判断是否完成再取直方图，完成之后不会再有记录
+                allDone &= agent.isDone();
+                agent.responseTime().getIntervalHistogramInto(scratch);
+                intervalResponse.add(scratch);
+                agent.serviceTime().getIntervalHistogramInto(scratch);
+                intervalService.add(scratch);
+                sent += agent.sent();
+                failed += agent.failed();
+            }
+            totalResponse.add(intervalResponse);
+            totalService.add(intervalService);
+            double seconds = (nowNs - lastNs) / 1e9;
+            if (log.isInfoEnabled()) {
+                log.info("loadgen interval, sent: {}/s, completed: {}/s, failed(total): {}, response time(us) " +
+                                "p50: {}, p99: {}, p99.9: {}, max: {}, service time(us) p99: {}",
+                        Math.round((sent - lastSent) / seconds), Math.round(intervalResponse.getTotalCount() / seconds),
+                        failed, toMicros(intervalResponse.getValueAtPercentile(50.0)),
+                        toMicros(intervalResponse.getValueAtPercentile(99.0)),
+                        toMicros(intervalResponse.getValueAtPercentile(99.9)),
+                        toMicros(intervalResponse.getMaxValue()), toMicros(intervalService.getValueAtPercentile(99.0)));
+            }
+            lastSent = sent;
+            lastNs = nowNs;
+        }
+        long failed = 0;
+        for (LoadGenAgent agent : loadAgents) {
+            failed += agent.failed();
+        }
+        double seconds = loadConfig.durationNs() / 1e9;
+        Result result = new Result(totalResponse.getTotalCount() / seconds,
+                toMicros(totalResponse.getValueAtPercentile(50.0)),
+                toMicros(totalResponse.getValueAtPercentile(99.0)),
+                toMicros(totalResponse.getValueAtPercentile(99.9)),
+                toMicros(totalResponse.getMaxValue()), failed);
+        log.info("loadgen summary, target: {}/s, throughput: {}/s, failed: {}, response time(us) p50: {}, p99: {}, " +
+                        "p99.9: {}, max: {}, service time(us) p50: {}, p99: {}", loadConfig.rate(),
+                Math.round(result.throughput), failed, result.p50Us, result.p99Us, result.p999Us, result.maxUs,
+                toMicros(totalService.getValueAtPercentile(50.0)), toMicros(totalService.getValueAtPercentile(99.0)));
+        return result;
+    }
+
+    /**
+     * 与目标速率和 baseline 比较，并按需写出本次结果
+     */
+    private static boolean check(Result result, LoadGenConfig loadConfig) {
+        double tolerance = loadConfig.regressionTolerance();
+        boolean passed = true;
+        if (result.throughput < loadConfig.rate() * (1 - tolerance)) {
+            log.error("loadgen regression: target rate not sustained, target: {}/s, throughput: {}/s",
+                    loadConfig.rate(), Math.round(result.throughput));
+            passed = false;
+        }
+        if (result.failed > 0) {
+            log.warn("loadgen failed calls: {}", result.failed);
+        }
+        if (!loadConfig.baselineFile().isEmpty()) {
+            Properties baseline = load(Path.of(loadConfig.baselineFile()));
+            double baselineThroughput = Double.parseDouble(baseline.getProperty(THROUGHPUT_KEY, "0"));
+            double baselineP99 = Double.parseDouble(baseline.getProperty(P99_KEY, "0"));
+            if (result.throughput < baselineThroughput * (1 - tolerance)) {
+                log.error("loadgen regression: throughput {}/s, baseline {}/s", Math.round(result.throughput),
+                        Math.round(baselineThroughput));
+                passed = false;
+            }
+            if (baselineP99 > 0 && result.p99Us > baselineP99 * (1 + tolerance)) {
+                log.error("loadgen regression: p99 {}us, baseline {}us", result.p99Us, baselineP99);
+                passed = false;
+            }
+        }
+        if (!loadConfig.resultFile().isEmpty()) {
+            store(result, Path.of(loadConfig.resultFile()));
+        }
+        log.info("loadgen {}", passed ? "passed" : "FAILED");
+        return passed;
+    }
+
+    private static Properties load(Path file) {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("failed to read baseline: " + file, e);
+        }
+        return properties;
+    }
+
+    private static void store(Result result, Path file) {
+        Properties properties = new Properties();
+        properties.setProperty(THROUGHPUT_KEY, String.valueOf(result.throughput));
+        properties.setProperty(P50_KEY, String.valueOf(result.p50Us));
+        properties.setProperty(P99_KEY, String.valueOf(result.p99Us));
+        properties.setProperty(P999_KEY, String.valueOf(result.p999Us));
+        properties.setProperty(MAX_KEY, String.valueOf(result.maxUs));
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            properties.store(writer, "rpc loadgen result");
+        } catch (IOException e) {
+            log.error("failed to write loadgen result: {}", file, e);
+        }
+    }
+
+    private static double toMicros(long ns) {
+        return ns / (double) TimeUnit.MICROSECONDS.toNanos(1L);
+    }
+
+    private record Result(double throughput, double p50Us, double p99Us, double p999Us, double maxUs, long failed) {
+    }
+}
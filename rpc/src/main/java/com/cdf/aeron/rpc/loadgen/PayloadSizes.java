@@ -0,0 +1,78 @@
+package com.cdf.aeron.rpc.loadgen;
+
+import org.agrona.SystemUtil;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * 请求内容长度的离散分布，按权重抽样，抽样不产生垃圾
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public final class PayloadSizes {
+    private final int[] sizes;
+    // 累计概率，最后一个为 1
+    private final double[] cumulative;
+
+    private PayloadSizes(int[] sizes, double[] cumulative) {
+        this.sizes = sizes;
+        this.cumulative = cumulative;
+    }
+
+    /**
+     * @param spec 逗号分隔的 {@code size:weight}，size 支持 k/m 后缀，省略 weight 时为 1，
+     *             如 {@code 64:0.7,1k:0.25,16k:0.05}，只有一个长度时可以只写 {@code 256}
+     */
+    public static PayloadSizes parse(String spec) {
+        String[] entries = spec.trim().split("\\s*,\\s*");
+        int[] sizes = new int[entries.length];
+        double[] cumulative = new double[entries.length];
+        double total = 0;
+        for (int i = 0; i < entries.length; i++) {
+            String[] parts = entries[i].split("\\s*:\\s*");
+            long size = SystemUtil.parseSize(LoadGenConfig.PAYLOAD_SIZES_PROP, parts[0]);
+            double weight = parts.length > 1 ? Double.parseDouble(parts[1]) : 1.0;
+            if (size < 0 || size > Integer.MAX_VALUE || weight <= 0) {
+                throw new IllegalArgumentException("invalid payload size: " + entries[i]);
+            }
+            sizes[i] = (int) size;
+            total += weight;
+            cumulative[i] = total;
+        }
+        for (int i = 0; i < cumulative.length; i++) {
+            cumulative[i] /= total;
+        }
+        cumulative[cumulative.length - 1] = 1.0;
+        return new PayloadSizes(sizes, cumulative);
+    }
+
+    public int next(SplittableRandom random) {
+        double value = random.nextDouble();
+        for (int i = 0; i < cumulative.length; i++) {
+            if (value < cumulative[i]) {
+                return sizes[i];
+            }
+        }
+        return sizes[sizes.length - 1];
+    }
+
+    public int maxSize() {
+        return Arrays.stream(sizes).max().orElse(0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        double previous = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(sizes[i]).append(':').append(String.format("%.3f", cumulative[i] - previous));
+            previous = cumulative[i];
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,70 @@
+package com.cdf.aeron.rpc.metrics;
+
+import io.aeron.Aeron;
+import io.aeron.Counter;
+import io.aeron.Publication;
+
+import static org.agrona.CloseHelper.quietCloseAll;
+
+/**
+ * client 的计数器，分配在 MediaDriver 的 CnC 文件中，AeronStat 之类的工具可以直接读取，更新时没有日志开销
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public class ClientCounters implements AutoCloseable {
+    public static final int REQUESTS_SENT_TYPE_ID = 1101;
+    public static final int RESPONSES_RECEIVED_TYPE_ID = 1102;
+    public static final int FAILURES_TYPE_ID = 1103;
+    public static final int BACK_PRESSURE_TYPE_ID = 1104;
+    public static final int OFFER_FAILURES_TYPE_ID = 1105;
+
+    private final Counter requestsSent;
+    private final Counter responsesReceived;
+    private final Counter failures;
+    private final Counter backPressure;
+    private final Counter offerFailures;
+
+    /**
+     * @param endpoint 连接的 server，同一个进程里连接多个 server 时（ClientPool）据此区分各自的计数器
+     */
+    public ClientCounters(Aeron aeron, int streamId, String endpoint) {
+        String suffix = ": streamId=" + streamId + " endpoint=" + endpoint;
+        this.requestsSent = aeron.addCounter(REQUESTS_SENT_TYPE_ID, "rpc-client requests sent" + suffix);
+        this.responsesReceived = aeron.addCounter(RESPONSES_RECEIVED_TYPE_ID, "rpc-client responses received" + suffix);
+        this.failures = aeron.addCounter(FAILURES_TYPE_ID, "rpc-client failed calls" + suffix);
+        this.backPressure = aeron.addCounter(BACK_PRESSURE_TYPE_ID, "rpc-client back pressure events" + suffix);
+        this.offerFailures = aeron.addCounter(OFFER_FAILURES_TYPE_ID, "rpc-client offer failures" + suffix);
+    }
+
+    public void onRequestSent() {
+        requestsSent.increment();
+    }
+
+    public void onResponseReceived() {
+        responsesReceived.increment();
+    }
+
+    /**
+     * 超时、被拒绝等所有失败的调用
+     */
+    public void onCallFailed() {
+        failures.increment();
+    }
+
+    /**
+     * offer / tryClaim 返回负数时调用，区分背压和其它失败
+     */
+    public void onOfferFailed(long result) {
+        if (result == Publication.BACK_PRESSURED) {
+            backPressure.increment();
+        } else {
+            offerFailures.increment();
+        }
+    }
+
+    @Override
+    public void close() {
+        quietCloseAll(requestsSent, responsesReceived, failures, backPressure, offerFailures);
+    }
+}
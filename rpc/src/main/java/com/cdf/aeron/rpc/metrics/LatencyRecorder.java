@@ -0,0 +1,57 @@
+package com.cdf.aeron.rpc.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RPC 往返延迟的直方图，单线程记录，记录时不产生垃圾。超过上限的值按上限记录，避免 HdrHistogram 抛异常
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@Slf4j
+public class LatencyRecorder {
+    public static final long HIGHEST_TRACKABLE_NS = TimeUnit.SECONDS.toNanos(60L);
+
+    private final String name;
+    private final Histogram histogram;
+    private long intervalStartNs;
+
+    public LatencyRecorder(String name, long nowNs) {
+        this.name = name;
+        this.histogram = new Histogram(HIGHEST_TRACKABLE_NS, 3);
+        this.intervalStartNs = nowNs;
+    }
+
+    public void record(long latencyNs) {
+        histogram.recordValue(Math.min(Math.max(latencyNs, 0L), HIGHEST_TRACKABLE_NS));
+    }
+
+    public Histogram histogram() {
+        return histogram;
+    }
+
+    /**
+     * 打印本周期的吞吐和 p50/p99/p99.99 延迟（微秒），然后开始新的周期
+     */
+    public void report(long nowNs) {
+        long count = histogram.getTotalCount();
+        if (count > 0 && log.isInfoEnabled()) {
+            double seconds = (nowNs - intervalStartNs) / 1e9;
+            log.info("{} latency(us) count: {}, rate: {}/s, p50: {}, p99: {}, p99.99: {}, max: {}",
+                    name, count, Math.round(count / seconds),
+                    toMicros(histogram.getValueAtPercentile(50.0)),
+                    toMicros(histogram.getValueAtPercentile(99.0)),
+                    toMicros(histogram.getValueAtPercentile(99.99)),
+                    toMicros(histogram.getMaxValue()));
+        }
+        histogram.reset();
+        intervalStartNs = nowNs;
+    }
+
+    private static double toMicros(long ns) {
+        return ns / 1000.0;
+    }
+}
@@ -0,0 +1,102 @@
+package com.cdf.aeron.rpc.metrics;
+
+import io.aeron.Aeron;
+import io.aeron.Counter;
+import io.aeron.Publication;
+
+import static org.agrona.CloseHelper.quietCloseAll;
+
+/**
+ * server 的计数器，分配在 MediaDriver 的 CnC 文件中，AeronStat 之类的工具可以直接读取，更新时没有日志开销
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public class ServerCounters implements AutoCloseable {
+    public static final int REQUESTS_RECEIVED_TYPE_ID = 1001;
+    public static final int RESPONSES_SENT_TYPE_ID = 1002;
+    public static final int BACK_PRESSURE_TYPE_ID = 1003;
+    public static final int OFFER_FAILURES_TYPE_ID = 1004;
+    public static final int SESSIONS_TYPE_ID = 1005;
+    public static final int RESPONSES_DROPPED_TYPE_ID = 1006;
+    public static final int REQUESTS_REJECTED_TYPE_ID = 1007;
+    public static final int CACHE_HITS_TYPE_ID = 1008;
+    public static final int CACHE_MISSES_TYPE_ID = 1009;
+
+    private final Counter requestsReceived;
+    private final Counter responsesSent;
+    private final Counter backPressure;
+    private final Counter offerFailures;
+    private final Counter sessions;
+    private final Counter responsesDropped;
+    private final Counter requestsRejected;
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+
+    public ServerCounters(Aeron aeron, int streamId) {
+        String suffix = ": streamId=" + streamId;
+        this.requestsReceived = aeron.addCounter(REQUESTS_RECEIVED_TYPE_ID, "rpc-server requests received" + suffix);
+        this.responsesSent = aeron.addCounter(RESPONSES_SENT_TYPE_ID, "rpc-server responses sent" + suffix);
+        this.backPressure = aeron.addCounter(BACK_PRESSURE_TYPE_ID, "rpc-server back pressure events" + suffix);
+        this.offerFailures = aeron.addCounter(OFFER_FAILURES_TYPE_ID, "rpc-server offer failures" + suffix);
+        this.sessions = aeron.addCounter(SESSIONS_TYPE_ID, "rpc-server sessions" + suffix);
+        this.responsesDropped = aeron.addCounter(RESPONSES_DROPPED_TYPE_ID, "rpc-server responses dropped" + suffix);
+        this.requestsRejected = aeron.addCounter(REQUESTS_REJECTED_TYPE_ID, "rpc-server requests rejected" + suffix);
+        this.cacheHits = aeron.addCounter(CACHE_HITS_TYPE_ID, "rpc-server cache hits" + suffix);
+        this.cacheMisses = aeron.addCounter(CACHE_MISSES_TYPE_ID, "rpc-server cache misses" + suffix);
+    }
+
+    public void onRequestReceived() {
+        requestsReceived.increment();
+    }
+
+    public void onResponsesSent(int count) {
+        responsesSent.getAndAdd(count);
+    }
+
+    /**
+     * offer / tryClaim 返回负数时调用，区分背压和其它失败
+     */
+    public void onOfferFailed(long result) {
+        if (result == Publication.BACK_PRESSURED) {
+            backPressure.increment();
+        } else {
+            offerFailures.increment();
+        }
+    }
+
+    /**
+     * client 已断开或出站队列已满，响应无法发出
+     */
+    public void onResponseDropped() {
+        responsesDropped.increment();
+    }
+
+    /**
+     * 过载时未执行而是直接回复 SERVER_BUSY 的请求
+     */
+    public void onRequestRejected() {
+        requestsRejected.increment();
+    }
+
+    /**
+     * 幂等方法的请求命中响应缓存，handler 没有执行
+     */
+    public void onCacheHit() {
+        cacheHits.increment();
+    }
+
+    public void onCacheMiss() {
+        cacheMisses.increment();
+    }
+
+    public void sessions(int count) {
+        sessions.set(count);
+    }
+
+    @Override
+    public void close() {
+        quietCloseAll(requestsReceived, responsesSent, backPressure, offerFailures, sessions, responsesDropped,
+                requestsRejected, cacheHits, cacheMisses);
+    }
+}
@@ -0,0 +1,19 @@
+package com.cdf.aeron.rpc.server;
+
+/**
+ * 响应的发送时机
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public enum FlushPolicy {
+    /**
+     * 每个响应编码后立即 offer
+     */
+    IMMEDIATE,
+    /**
+     * 一次 poll 内同一个 session 的响应先追加到该 session 的批量 buffer，poll 结束后一次 offer 发出，
+     * 攒批超过 publication 的 maxPayloadLength 时提前发送
+     */
+    END_OF_POLL
+}
@@ -0,0 +1,25 @@
+package com.cdf.aeron.rpc.server;
+
+/**
+ * 响应 publication 背压时的处理策略。
+ * <p>
+ * 背压时响应先进入 session 的有界出站队列，由后续的 duty cycle 按序重发，agent 线程不会因为一个慢 client 而卡住；
+ * 队列超过一半视为该 session 过载，按策略降级，队列满时新的响应只能丢弃
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public enum OverloadPolicy {
+    /**
+     * 照常处理请求，队列满时丢弃响应，client 以超时结束
+     */
+    DROP,
+    /**
+     * 过载期间不再执行该 session 的请求，直接回复 SERVER_BUSY，响应很小，队列剩余的一半足以容纳
+     */
+    REJECT,
+    /**
+     * 过载期间停止 poll 该 session 的 image，积压清空后恢复，client 的请求 publication 会因 MediaDriver 的流控而背压
+     */
+    PAUSE
+}
@@ -0,0 +1,210 @@
+package com.cdf.aeron.rpc.server;
+
+import com.cdf.aeron.rpc.Constants;
+import com.cdf.aeron.rpc.sbe.HeaderEncoder;
+import com.cdf.aeron.rpc.sbe.MyPushEncoder;
+import io.aeron.Aeron;
+import io.aeron.ExclusivePublication;
+import io.aeron.Publication;
+import io.aeron.exceptions.RegistrationException;
+import io.aeron.logbuffer.BufferClaim;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.DirectBuffer;
+import org.agrona.ExpandableDirectByteBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.Int2ObjectHashMap;
+
+import static org.agrona.CloseHelper.quietClose;
+
+/**
+ * server 推送：每个 topic 一个 publication（stream 为 {@link Constants#PUSH_STREAM_BASE} + topicId），
+ * 一条推送只编码一次、发送一次，由 MediaDriver 复制给所有订阅者，而不是对 N 个 session 各发一遍。
+ * <ul>
+ *     <li>manual MDC：client 订阅时告知接收推送的地址，加为该 topic publication 的 destination，session 关闭时移除</li>
+ *     <li>multicast、IPC：client 直接订阅推送 channel，订阅消息只用来让 server 建立 topic 的 publication</li>
+ * </ul>
+ * 推送是尽力而为的：publication 背压时返回 false，由调用方决定是否重试；慢的订阅者由 MediaDriver 的流控处理。
+ * publication 异步建立，建好之前的推送直接失败。只在 server agent 线程上使用，每个分片一个，
+ * 分片部署时各分片只推送给连接到它的 client
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@Slf4j
+public class PushPublisher implements AutoCloseable {
+    private final Aeron aeron;
+    private final String channel;
+    private final boolean mdc;
+    private final Int2ObjectHashMap<Topic> topics;
+    private final HeaderEncoder headerEncoder;
+    private final MyPushEncoder pushEncoder;
+    private final BufferClaim bufferClaim;
+    private final ExpandableDirectByteBuffer buffer;
+
+    private int pendingTopics;
+
+    /**
+     * @param channel 推送 channel，见 {@link com.cdf.aeron.rpc.RpcConfig#resolvePushChannel()}
+     * @param mdc     是否为 manual MDC，是则按订阅增删 destination
+     */
+    public PushPublisher(Aeron aeron, String channel, boolean mdc) {
+        this.aeron = aeron;
+        this.channel = channel;
+        this.mdc = mdc;
+        this.topics = new Int2ObjectHashMap<>();
+        this.headerEncoder = new HeaderEncoder();
+        this.pushEncoder = new MyPushEncoder();
+        this.bufferClaim = new BufferClaim();
+        this.buffer = new ExpandableDirectByteBuffer(512);
+    }
+
+    /**
+     * 把 session 加入 topic 的订阅者，第一次订阅时建立 topic 的 publication
+     *
+     * @param destination client 接收推送的地址，非 MDC 时忽略
+     */
+    public void subscribe(int topicId, int sessionId, String destination) {
+        Topic topic = topics.get(topicId);
+        if (topic == null) {
+            topic = new Topic(topicId, aeron.asyncAddExclusivePublication(channel, Constants.PUSH_STREAM_BASE + topicId));
+            topics.put(topicId, topic);
+            pendingTopics++;
+        }
+        if (!mdc || destination.isEmpty()) {
+            return;
+        }
+        String previous = topic.destinations.put(sessionId, destination);
+        if (previous == null && topic.publication != null) {
+            topic.publication.asyncAddDestination(destination);
+        }
+        log.info("topic subscribed, topicId: {}, sessionId: {}, destination: {}", topicId, sessionId, destination);
+    }
+
+    /**
+     * session 关闭时从所有 topic 移除
+     */
+    public void unsubscribe(int sessionId) {
+        if (!mdc) {
+            return;
+        }
+        for (Topic topic : topics.values()) {
+            String destination = topic.destinations.remove(sessionId);
+            if (destination != null && topic.publication != null && !topic.publication.isClosed()) {
+                topic.publication.asyncRemoveDestination(destination);
+            }
+        }
+    }
+
+    /**
+     * 推进 topic publication 的建立，建好后补加之前订阅的 destination
+     */
+    public int doWork() {
+        if (pendingTopics == 0) {
+            return 0;
+        }
+        int workCount = 0;
+        for (Topic topic : topics.values()) {
+            if (topic.publication == null && topic.registrationId != Aeron.NULL_VALUE) {
+                workCount += topic.resolve();
+            }
+        }
+        return workCount;
+    }
+
+    /**
+     * 推送一条消息给 topic 的所有订阅者
+     *
+     * @return 已发出，或者 topic 还没有订阅者时返回 true；publication 未就绪或背压时返回 false
+     */
+    public boolean publish(int topicId, DirectBuffer data, int offset, int length) {
+        Topic topic = topics.get(topicId);
+        if (topic == null) {
+            return true;
+        }
+        ExclusivePublication publication = topic.publication;
+        if (publication == null) {
+            return false;
+        }
+        int messageLength = HeaderEncoder.ENCODED_LENGTH + MyPushEncoder.BLOCK_LENGTH +
+                MyPushEncoder.dataHeaderLength() + length;
+        if (messageLength > publication.maxMessageLength()) {
+            log.error("push too large, topicId: {}, length: {}, maxMessageLength: {}", topicId, messageLength,
+                    publication.maxMessageLength());
+            return false;
+        }
+        long result;
+        if (messageLength <= publication.maxPayloadLength()) {
+            // 直接在 log buffer 上编码
+            do {
+                result = publication.tryClaim(messageLength, bufferClaim);
+            } while (result == Publication.ADMIN_ACTION);
+            if (result >= 0) {
+                encode(bufferClaim.buffer(), bufferClaim.offset(), topic, data, offset, length);
+                bufferClaim.commit();
+            }
+        } else {
+            encode(buffer, 0, topic, data, offset, length);
+            do {
+                result = publication.offer(buffer, 0, messageLength);
+            } while (result == Publication.ADMIN_ACTION);
+        }
+        if (result >= 0) {
+            topic.sequence++;
+            return true;
+        }
+        // 还没有订阅者连上
+        return result == Publication.NOT_CONNECTED;
+    }
+
+    private void encode(MutableDirectBuffer buffer, int offset, Topic topic, DirectBuffer data, int dataOffset,
+                        int dataLength) {
+        pushEncoder.wrapAndApplyHeader(buffer, offset, headerEncoder);
+        pushEncoder.topicId(topic.topicId);
+        pushEncoder.sequence(topic.sequence);
+        pushEncoder.putData(data, dataOffset, dataLength);
+    }
+
+    @Override
+    public void close() {
+        for (Topic topic : topics.values()) {
+            quietClose(topic.publication);
+        }
+        topics.clear();
+    }
+
+    private final class Topic {
+        private final int topicId;
+        // sessionId -> destination，只在 MDC 时使用
+        private final Int2ObjectHashMap<String> destinations;
+        private long registrationId;
+        private ExclusivePublication publication;
+        private long sequence;
+
+        Topic(int topicId, long registrationId) {
+            this.topicId = topicId;
+            this.registrationId = registrationId;
+            this.destinations = new Int2ObjectHashMap<>();
+        }
+
+        int resolve() {
+            try {
+                publication = aeron.getExclusivePublication(registrationId);
+            } catch (RegistrationException e) {
+                log.error("failed to add push publication, topicId: {}, uri: {}", topicId, channel, e);
+                registrationId = Aeron.NULL_VALUE;
+                pendingTopics--;
+                return 1;
+            }
+            if (publication == null) {
+                return 0;
+            }
+            pendingTopics--;
+            for (String destination : destinations.values()) {
+                publication.asyncAddDestination(destination);
+            }
+            log.info("push publication ready, topicId: {}, uri: {}, streamId: {}, destinations: {}", topicId,
+                    publication.channel(), publication.streamId(), destinations.size());
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.cdf.aeron.rpc.server;
+
+import com.cdf.aeron.rpc.sbe.HeaderEncoder;
+import com.cdf.aeron.rpc.sbe.MyResponseEncoder;
+import com.cdf.aeron.rpc.sbe.PayloadEncoding;
+import com.cdf.aeron.rpc.sbe.ResponseStatus;
+import org.agrona.BitUtil;
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.Hashing;
+import org.agrona.collections.Long2LongHashMap;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.nio.ByteBuffer;
+
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BitUtil.SIZE_OF_LONG;
+
+/**
+ * 幂等方法的响应缓存，key 为 methodId + 请求内容，value 为编码好的完整 MyResponse（id 为 0），
+ * 命中时把 value 原样拷贝到 tryClaim 的区域或批量 buffer，只改写 id。
+ * <p>
+ * 内存预算固定：一块堆外内存按 entryLength 切成定长的槽，一个槽放一个条目，放不下的请求/响应不缓存。
+ * 索引是 hash -> 槽号的原始类型哈希表，淘汰用槽号组成的双向链表做 LRU，另有可选的 TTL，
+ * 稳态下查找、插入、淘汰都不产生垃圾。hash 直接在请求所在的 DirectBuffer 上计算，不需要转成 String，
+ * 命中后还会比较请求字节，hash 冲突不会返回错误的响应。
+ * <p>
+ * 只在 server agent 线程上使用，不是线程安全的，每个分片一个
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public class ResponseCache {
+    public static final int NULL_SLOT = -1;
+
+    // 槽的布局：[hash: long][expireAtNs: long][methodId: int][keyLength: int][valueLength: int][pad][key][value]
+    private static final int HASH_OFFSET = 0;
+    private static final int EXPIRE_AT_OFFSET = HASH_OFFSET + SIZE_OF_LONG;
+    private static final int METHOD_ID_OFFSET = EXPIRE_AT_OFFSET + SIZE_OF_LONG;
+    private static final int KEY_LENGTH_OFFSET = METHOD_ID_OFFSET + SIZE_OF_INT;
+    private static final int VALUE_LENGTH_OFFSET = KEY_LENGTH_OFFSET + SIZE_OF_INT;
+    private static final int ENTRY_HEADER_LENGTH = 32;
+
+    private final UnsafeBuffer buffer;
+    private final int entryLength;
+    private final long ttlNs;
+    private final Long2LongHashMap index;
+    // LRU 链表，head 为最近使用，tail 为最久未使用
+    private final int[] prev;
+    private final int[] next;
+    private final int[] freeSlots;
+    private final HeaderEncoder headerEncoder;
+    private final MyResponseEncoder responseEncoder;
+
+    private int freeCount;
+    private int head = NULL_SLOT;
+    private int tail = NULL_SLOT;
+
+    /**
+     * @param capacity    堆外内存的字节数，即缓存的内存预算
+     * @param entryLength 每个槽的字节数，含请求内容、编码后的响应和 32 字节的槽头，向上对齐到 8
+     * @param ttlNs       条目的存活时间，为 0 时只按 LRU 淘汰
+     */
+    public ResponseCache(int capacity, int entryLength, long ttlNs) {
+        this.entryLength = BitUtil.align(entryLength, SIZE_OF_LONG);
+        if (this.entryLength <= ENTRY_HEADER_LENGTH || capacity < this.entryLength) {
+            throw new IllegalArgumentException("invalid cache size: capacity=" + capacity +
+                    " entryLength=" + entryLength);
+        }
+        int slotCount = capacity / this.entryLength;
+        this.buffer = new UnsafeBuffer(ByteBuffer.allocateDirect(slotCount * this.entryLength));
+        this.ttlNs = ttlNs;
+        this.index = new Long2LongHashMap(slotCount * 2, Hashing.DEFAULT_LOAD_FACTOR, NULL_SLOT);
+        this.prev = new int[slotCount];
+        this.next = new int[slotCount];
+        this.freeSlots = new int[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            freeSlots[i] = slotCount - 1 - i;
+        }
+        this.freeCount = slotCount;
+        this.headerEncoder = new HeaderEncoder();
+        this.responseEncoder = new MyResponseEncoder();
+    }
+
+    /**
+     * 在请求所在的 buffer 上直接计算 hash，8 字节一组混合，不分配对象
+     */
+    public static long hash(int methodId, DirectBuffer buffer, int offset, int length) {
+        long hash = 0x9E3779B97F4A7C15L * (methodId + 1) ^ length;
+        int position = offset;
+        int limit = offset + length;
+        for (; position + SIZE_OF_LONG <= limit; position += SIZE_OF_LONG) {
+            hash = mix(hash ^ buffer.getLong(position));
+        }
+        for (; position < limit; position++) {
+            hash = mix(hash ^ buffer.getByte(position));
+        }
+        return hash;
+    }
+
+    private static long mix(long value) {
+        long x = value * 0xBF58476D1CE4E5B9L;
+        return x ^ (x >>> 31);
+    }
+
+    /**
+     * @return 命中时返回槽号，用 {@link #responseOffset} 和 {@link #responseLength} 读取缓存的响应；否则返回 {@link #NULL_SLOT}
+     */
+    public int lookup(long hash, int methodId, DirectBuffer req, int reqOffset, int reqLength, long nowNs) {
+        int slot = (int) index.get(hash);
+        if (slot == NULL_SLOT) {
+            return NULL_SLOT;
+        }
+        int entryOffset = slot * entryLength;
+        if (ttlNs > 0 && nowNs - buffer.getLong(entryOffset + EXPIRE_AT_OFFSET) >= 0) {
+            remove(hash, slot);
+            return NULL_SLOT;
+        }
+        if (!matches(entryOffset, methodId, req, reqOffset, reqLength)) {
+            return NULL_SLOT;
+        }
+        moveToHead(slot);
+        return slot;
+    }
+
+    /**
+     * 缓存一个成功的响应，同一个 hash 的旧条目被替换，没有空槽时淘汰最久未使用的条目
+     *
+     * @return 请求和编码后的响应放不进一个槽时返回 false
+     */
+    public boolean put(long hash, int methodId, DirectBuffer req, int reqOffset, int reqLength,
+                       DirectBuffer res, int resOffset, int resLength, long nowNs) {
+        int valueLength = HeaderEncoder.ENCODED_LENGTH + MyResponseEncoder.BLOCK_LENGTH +
+                MyResponseEncoder.resHeaderLength() + resLength;
+        if (ENTRY_HEADER_LENGTH + reqLength + valueLength > entryLength) {
+            return false;
+        }
+        int slot = (int) index.get(hash);
+        if (slot == NULL_SLOT) {
+            slot = allocate();
+            index.put(hash, slot);
+            linkAtHead(slot);
+        } else {
+            moveToHead(slot);
+        }
+        int entryOffset = slot * entryLength;
+        buffer.putLong(entryOffset + HASH_OFFSET, hash);
+        buffer.putLong(entryOffset + EXPIRE_AT_OFFSET, nowNs + ttlNs);
+        buffer.putInt(entryOffset + METHOD_ID_OFFSET, methodId);
+        buffer.putInt(entryOffset + KEY_LENGTH_OFFSET, reqLength);
+        buffer.putInt(entryOffset + VALUE_LENGTH_OFFSET, valueLength);
+        buffer.putBytes(entryOffset + ENTRY_HEADER_LENGTH, req, reqOffset, reqLength);
+        responseEncoder.wrapAndApplyHeader(buffer, entryOffset + ENTRY_HEADER_LENGTH + reqLength, headerEncoder);
+        responseEncoder.id(0);
+        responseEncoder.status(ResponseStatus.OK);
+        // 缓存的是原始内容，命中时不压缩
+        responseEncoder.encoding(PayloadEncoding.NONE);
+        responseEncoder.putRes(res, resOffset, resLength);
+        return true;
+    }
+
+    /**
+     * 缓存所在的堆外内存，命中时从这里拷贝响应
+     */
+    public DirectBuffer buffer() {
+        return buffer;
+    }
+
+    public int responseOffset(int slot) {
+        int entryOffset = slot * entryLength;
+        return entryOffset + ENTRY_HEADER_LENGTH + buffer.getInt(entryOffset + KEY_LENGTH_OFFSET);
+    }
+
+    public int responseLength(int slot) {
+        return buffer.getInt(slot * entryLength + VALUE_LENGTH_OFFSET);
+    }
+
+    /**
+     * 把槽中缓存的响应整段拷贝到 dst，只把 id 改写为本次请求的
+     */
+    public void copyResponse(int slot, long id, MutableDirectBuffer dst, int dstOffset) {
+        dst.putBytes(dstOffset, buffer, responseOffset(slot), responseLength(slot));
+        responseEncoder.wrap(dst, dstOffset + HeaderEncoder.ENCODED_LENGTH).id(id);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    private boolean matches(int entryOffset, int methodId, DirectBuffer req, int reqOffset, int reqLength) {
+        if (buffer.getInt(entryOffset + METHOD_ID_OFFSET) != methodId ||
+                buffer.getInt(entryOffset + KEY_LENGTH_OFFSET) != reqLength) {
+            return false;
+        }
+        int keyOffset = entryOffset + ENTRY_HEADER_LENGTH;
+        int i = 0;
+        for (; i + SIZE_OF_LONG <= reqLength; i += SIZE_OF_LONG) {
+            if (buffer.getLong(keyOffset + i) != req.getLong(reqOffset + i)) {
+                return false;
+            }
+        }
+        for (; i < reqLength; i++) {
+            if (buffer.getByte(keyOffset + i) != req.getByte(reqOffset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int allocate() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        int slot = tail;
+        index.remove(buffer.getLong(slot * entryLength + HASH_OFFSET));
+        unlink(slot);
+        return slot;
+    }
+
+    private void remove(long hash, int slot) {
+        index.remove(hash);
+        unlink(slot);
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void moveToHead(int slot) {
+        if (slot != head) {
+            unlink(slot);
+            linkAtHead(slot);
+        }
+    }
+
+    private void linkAtHead(int slot) {
+        prev[slot] = NULL_SLOT;
+        next[slot] = head;
+        if (head != NULL_SLOT) {
+            prev[head] = slot;
+        }
+        head = slot;
+        if (tail == NULL_SLOT) {
+            tail = slot;
+        }
+    }
+
+    private void unlink(int slot) {
+        int p = prev[slot];
+        int n = next[slot];
+        if (p != NULL_SLOT) {
+            next[p] = n;
+        } else {
+            head = n;
+        }
+        if (n != NULL_SLOT) {
+            prev[n] = p;
+        } else {
+            tail = p;
+        }
+    }
+}
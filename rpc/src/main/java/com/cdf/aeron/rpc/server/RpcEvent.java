@@ -0,0 +1,22 @@
+package com.cdf.aeron.rpc.server;
+
+import com.cdf.aeron.rpc.sbe.ResponseStatus;
+import org.agrona.ExpandableArrayBuffer;
+
+/**
+ * Disruptor ring 中预分配的事件，agent 线程写入请求，worker 线程写入响应，buffer 循环复用
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+final class RpcEvent {
+    int sessionId;
+    // 完整的 SBE 请求消息（含 header）
+    final ExpandableArrayBuffer request = new ExpandableArrayBuffer(256);
+    int requestLength;
+
+    long id;
+    ResponseStatus status;
+    final ExpandableArrayBuffer response = new ExpandableArrayBuffer(256);
+    int responseLength;
+}
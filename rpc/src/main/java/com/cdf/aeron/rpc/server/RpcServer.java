@@ -1,17 +1,25 @@
 package com.cdf.aeron.rpc.server;
 
-import cn.hutool.core.thread.ThreadFactoryBuilder;
 import com.cdf.aeron.common.help.DefaultErrorHandler;
-import com.cdf.aeron.rpc.Constants;
+import com.cdf.aeron.rpc.RpcConfig;
+import com.cdf.aeron.rpc.RpcThreadFactory;
+import com.cdf.aeron.rpc.Sharding;
+import com.cdf.aeron.rpc.Transport;
+import com.cdf.aeron.rpc.journal.RequestJournal;
+import com.cdf.aeron.rpc.service.ServiceRegistry;
 import io.aeron.Aeron;
+import io.aeron.archive.ArchivingMediaDriver;
 import io.aeron.driver.MediaDriver;
-import io.aeron.driver.ThreadingMode;
 import lombok.extern.slf4j.Slf4j;
 import org.agrona.CloseHelper;
+import org.agrona.concurrent.Agent;
 import org.agrona.concurrent.AgentRunner;
-import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.CompositeAgent;
 import org.agrona.concurrent.ShutdownSignalBarrier;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author chendifan
  * @date 2024-09-01
@@ -20,37 +28,70 @@ import org.agrona.concurrent.ShutdownSignalBarrier;
 public class RpcServer {
     static void main() {
         ShutdownSignalBarrier ssb = new ShutdownSignalBarrier();
+        RpcConfig config = RpcConfig.load();
+        log.info("rpc config: {}", config);
 
-        // 创建一个 MediaDriver
-        MediaDriver.Context mediaDriverCtx = new MediaDriver.Context()
-                .aeronDirectoryName(Constants.AERON_DIR + "/aeron-rpc-server")
+        // 创建一个 MediaDriver，IPC 模式下同机的 client 也连接这个 MediaDriver
+        String aeronDir = config.transport() == Transport.IPC ?
+                config.ipcAeronDir() : config.aeronDir() + "/aeron-rpc-server";
+        // 线程模型默认 DEDICATED，Sender、Receiver、Conductor 各一个线程
+        MediaDriver.Context mediaDriverCtx = config.applyTo(new MediaDriver.Context()
+                .aeronDirectoryName(aeronDir)
                 .dirDeleteOnStart(true)
-                .dirDeleteOnShutdown(false)
-                // 提供专用线程的线程模型，Sender、Receiver、Conductor 各一个线程
-                .threadingMode(ThreadingMode.DEDICATED);
-        // embedded
-        MediaDriver mediaDriver = MediaDriver.launch(mediaDriverCtx);
+                .dirDeleteOnShutdown(false));
+        // embedded，开启 journal 时与 Archive 一起启动，Archive 把请求 stream 录制到磁盘
+        AutoCloseable mediaDriver = config.journal() ?
+                ArchivingMediaDriver.launch(mediaDriverCtx, RequestJournal.newArchiveContext(config, aeronDir)) :
+                MediaDriver.launch(mediaDriverCtx);
 
         // 创建一个 Aeron 实例，连接到 MediaDriver 以进行 pub
-        Aeron.Context aeronCtx = new Aeron.Context().aeronDirectoryName(mediaDriver.aeronDirectoryName());
+        Aeron.Context aeronCtx = new Aeron.Context().aeronDirectoryName(mediaDriverCtx.aeronDirectoryName());
         Aeron aeron = Aeron.connect(aeronCtx);
 
         /*
           agrona 编程模型，创建一个 Agent，包装成 AgentRunner 这个 Runnable，然后不断地运行 doWork 方法，
-          这里是模拟 RPC server 单独一个线程（现实可能不止一个，取决于你的 RPC 线程模型）处理请求、接收响应
+          这里是模拟 RPC server，每个分片一个 Agent，监听各自的 stream，
+          分片可以用 CompositeAgent 合并到一个线程上，也可以各占一个线程（现实取决于你的 RPC 线程模型）
          */
-        ServerAgent serverAgent = new ServerAgent(aeron);
-        AgentRunner agentRunner = new AgentRunner(new BackoffIdleStrategy(), DefaultErrorHandler.INSTANCE, null, serverAgent);
-        AgentRunner.startOnThread(agentRunner, ThreadFactoryBuilder.create().setDaemon(false).setNamePrefix("RPC-Server-").build());
+        ServiceRegistry serviceRegistry = ServiceRegistry.withDefaults();
+        Agent[] serverAgents = new Agent[config.serverShards()];
+        for (int shard = 0; shard < serverAgents.length; shard++) {
+            // 配置了 worker 时每个分片一个 worker pool，handler 不占用 agent 线程
+            serverAgents[shard] = new ServerAgent(aeron, serviceRegistry, config, Sharding.streamId(shard),
+                    config.serverFragmentLimit(), config.serverFlushPolicy(), config.workerPoolConfig());
+        }
+        // 在 agent 开始 poll 之前开始录制，不漏掉任何 client
+        RequestJournal journal = null;
+        if (config.journal()) {
+            journal = new RequestJournal(aeron, config);
+            for (int shard = 0; shard < serverAgents.length; shard++) {
+                journal.record(Sharding.streamId(shard));
+            }
+        }
+        List<AgentRunner> agentRunners = new ArrayList<>();
+        if (serverAgents.length == 1 || config.shardsShareThread()) {
+            Agent agent = serverAgents.length == 1 ? serverAgents[0] : new CompositeAgent(serverAgents);
+            agentRunners.add(new AgentRunner(config.newAgentIdleStrategy(), DefaultErrorHandler.INSTANCE, null, agent));
+        } else {
+            for (Agent agent : serverAgents) {
+                agentRunners.add(new AgentRunner(config.newAgentIdleStrategy(), DefaultErrorHandler.INSTANCE, null, agent));
+            }
+        }
+        RpcThreadFactory threadFactory = new RpcThreadFactory(false);
+        for (AgentRunner agentRunner : agentRunners) {
+            AgentRunner.startOnThread(agentRunner, threadFactory);
+        }
 
         // 等待进程退出
         ssb.await();
         log.info("process exiting...");
         /*
           1. 先关 Agent，也就是 publication & subscription，释放 log buffer 文件
-          2. 再关 Aeron，也就是 Conductor
-          3. 最后关 MediaDriver (包含 MediaDriver 的 Conductor)
+          2. 停止录制，recording 记下 stopPosition，之后才能完整回放
+          3. 再关 Aeron，也就是 Conductor
+          4. 最后关 MediaDriver (包含 MediaDriver 的 Conductor) 和 Archive
          */
-        CloseHelper.quietCloseAll(agentRunner, aeron, mediaDriver, ssb);
+        CloseHelper.quietCloseAll(agentRunners);
+        CloseHelper.quietCloseAll(journal, aeron, mediaDriver, ssb);
     }
 }
\ No newline at end of file
@@ -1,58 +1,223 @@
 package com.cdf.aeron.rpc.server;
 
-import com.cdf.aeron.common.util.ProcessUtils;
+import com.cdf.aeron.common.codec.Lz4Codec;
+import com.cdf.aeron.common.diagnostics.AeronDiagnostics;
 import com.cdf.aeron.rpc.Constants;
+import com.cdf.aeron.rpc.RpcConfig;
+import com.cdf.aeron.rpc.metrics.ServerCounters;
 import com.cdf.aeron.rpc.sbe.*;
+import com.cdf.aeron.rpc.service.ResponseStream;
+import com.cdf.aeron.rpc.service.RpcHandler;
+import com.cdf.aeron.rpc.service.RpcStreamHandler;
+import com.cdf.aeron.rpc.service.ServiceRegistry;
 import io.aeron.Aeron;
+import io.aeron.ExclusivePublication;
+import io.aeron.FragmentAssembler;
+import io.aeron.Image;
 import io.aeron.Publication;
+import io.aeron.logbuffer.BufferClaim;
 import io.aeron.logbuffer.FragmentHandler;
 import io.aeron.logbuffer.Header;
 import lombok.extern.slf4j.Slf4j;
 import org.agrona.DirectBuffer;
+import org.agrona.ExpandableArrayBuffer;
 import org.agrona.ExpandableDirectByteBuffer;
-import org.agrona.concurrent.BackoffIdleStrategy;
-import org.agrona.concurrent.IdleStrategy;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.ArrayListUtil;
+import org.agrona.collections.Int2ObjectHashMap;
+import org.agrona.collections.IntArrayList;
+import org.agrona.collections.LongArrayList;
+import org.agrona.concurrent.NanoClock;
+import org.agrona.concurrent.OneToOneConcurrentArrayQueue;
+import org.agrona.concurrent.UnsafeBuffer;
 
-import java.io.File;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.function.Consumer;
 
+import static org.agrona.BitUtil.SIZE_OF_INT;
 import static org.agrona.CloseHelper.quietClose;
 
 /**
- * 模拟 RPC server，从请求 buffer 中识别完整的请求并进行处理
+ * 模拟 RPC server，从请求 buffer 中识别完整的请求，按 methodId 分发给 {@link ServiceRegistry} 中注册的 handler 处理。
+ * 按 templateId 区分单个请求和 client 合并发送的 MyBatchRequest，两者可以在同一个 session 上混用。
+ * <p>
+ * LZ4 压缩的请求先解压成普通的 MyRequest 再处理；配置了 compression 且 client 在 MyConnect 中声明能接收 LZ4 时，
+ * 不小于 compressionThreshold 的单个响应压缩后发送，合并响应、流式分块和缓存命中的响应不压缩
  *
  * @author chendifan
  * @date 2024-09-01
  */
 @Slf4j
 public class ServerAdapter implements FragmentHandler {
+    // 一个 MyResponseChunk 除数据外的长度
+    private static final int CHUNK_OVERHEAD = HeaderEncoder.ENCODED_LENGTH + MyResponseChunkEncoder.BLOCK_LENGTH +
+            MyResponseChunkEncoder.dataHeaderLength();
+    // 一个 MyBatchResponse 除元素外的长度
+    private static final int BATCH_RESPONSE_OVERHEAD = HeaderEncoder.ENCODED_LENGTH +
+            MyBatchResponseEncoder.BLOCK_LENGTH + MyBatchResponseEncoder.ResultsEncoder.sbeHeaderSize();
 
     private final Aeron aeron;
-    private final IdleStrategy idleStrategy;
+    private final NanoClock nanoClock;
     // 虽然 decoder 带状态，但这里是模拟 RPC server，只有一个线程
     private final HeaderEncoder headerEncoder;
     private final HeaderDecoder headerDecoder;
     private final MyConnectDecoder connectDecoder;
     private final MyRequestDecoder requestDecoder;
     private final MyResponseEncoder responseEncoder;
+    private final MyResponseChunkEncoder chunkEncoder;
+    private final MyHeartbeatDecoder heartbeatDecoder;
+    private final MyHeartbeatEncoder heartbeatEncoder;
+    private final MyBatchRequestDecoder batchRequestDecoder;
+    private final MyBatchResponseEncoder batchResponseEncoder;
+    private final GroupSizeEncodingEncoder groupSizeEncoder;
+    // 拆开 MyBatchRequest 时把每个元素重新编码为 MyRequest，走与单个请求相同的处理路径
+    private final MyRequestEncoder unpackEncoder;
+    private final ExpandableDirectByteBuffer unpackedRequest;
+    private final MyResponseDecoder cachedResponseDecoder;
+    private final ExpandableDirectByteBuffer batchResponseBuffer;
+    // 因背压挂起的流式响应，以及回收复用的
+    private final ArrayList<SessionResponseStream> suspendedStreams;
+    private final ArrayList<SessionResponseStream> freeStreams;
+    // 流式 handler 拼分块内容的 buffer，handler 都在 agent 线程上执行，所有流共用；按各 session 的 maxChunkLength 截取
+    private final ExpandableDirectByteBuffer streamChunkBuffer;
+    private final UnsafeBuffer streamChunk;
     private final ExpandableDirectByteBuffer reusedBuffer;
+    private final BufferClaim bufferClaim;
+    private final ServiceRegistry serviceRegistry;
+    // 超过 MTU 的请求会被 Aeron 分片，按 session 重组后再交给 onFragment
+    private final FragmentAssembler fragmentAssembler;
+    // 为 null 时 handler 在 agent 线程上直接执行
+    private final WorkerPoolDispatcher dispatcher;
+    // 幂等方法的响应缓存，为 null 时不缓存
+    private final ResponseCache cache;
+    // 广播方法的结果和 push 调用发往各 topic 的订阅者
+    private final PushPublisher pushPublisher;
+    private final MySubscribeDecoder subscribeDecoder;
+    // handler 写响应内容的可复用 buffer
+    private final ExpandableArrayBuffer resBuffer;
+    // 每个 client 一个 session，key 为请求 Image 的 sessionId，响应按 session 路由回对应的 publication
+    private final Int2ObjectHashMap<ServerSession> sessions;
+    // image 回调发生在 Aeron 的 conductor 线程上，这里只入队，由 agent 线程处理
+    private final OneToOneConcurrentArrayQueue<Image> unavailableImages;
+    // drain 的回调，预先创建好，每个 duty cycle 不再生成捕获 this 的 lambda
+    private final Consumer<Image> unavailableImageHandler;
+    // 响应 publication 尚未就绪的 session
+    private final ArrayList<ServerSession> pendingSessions;
+    private final FlushPolicy flushPolicy;
+    private final OverloadPolicy overloadPolicy;
+    private final int outboundQueueLength;
+    // 为 null 时响应发往 client 在 MyConnect 中声明的 channel
+    private final String responseChannel;
+    private final ServerCounters counters;
+    // 建连时在诊断线程上打印 channel、socket 和 MediaDriver 目录的状态，不在 agent 线程上做 I/O
+    private final AeronDiagnostics diagnostics;
+    // 批量模式下，本次 poll 中有响应待发送的 session
+    private final ArrayList<ServerSession> batchedSessions;
+    // 出站队列中有积压的 session
+    private final ArrayList<ServerSession> backloggedSessions;
+    private final long sessionLivenessTimeoutNs;
+    // 存活检查时暂存超时的 sessionId，遍历结束后再回收
+    private final IntArrayList expiredSessionIds;
+    private final boolean compression;
+    private final int compressionThreshold;
+    private final int maxInflatedLength;
+    private final Lz4Codec lz4Codec;
+    // 压缩后的响应内容
+    private final ExpandableDirectByteBuffer compressBuffer;
 
-    // 正常来说，有多个 Client，那应该是多个 Publication
-    private Publication publication;
-    private volatile boolean running = true;
+    private int pausedSessionCount;
+    // 每个 duty cycle 在 doSessionWork 中更新一次
+    private long nowNs;
+    private long nextLivenessCheckNs;
+    // 处理 MyBatchRequest 期间，该 session 同步完成的响应合并进 MyBatchResponse，其它时候为 null
+    private ServerSession batchResponseSession;
+    private MyBatchResponseEncoder.ResultsEncoder batchResults;
+    // batchResults 声明的元素个数上限，即 MyBatchRequest 的元素个数，发出前改写为实际个数
+    private int batchResponseCapacity;
+    private int batchResponseCount;
 
-    public ServerAdapter(Aeron aeron) {
+    /**
+     * @param config           背压处理策略、出站队列长度、响应缓存、编码 buffer 的初始长度
+     * @param workerPoolConfig 为 null 时 handler 在 agent 线程上直接执行，否则交给 Disruptor worker pool
+     */
+    public ServerAdapter(Aeron aeron, RpcConfig config, ServiceRegistry serviceRegistry, FlushPolicy flushPolicy,
+                         WorkerPoolConfig workerPoolConfig, ServerCounters counters) {
+        this(aeron, config, serviceRegistry, flushPolicy, workerPoolConfig, counters, null);
+    }
+
+    /**
+     * @param responseChannel 所有 session 的响应都发往这个 channel，而不是 client 在 MyConnect 中声明的 channel，
+     *                        用于回放录制的请求，原来的 client 已经不在了
+     */
+    public ServerAdapter(Aeron aeron, RpcConfig config, ServiceRegistry serviceRegistry, FlushPolicy flushPolicy,
+                         WorkerPoolConfig workerPoolConfig, ServerCounters counters, String responseChannel) {
         this.aeron = aeron;
-        this.idleStrategy = new BackoffIdleStrategy();
+        this.responseChannel = responseChannel;
+        this.counters = counters;
+        this.diagnostics = AeronDiagnostics.forDirectory(aeron.context().aeronDirectoryName());
+        this.serviceRegistry = serviceRegistry;
+        this.dispatcher = workerPoolConfig == null ? null :
+                new WorkerPoolDispatcher(serviceRegistry, workerPoolConfig, this::onComplete);
+        this.cache = config.cacheLength() > 0 ?
+                new ResponseCache(config.cacheLength(), config.cacheEntryLength(), config.cacheTtlNs()) : null;
+        this.pushPublisher = new PushPublisher(aeron, config.resolvePushChannel(), config.isMdcPush());
+        this.subscribeDecoder = new MySubscribeDecoder();
+        this.flushPolicy = flushPolicy;
+        this.overloadPolicy = config.overloadPolicy();
+        this.outboundQueueLength = config.outboundQueueLength();
+        this.nanoClock = aeron.context().nanoClock();
         this.headerDecoder = new HeaderDecoder();
         this.headerEncoder = new HeaderEncoder();
         this.connectDecoder = new MyConnectDecoder();
         this.requestDecoder = new MyRequestDecoder();
         this.responseEncoder = new MyResponseEncoder();
-        this.reusedBuffer = new ExpandableDirectByteBuffer(512);
+        this.chunkEncoder = new MyResponseChunkEncoder();
+        this.heartbeatDecoder = new MyHeartbeatDecoder();
+        this.heartbeatEncoder = new MyHeartbeatEncoder();
+        this.batchRequestDecoder = new MyBatchRequestDecoder();
+        this.batchResponseEncoder = new MyBatchResponseEncoder();
+        this.groupSizeEncoder = new GroupSizeEncodingEncoder();
+        this.unpackEncoder = new MyRequestEncoder();
+        this.unpackedRequest = new ExpandableDirectByteBuffer(config.bufferLength());
+        this.cachedResponseDecoder = new MyResponseDecoder();
+        this.batchResponseBuffer = new ExpandableDirectByteBuffer(config.bufferLength());
+        this.suspendedStreams = new ArrayList<>();
+        this.freeStreams = new ArrayList<>();
+        this.streamChunkBuffer = new ExpandableDirectByteBuffer(config.bufferLength());
+        this.streamChunk = new UnsafeBuffer(0, 0);
+        this.reusedBuffer = new ExpandableDirectByteBuffer(config.bufferLength());
+        this.bufferClaim = new BufferClaim();
+        this.resBuffer = new ExpandableArrayBuffer(256);
+        this.sessions = new Int2ObjectHashMap<>();
+        this.unavailableImages = new OneToOneConcurrentArrayQueue<>(Constants.MAX_SESSION_EVENTS);
+        this.unavailableImageHandler = image -> closeSession(image.sessionId());
+        this.pendingSessions = new ArrayList<>();
+        this.batchedSessions = new ArrayList<>();
+        this.backloggedSessions = new ArrayList<>();
+        this.sessionLivenessTimeoutNs = config.sessionLivenessTimeoutNs();
+        this.expiredSessionIds = new IntArrayList();
+        this.compression = config.compression() == PayloadEncoding.LZ4;
+        this.compressionThreshold = config.compressionThreshold();
+        this.maxInflatedLength = config.maxInflatedLength();
+        this.lz4Codec = new Lz4Codec();
+        this.compressBuffer = new ExpandableDirectByteBuffer(config.bufferLength());
+        this.fragmentAssembler = new FragmentAssembler(this);
+    }
+
+    /**
+     * @return poll 请求 subscription 时使用的 handler，会先重组分片的消息
+     */
+    public FragmentHandler fragmentHandler() {
+        return fragmentAssembler;
     }
 
     @Override
     public void onFragment(DirectBuffer buffer, int offset, int length, Header header) {
+        onFragment(buffer, offset, length, header.sessionId());
+    }
+
+    private void onFragment(DirectBuffer buffer, int offset, int length, int sessionId) {
         headerDecoder.wrap(buffer, offset);
         int headerLength = headerDecoder.encodedLength();
         int payloadLength = headerDecoder.blockLength();
@@ -60,62 +225,993 @@ public class ServerAdapter implements FragmentHandler {
 
         switch (headerDecoder.templateId()) {
             case MyConnectDecoder.TEMPLATE_ID:
-                onConnect(buffer, offset, headerLength, payloadLength, version);
+                onConnect(buffer, offset, headerLength, payloadLength, version, sessionId);
                 break;
             case MyRequestDecoder.TEMPLATE_ID:
-                onRequest(buffer, offset, headerLength, payloadLength, version);
+                onRequest(buffer, offset, length, headerLength, payloadLength, version, sessionId);
+                break;
+            case MyBatchRequestDecoder.TEMPLATE_ID:
+                onBatchRequest(buffer, offset, headerLength, payloadLength, version, sessionId);
+                break;
+            case MySubscribeDecoder.TEMPLATE_ID:
+                onSubscribe(buffer, offset, headerLength, payloadLength, version, sessionId);
+                break;
+            case MyHeartbeatDecoder.TEMPLATE_ID:
+                onHeartbeat(buffer, offset, headerLength, payloadLength, version, sessionId);
                 break;
             default:
                 break;
         }
     }
 
-    private void onConnect(DirectBuffer buffer, int offset, int headerLength, int payloadLength, int version) {
+    /**
+     * client 的请求 publication 对 server 可见，conductor 线程回调
+     */
+    public void onAvailableImage(Image image) {
+        log.info("client image available, sessionId: {}, source: {}", image.sessionId(), image.sourceIdentity());
+    }
+
+    /**
+     * client 的请求 publication 不可用（关闭或超时），conductor 线程回调，交给 agent 线程回收 session
+     */
+    public void onUnavailableImage(Image image) {
+        if (!unavailableImages.offer(image)) {
+            log.warn("session event queue full, sessionId: {}", image.sessionId());
+        }
+    }
+
+    /**
+     * 在 agent 线程上处理 image 事件，回收已断开或心跳超时的 client 的 session，推进未就绪 session 的建连，
+     * 重发背压时积压的响应，继续因背压挂起的流式响应
+     *
+     * @return 处理的事件数
+     */
+    public int doSessionWork() {
+        nowNs = nanoClock.nanoTime();
+        int workCount = unavailableImages.drain(unavailableImageHandler);
+        if (nowNs - nextLivenessCheckNs >= 0) {
+            workCount += expireSessions();
+            nextLivenessCheckNs = nowNs + Constants.LIVENESS_CHECK_INTERVAL_NS;
+        }
+        if (!pendingSessions.isEmpty()) {
+            workCount += doPendingSessionWork();
+        }
+        if (!backloggedSessions.isEmpty()) {
+            workCount += drainBacklog();
+        }
+        // 在积压的响应之后，流的分块排在它们后面
+        if (!suspendedStreams.isEmpty()) {
+            workCount += resumeStreams();
+        }
+        workCount += pushPublisher.doWork();
+        return workCount;
+    }
+
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * @return 因 {@link OverloadPolicy#PAUSE} 暂停读取请求的 session 数
+     */
+    public int pausedSessionCount() {
+        return pausedSessionCount;
+    }
+
+    /**
+     * @return 是否应暂停 poll 该 sessionId 对应的 image
+     */
+    public boolean isPaused(int sessionId) {
+        ServerSession session = sessions.get(sessionId);
+        return session != null && session.isPaused();
+    }
+
+    /**
+     * @return 不存在时返回 null
+     */
+    public ServerSession session(int sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    private void onConnect(DirectBuffer buffer, int offset, int headerLength, int payloadLength, int version,
+                           int sessionId) {
         // 解码 payload
         connectDecoder.wrap(buffer, offset + headerLength, payloadLength, version);
         // Client 声明的用于接收响应的 channel 的 media 地址
-        String channel = connectDecoder.channel();
+        String channel = responseChannel != null ? responseChannel : connectDecoder.channel();
         // streamId 在 channel 中唯一
         int streamId = connectDecoder.streamId();
-        // 单线程 pub
-        publication = aeron.addExclusivePublication(channel, streamId);
-        // session 是 MediaDriver 的所有 Publication 中唯一的
-        // int sessionId = publication.sessionId();
-        // 等待 Client 创建 subscription 连上 server
-        while (running && !publication.isConnected()) {
-            idleStrategy.idle();
+        // 同一个 client 重复 connect，先释放旧的 publication
+        closeSession(sessionId);
+        // 异步建立响应 publication，建连由 doSessionWork 推进，不阻塞 duty cycle
+        long nowNs = nanoClock.nanoTime();
+        ServerSession session = new ServerSession(aeron, sessionId, channel, streamId,
+                nowNs + Constants.CONNECT_TIMEOUT_NS, Constants.MAX_PENDING_REQUESTS, outboundQueueLength);
+        session.touch(nowNs);
+        // 双方都开启时才压缩响应，version 3 之前的 client 解码为 NULL_VAL
+        if (compression && connectDecoder.compression() == PayloadEncoding.LZ4) {
+            session.compression(PayloadEncoding.LZ4);
         }
-        idleStrategy.reset();
-        log.info("outbound connected, uri: {}", channel);
-        ProcessUtils.lsofUdp();
-        ProcessUtils.tree(new File(Constants.AERON_DIR));
+        sessions.put(sessionId, session);
+        pendingSessions.add(session);
+        counters.sessions(sessions.size());
+        log.info("connect received, sessionId: {}, uri: {}, compression: {}", sessionId, channel,
+                session.compression());
     }
 
-    private void onRequest(DirectBuffer buffer, int offset, int headerLength, int payloadLength, int version) {
+    private void onRequest(DirectBuffer buffer, int offset, int length, int headerLength, int payloadLength,
+                           int version, int sessionId) {
+        ServerSession session = sessions.get(sessionId);
+        if (session == null) {
+            log.warn("request from unknown session, sessionId: {}", sessionId);
+            return;
+        }
+        requestDecoder.wrap(buffer, offset + headerLength, payloadLength, version);
+        if (requestDecoder.encoding() == PayloadEncoding.LZ4) {
+            // 解压成普通的 MyRequest，缓存、worker pool、建连前缓冲都按未压缩的请求处理
+            int unpackedLength = inflateRequest(buffer);
+            if (unpackedLength > 0) {
+                onRequest(unpackedRequest, 0, unpackedLength, HeaderEncoder.ENCODED_LENGTH,
+                        MyRequestEncoder.BLOCK_LENGTH, MyRequestEncoder.SCHEMA_VERSION, sessionId);
+                return;
+            }
+            log.warn("malformed compressed request, sessionId: {}, id: {}", sessionId, requestDecoder.id());
+            if (session.isActive()) {
+                sendResponse(session, requestDecoder.id(), ResponseStatus.HANDLER_ERROR, resBuffer, 0, 0);
+            } else {
+                session.reject(requestDecoder.id());
+            }
+            return;
+        }
+        session.touch(nowNs);
+        counters.onRequestReceived();
+        if (!session.isActive()) {
+            // 响应 channel 还没建好，先缓存，缓存满了则记录下来，建连后拒绝
+            if (!session.bufferRequest(buffer, offset, length)) {
+                requestDecoder.wrap(buffer, offset + headerLength, payloadLength, version);
+                session.reject(requestDecoder.id());
+            }
+            return;
+        }
+
         requestDecoder.wrap(buffer, offset + headerLength, payloadLength, version);
         long id = requestDecoder.id();
-        String req = requestDecoder.req();
+        int methodId = requestDecoder.methodId();
+        if (log.isDebugEnabled()) {
+            log.debug("request received, sessionId: {}, id: {}, methodId: {}", sessionId, id, methodId);
+        }
+        // 响应发不出去时不再执行新的请求，直接告诉 client 繁忙，client 据此收缩发送窗口
+        if (overloadPolicy == OverloadPolicy.REJECT && session.isOverloaded()) {
+            counters.onRequestRejected();
+            sendResponse(session, id, ResponseStatus.SERVER_BUSY, resBuffer, 0, 0);
+            return;
+        }
+        // 流式 handler 边处理边写响应 publication，只能在 agent 线程上执行
+        RpcStreamHandler streamHandler = serviceRegistry.streamHandler(methodId);
+        if (streamHandler != null) {
+            onStreamRequest(session, id, methodId, streamHandler);
+            return;
+        }
+
+        // 幂等方法先查缓存，命中时不执行 handler，直接拷贝编码好的响应；hash 在请求所在的 buffer 上计算
+        boolean cacheable = cache != null && serviceRegistry.isIdempotent(methodId);
+        long cacheHash = 0;
+        int reqOffset = 0;
+        int reqLength = 0;
+        if (cacheable) {
+            reqOffset = requestDecoder.limit() + MyRequestDecoder.reqHeaderLength();
+            reqLength = requestDecoder.reqLength();
+            cacheHash = ResponseCache.hash(methodId, buffer, reqOffset, reqLength);
+            int slot = cache.lookup(cacheHash, methodId, buffer, reqOffset, reqLength, nanoClock.nanoTime());
+            if (slot != ResponseCache.NULL_SLOT) {
+                counters.onCacheHit();
+                sendCachedResponse(session, id, slot);
+                return;
+            }
+            counters.onCacheMiss();
+        }
 
-        log.info("request received, id: {}, req: {}", id, req);
-        String res = "server time " + System.currentTimeMillis();
-        responseEncoder.wrapAndApplyHeader(reusedBuffer, 0, headerEncoder);
+        if (dispatcher != null) {
+            // worker pool 模式，只拷贝请求字节，handler 在 worker 线程上执行，处理完由 onComplete 发送响应
+            if (!dispatcher.submit(sessionId, buffer, offset, length)) {
+                sendResponse(session, id, ResponseStatus.SERVER_BUSY, resBuffer, 0, 0);
+            }
+            return;
+        }
+
+        // 按 methodId 直接从数组取 handler，handler 把响应内容写入可复用的 resBuffer，稳态下不产生垃圾
+        RpcHandler handler = serviceRegistry.handler(methodId);
+        if (handler == null) {
+            sendResponse(session, id, ResponseStatus.UNKNOWN_METHOD, resBuffer, 0, 0);
+            return;
+        }
+        int resLength;
+        try {
+            resLength = handler.onRequest(requestDecoder, resBuffer);
+        } catch (Exception e) {
+            log.error("handler error, sessionId: {}, id: {}, methodId: {}", sessionId, id, methodId, e);
+            sendResponse(session, id, ResponseStatus.HANDLER_ERROR, resBuffer, 0, 0);
+            return;
+        }
+        if (cacheable) {
+            cache.put(cacheHash, methodId, buffer, reqOffset, reqLength, resBuffer, 0, resLength, nanoClock.nanoTime());
+        }
+        int topicId = serviceRegistry.topic(methodId);
+        if (topicId != ServiceRegistry.NULL_TOPIC) {
+            broadcast(session, id, topicId, resBuffer, resLength);
+            return;
+        }
+        sendResponse(session, id, ResponseStatus.OK, resBuffer, 0, resLength);
+    }
+
+    /**
+     * 把 requestDecoder 当前指向的 LZ4 请求解压成未压缩的 MyRequest，直接解压到 unpackedRequest 中 req 的位置
+     *
+     * @return MyRequest 的长度，数据不合法或声明的原始长度超过 maxInflatedLength 时返回 0
+     */
+    private int inflateRequest(DirectBuffer buffer) {
+        int reqOffset = requestDecoder.limit() + MyRequestDecoder.reqHeaderLength();
+        int reqLength = requestDecoder.reqLength();
+        int length = Lz4Codec.decompressedLength(buffer, reqOffset, reqLength);
+        // 声明的长度最多可达压缩数据的 255 倍，先检查上限再扩容 unpackedRequest
+        if (length == Lz4Codec.NOT_COMPRESSED || length > maxInflatedLength) {
+            return 0;
+        }
+        unpackEncoder.wrapAndApplyHeader(unpackedRequest, 0, headerEncoder);
+        unpackEncoder.id(requestDecoder.id());
+        unpackEncoder.methodId(requestDecoder.methodId());
+        unpackEncoder.encoding(PayloadEncoding.NONE);
+        int lengthOffset = unpackEncoder.limit();
+        int dataOffset = lengthOffset + MyRequestEncoder.reqHeaderLength();
+        unpackedRequest.checkLimit(dataOffset + length);
+        if (lz4Codec.decompress(buffer, reqOffset, reqLength, unpackedRequest, dataOffset) == Lz4Codec.NOT_COMPRESSED) {
+            return 0;
+        }
+        unpackedRequest.putInt(lengthOffset, length, ByteOrder.LITTLE_ENDIAN);
+        unpackEncoder.limit(dataOffset + length);
+        return HeaderEncoder.ENCODED_LENGTH + unpackEncoder.encodedLength();
+    }
+
+    /**
+     * 广播方法的结果推送给 topic 的所有订阅者，调用方只收到一个表示是否发出的空响应
+     */
+    private void broadcast(ServerSession session, long id, int topicId, DirectBuffer res, int resLength) {
+        boolean published = pushPublisher.publish(topicId, res, 0, resLength);
+        sendResponse(session, id, published ? ResponseStatus.OK : ResponseStatus.SERVER_BUSY, resBuffer, 0, 0);
+    }
+
+    /**
+     * 推送一条消息给 topic 的所有订阅者，只能在 agent 线程上调用，用于 server 主动推送
+     *
+     * @return 已发出或者 topic 还没有订阅者时返回 true，topic 的 publication 未就绪或背压时返回 false
+     */
+    public boolean push(int topicId, DirectBuffer data, int offset, int length) {
+        return pushPublisher.publish(topicId, data, offset, length);
+    }
+
+    /**
+     * 回放录制的请求时没有原来的 client 可推，忽略订阅
+     */
+    private void onSubscribe(DirectBuffer buffer, int offset, int headerLength, int payloadLength, int version,
+                             int sessionId) {
+        ServerSession session = sessions.get(sessionId);
+        if (session == null || responseChannel != null) {
+            return;
+        }
+        session.touch(nowNs);
+        subscribeDecoder.wrap(buffer, offset + headerLength, payloadLength, version);
+        int topicId = subscribeDecoder.topicId();
+        pushPublisher.subscribe(topicId, sessionId, subscribeDecoder.channel());
+    }
+
+    /**
+     * 把 MyBatchRequest 拆成单个的 MyRequest 交给 {@link #onRequest}，缓存、worker pool、流式、过载拒绝都与单个请求一致。
+     * 同步完成的响应合并进一个 MyBatchResponse，一个 frame 放不下时分成多个；
+     * 响应 channel 未就绪时拆开的请求逐个缓存，建连后按单个请求处理和响应
+     */
+    private void onBatchRequest(DirectBuffer buffer, int offset, int headerLength, int payloadLength, int version,
+                                int sessionId) {
+        ServerSession session = sessions.get(sessionId);
+        if (session == null) {
+            log.warn("batch request from unknown session, sessionId: {}", sessionId);
+            return;
+        }
+        batchRequestDecoder.wrap(buffer, offset + headerLength, payloadLength, version);
+        MyBatchRequestDecoder.CallsDecoder calls = batchRequestDecoder.calls();
+        if (session.isActive()) {
+            batchResponseSession = session;
+            batchResponseCapacity = calls.count();
+        }
+        while (calls.hasNext()) {
+            calls.next();
+            long id = calls.id();
+            int methodId = calls.methodId();
+            int reqOffset = batchRequestDecoder.limit() + MyBatchRequestDecoder.CallsDecoder.reqHeaderLength();
+            int reqLength = calls.skipReq();
+            unpackEncoder.wrapAndApplyHeader(unpackedRequest, 0, headerEncoder);
+            unpackEncoder.id(id);
+            unpackEncoder.methodId(methodId);
+            unpackEncoder.encoding(PayloadEncoding.NONE);
+            unpackEncoder.putReq(buffer, reqOffset, reqLength);
+            onRequest(unpackedRequest, 0, HeaderEncoder.ENCODED_LENGTH + unpackEncoder.encodedLength(),
+                    HeaderEncoder.ENCODED_LENGTH, MyRequestEncoder.BLOCK_LENGTH, MyRequestEncoder.SCHEMA_VERSION,
+                    sessionId);
+        }
+        if (batchResponseSession != null) {
+            finishBatchResponse();
+            batchResponseSession = null;
+        }
+    }
+
+    /**
+     * 把一个响应追加到正在合并的 MyBatchResponse，加上它会超过一个 frame 时先把已合并的发出
+     *
+     * @return 单个响应就放不进一个 frame 时返回 false，由调用方单独发送
+     */
+    private boolean appendBatchResult(long id, ResponseStatus status, DirectBuffer res, int resOffset, int resLength) {
+        int entryLength = MyBatchResponseEncoder.ResultsEncoder.sbeBlockLength() +
+                MyBatchResponseEncoder.ResultsEncoder.resHeaderLength() + resLength;
+        int maxLength = batchResponseSession.publication().maxPayloadLength();
+        if (BATCH_RESPONSE_OVERHEAD + entryLength > maxLength) {
+            return false;
+        }
+        if (batchResponseCount > 0 &&
+                HeaderEncoder.ENCODED_LENGTH + batchResponseEncoder.encodedLength() + entryLength > maxLength) {
+            finishBatchResponse();
+        }
+        if (batchResponseCount == 0) {
+            batchResponseEncoder.wrapAndApplyHeader(batchResponseBuffer, 0, headerEncoder);
+            batchResults = batchResponseEncoder.resultsCount(batchResponseCapacity);
+        }
+        batchResults.next().id(id).status(status).putRes(res, resOffset, resLength);
+        batchResponseCount++;
+        return true;
+    }
+
+    /**
+     * 把元素个数改写为实际合并的响应数后发出，与单个响应的发送路径相同
+     */
+    private void finishBatchResponse() {
+        if (batchResponseCount == 0) {
+            return;
+        }
+        groupSizeEncoder.wrap(batchResponseBuffer, HeaderEncoder.ENCODED_LENGTH + MyBatchResponseEncoder.BLOCK_LENGTH)
+                .numInGroup(batchResponseCount);
+        int length = HeaderEncoder.ENCODED_LENGTH + batchResponseEncoder.encodedLength();
+        batchResponseCount = 0;
+        ServerSession session = batchResponseSession;
+        ExclusivePublication publication = session.publication();
+        if (flushPolicy == FlushPolicy.END_OF_POLL) {
+            if (session.batchLength() + length > publication.maxPayloadLength()) {
+                flush(session);
+            }
+            session.batchBuffer().putBytes(session.batchLength(), batchResponseBuffer, 0, length);
+            if (session.commitBatch(length)) {
+                batchedSessions.add(session);
+            }
+        } else if (!session.hasBacklog() && claim(publication, length)) {
+            bufferClaim.buffer().putBytes(bufferClaim.offset(), batchResponseBuffer, 0, length);
+            bufferClaim.commit();
+        } else {
+            send(session, batchResponseBuffer, length);
+        }
+    }
+
+    /**
+     * 刷新 session 的存活时间并回一个心跳，回复是尽力而为的，背压或有积压时不回，client 靠其它响应或下一次心跳判断存活
+     */
+    private void onHeartbeat(DirectBuffer buffer, int offset, int headerLength, int payloadLength, int version,
+                             int sessionId) {
+        ServerSession session = sessions.get(sessionId);
+        if (session == null) {
+            return;
+        }
+        session.touch(nowNs);
+        if (!session.isActive() || session.hasBacklog()) {
+            return;
+        }
+        heartbeatDecoder.wrap(buffer, offset + headerLength, payloadLength, version);
+        if (claim(session.publication(), HeaderEncoder.ENCODED_LENGTH + MyHeartbeatEncoder.BLOCK_LENGTH)) {
+            heartbeatEncoder.wrapAndApplyHeader(bufferClaim.buffer(), bufferClaim.offset(), headerEncoder);
+            heartbeatEncoder.timestamp(heartbeatDecoder.timestamp());
+            bufferClaim.commit();
+        }
+    }
+
+    /**
+     * 回收超过 sessionLivenessTimeout 没有任何消息的 session：client 卡死或网络中断而 Image 尚未超时，
+     * 或者 client 的 MediaDriver 还在而 client 进程已经没有在工作。
+     * 被暂停的 session 不读 image，收不到心跳，不算超时；client 真的断开时由 image 不可用事件回收
+     *
+     * @return 回收的 session 数
+     */
+    private int expireSessions() {
+        expiredSessionIds.clear();
+        for (ServerSession session : sessions.values()) {
+            if (session.isActive() && !session.isPaused() &&
+                    nowNs - session.lastActivityNs() > sessionLivenessTimeoutNs) {
+                expiredSessionIds.addInt(session.sessionId());
+            }
+        }
+        for (int i = 0, size = expiredSessionIds.size(); i < size; i++) {
+            log.warn("session liveness timeout, sessionId: {}", expiredSessionIds.getInt(i));
+            closeSession(expiredSessionIds.getInt(i));
+        }
+        return expiredSessionIds.size();
+    }
+
+    private void onStreamRequest(ServerSession session, long id, int methodId, RpcStreamHandler handler) {
+        // 分块直接写 publication，先把该 session 已攒批的响应发出，保持发送顺序
+        flush(session);
+        int freeCount = freeStreams.size();
+        SessionResponseStream stream = freeCount == 0 ? new SessionResponseStream() : freeStreams.remove(freeCount - 1);
+        stream.reset(session, id, methodId, handler, requestDecoder);
+        if (runStream(stream)) {
+            suspendedStreams.add(stream);
+        }
+    }
+
+    /**
+     * 从 cursor 处调用 handler，写完、出错或被放弃时发出结束标记并回收 stream
+     *
+     * @return 因背压挂起，需要之后继续时返回 true
+     */
+    private boolean runStream(SessionResponseStream stream) {
+        ResponseStatus status;
+        try {
+            stream.cursor = stream.handler.onRequest(stream.request(), stream.cursor, stream);
+            if (!stream.aborted && (stream.cursor != RpcStreamHandler.END || stream.hasPending())) {
+                return true;
+            }
+            status = stream.aborted ? ResponseStatus.SERVER_BUSY : ResponseStatus.OK;
+        } catch (Exception e) {
+            log.error("stream handler error, sessionId: {}, id: {}, methodId: {}", stream.session.sessionId(),
+                    stream.id, stream.methodId, e);
+            status = ResponseStatus.HANDLER_ERROR;
+        }
+        finishStream(stream, status);
+        return false;
+    }
+
+    /**
+     * 继续挂起的流：先按序发出上次没写出的内容，再从 cursor 处调用 handler，长时间没有进展的流被放弃
+     *
+     * @return 结束的流数
+     */
+    private int resumeStreams() {
+        int workCount = 0;
+        for (int i = suspendedStreams.size() - 1; i >= 0; i--) {
+            SessionResponseStream stream = suspendedStreams.get(i);
+            boolean suspended;
+            if (stream.session.isClosed()) {
+                // session 已回收，client 不在了，结束标记也不用发
+                releaseStream(stream);
+                suspended = false;
+            } else if (!stream.drainPending()) {
+                suspended = !stream.isStalled();
+                if (!suspended) {
+                    stream.aborted = true;
+                    finishStream(stream, ResponseStatus.SERVER_BUSY);
+                }
+            } else if (stream.cursor == RpcStreamHandler.END) {
+                finishStream(stream, ResponseStatus.OK);
+                suspended = false;
+            } else {
+                suspended = runStream(stream);
+            }
+            if (!suspended) {
+                ArrayListUtil.fastUnorderedRemove(suspendedStreams, i);
+                workCount++;
+            }
+        }
+        return workCount;
+    }
+
+    /**
+     * 空的 MyResponse 作为流的结束标记，走普通响应的发送路径，session 有积压时排在后面
+     */
+    private void finishStream(SessionResponseStream stream, ResponseStatus status) {
+        if (stream.aborted) {
+            log.warn("stream aborted, sessionId: {}, id: {}, methodId: {}", stream.session.sessionId(), stream.id,
+                    stream.methodId);
+        }
+        sendResponse(stream.session, stream.id, status, resBuffer, 0, 0);
+        releaseStream(stream);
+    }
+
+    private void releaseStream(SessionResponseStream stream) {
+        stream.clear();
+        freeStreams.add(stream);
+    }
+
+    /**
+     * 取回 worker pool 处理完的请求并发送响应
+     *
+     * @return 发送的响应数
+     */
+    public int doDispatchWork() {
+        return dispatcher == null ? 0 : dispatcher.poll();
+    }
+
+    private void onComplete(RpcEvent event) {
+        ServerSession session = sessions.get(event.sessionId);
+        if (session == null || !session.isActive()) {
+            log.warn("session gone before response, sessionId: {}, id: {}", event.sessionId, event.id);
+            return;
+        }
+        if (cache != null && event.status == ResponseStatus.OK) {
+            cacheResult(event);
+        }
+        if (event.status == ResponseStatus.OK) {
+            headerDecoder.wrap(event.request, 0);
+            requestDecoder.wrap(event.request, headerDecoder.encodedLength(), headerDecoder.blockLength(),
+                    headerDecoder.version());
+            int topicId = serviceRegistry.topic(requestDecoder.methodId());
+            if (topicId != ServiceRegistry.NULL_TOPIC) {
+                broadcast(session, event.id, topicId, event.response, event.responseLength);
+                return;
+            }
+        }
+        sendResponse(session, event.id, event.status, event.response, 0, event.responseLength);
+    }
+
+    /**
+     * worker pool 模式下，查缓存在 agent 线程上提交之前，写缓存在取回结果之后，请求字节仍在事件里
+     */
+    private void cacheResult(RpcEvent event) {
+        headerDecoder.wrap(event.request, 0);
+        requestDecoder.wrap(event.request, headerDecoder.encodedLength(), headerDecoder.blockLength(),
+                headerDecoder.version());
+        int methodId = requestDecoder.methodId();
+        if (serviceRegistry.isIdempotent(methodId)) {
+            int reqOffset = requestDecoder.limit() + MyRequestDecoder.reqHeaderLength();
+            int reqLength = requestDecoder.reqLength();
+            cache.put(ResponseCache.hash(methodId, event.request, reqOffset, reqLength), methodId,
+                    event.request, reqOffset, reqLength, event.response, 0, event.responseLength, nanoClock.nanoTime());
+        }
+    }
+
+    /**
+     * 发送缓存的响应，与 {@link #sendResponse} 的发送路径相同，只是把编码好的字节整段拷贝过去再改写 id
+     */
+    private void sendCachedResponse(ServerSession session, long id, int slot) {
+        DirectBuffer cached = cache.buffer();
+        int cachedOffset = cache.responseOffset(slot);
+        int length = cache.responseLength(slot);
+        if (session == batchResponseSession) {
+            cachedResponseDecoder.wrap(cached, cachedOffset + HeaderEncoder.ENCODED_LENGTH,
+                    MyResponseDecoder.BLOCK_LENGTH, MyResponseDecoder.SCHEMA_VERSION);
+            int resOffset = cachedResponseDecoder.limit() + MyResponseDecoder.resHeaderLength();
+            if (appendBatchResult(id, ResponseStatus.OK, cached, resOffset, cachedResponseDecoder.resLength())) {
+                counters.onResponsesSent(1);
+                return;
+            }
+        }
+        ExclusivePublication publication = session.publication();
+        if (flushPolicy == FlushPolicy.END_OF_POLL) {
+            if (session.batchLength() + length > publication.maxPayloadLength()) {
+                flush(session);
+            }
+            cache.copyResponse(slot, id, session.batchBuffer(), session.batchLength());
+            if (session.commitBatch(length)) {
+                batchedSessions.add(session);
+            }
+        } else if (!session.hasBacklog() && length <= publication.maxPayloadLength() && claim(publication, length)) {
+            cache.copyResponse(slot, id, bufferClaim.buffer(), bufferClaim.offset());
+            bufferClaim.commit();
+        } else {
+            cache.copyResponse(slot, id, reusedBuffer, 0);
+            send(session, reusedBuffer, length);
+        }
+        counters.onResponsesSent(1);
+    }
+
+    private void sendResponse(ServerSession session, long id, ResponseStatus status,
+                              DirectBuffer res, int resOffset, int resLength) {
+        if (session.compression() == PayloadEncoding.LZ4 && resLength >= compressionThreshold) {
+            compressBuffer.checkLimit(Lz4Codec.maxCompressedLength(resLength));
+            int compressedLength = lz4Codec.compress(res, resOffset, resLength, compressBuffer, 0);
+            if (compressedLength != Lz4Codec.NOT_COMPRESSED) {
+                sendResponse(session, id, status, PayloadEncoding.LZ4, compressBuffer, 0, compressedLength);
+                return;
+            }
+        }
+        sendResponse(session, id, status, PayloadEncoding.NONE, res, resOffset, resLength);
+    }
+
+    private void sendResponse(ServerSession session, long id, ResponseStatus status, PayloadEncoding encoding,
+                              DirectBuffer res, int resOffset, int resLength) {
+        // 合并响应的元素没有 encoding，压缩的响应单独发送
+        if (session == batchResponseSession && encoding == PayloadEncoding.NONE &&
+                appendBatchResult(id, status, res, resOffset, resLength)) {
+            counters.onResponsesSent(1);
+            return;
+        }
+        // 编码前就能算出消息长度，才能先 tryClaim 再在 log buffer 上直接编码
+        int length = HeaderEncoder.ENCODED_LENGTH + MyResponseEncoder.BLOCK_LENGTH +
+                MyResponseEncoder.resHeaderLength() + resLength;
+        ExclusivePublication publication = session.publication();
+        if (length > publication.maxMessageLength()) {
+            // 超过 Aeron 单个消息的上限，offer 会直接抛异常，大结果集应注册为流式方法
+            log.error("response too large, sessionId: {}, id: {}, length: {}, maxMessageLength: {}",
+                    session.sessionId(), id, length, publication.maxMessageLength());
+            sendResponse(session, id, ResponseStatus.HANDLER_ERROR, res, resOffset, 0);
+            return;
+        }
+
+        if (flushPolicy == FlushPolicy.END_OF_POLL) {
+            // 一个 Aeron 消息里放多个响应，攒批超过一个 frame 能承载的长度时先把已攒的发出去
+            if (session.batchLength() + length > publication.maxPayloadLength()) {
+                flush(session);
+            }
+            encodeResponse(session.batchBuffer(), session.batchLength(), id, status, encoding, res, resOffset,
+                    resLength);
+            if (session.commitBatch(length)) {
+                batchedSessions.add(session);
+            }
+        } else if (!session.hasBacklog() && length <= publication.maxPayloadLength() && claim(publication, length)) {
+            // 直接在 log buffer 上编码，省掉 reusedBuffer -> term 的拷贝
+            encodeResponse(bufferClaim.buffer(), bufferClaim.offset(), id, status, encoding, res, resOffset,
+                    resLength);
+            bufferClaim.commit();
+        } else {
+            // 超过 maxPayloadLength 的消息需要分片，tryClaim 不支持，只能 offer；背压或已有积压时进入出站队列
+            encodeResponse(reusedBuffer, 0, id, status, encoding, res, resOffset, resLength);
+            send(session, reusedBuffer, length);
+        }
+        counters.onResponsesSent(1);
+        if (log.isDebugEnabled()) {
+            log.debug("response sent, sessionId: {}, id: {}, status: {}, res: {}", session.sessionId(), id, status,
+                    encoding == PayloadEncoding.NONE ? res.getStringWithoutLengthUtf8(resOffset, resLength) :
+                            encoding + " " + resLength + " bytes");
+        }
+    }
+
+    private void encodeResponse(MutableDirectBuffer buffer, int offset, long id, ResponseStatus status,
+                                PayloadEncoding encoding, DirectBuffer res, int resOffset, int resLength) {
+        responseEncoder.wrapAndApplyHeader(buffer, offset, headerEncoder);
         responseEncoder.id(id);
-        responseEncoder.res(res);
+        responseEncoder.status(status);
+        responseEncoder.encoding(encoding);
+        responseEncoder.putRes(res, resOffset, resLength);
+    }
 
-        while (running) {
-            long streamPos = publication.offer(reusedBuffer, 0, headerEncoder.encodedLength() +
-                    responseEncoder.encodedLength());
-            if (streamPos >= 0) {
-                log.info("response sent, id: {}, res: {}", id, res);
-                break;
+    /**
+     * 把批量模式下攒下的响应按 session 发出
+     *
+     * @return 发出的消息数
+     */
+    public int flush() {
+        int size = batchedSessions.size();
+        for (int i = 0; i < size; i++) {
+            flush(batchedSessions.get(i));
+        }
+        batchedSessions.clear();
+        return size;
+    }
+
+    private void flush(ServerSession session) {
+        if (session.batchLength() > 0) {
+            send(session, session.batchBuffer(), session.batchLength());
+            session.resetBatch();
+        }
+    }
+
+    /**
+     * 发送一个完整的消息，不在 agent 线程上自旋：背压或已有积压时进入 session 的出站队列，由 doSessionWork 按序重发，
+     * client 已断开或队列已满时丢弃，client 以超时结束
+     */
+    private void send(ServerSession session, DirectBuffer buffer, int length) {
+        boolean backlogged = session.hasBacklog();
+        if (!backlogged) {
+            long result = offer(session.publication(), buffer, length);
+            if (result >= 0) {
+                return;
+            }
+            if (result != Publication.BACK_PRESSURED) {
+                // NOT_CONNECTED、CLOSED 等，client 已经不在了，session 由 image 不可用事件回收
+                drop(session, result);
+                return;
+            }
+        }
+        if (!session.enqueue(buffer, 0, length)) {
+            drop(session, Publication.BACK_PRESSURED);
+            return;
+        }
+        if (!backlogged) {
+            backloggedSessions.add(session);
+        }
+        if (overloadPolicy == OverloadPolicy.PAUSE && !session.isPaused() && session.isOverloaded()) {
+            session.paused(true);
+            pausedSessionCount++;
+            log.warn("session overloaded, stop reading requests, sessionId: {}", session.sessionId());
+        }
+    }
+
+    private void drop(ServerSession session, long result) {
+        counters.onResponseDropped();
+        if (log.isDebugEnabled()) {
+            log.debug("response dropped, sessionId: {}, result: {}", session.sessionId(), Publication.errorString(result));
+        }
+    }
+
+    /**
+     * 重发积压的响应，积压清空后恢复被暂停的 session
+     */
+    private int drainBacklog() {
+        int workCount = 0;
+        for (int i = backloggedSessions.size() - 1; i >= 0; i--) {
+            ServerSession session = backloggedSessions.get(i);
+            workCount += session.drainOutbound();
+            if (!session.hasBacklog()) {
+                ArrayListUtil.fastUnorderedRemove(backloggedSessions, i);
+                resume(session);
+            }
+        }
+        return workCount;
+    }
+
+    private void resume(ServerSession session) {
+        if (session.isPaused()) {
+            session.paused(false);
+            pausedSessionCount--;
+            // 暂停期间没有读心跳，从恢复时重新计算活跃时间
+            session.touch(nowNs);
+            log.info("session drained, resume reading requests, sessionId: {}", session.sessionId());
+        }
+    }
+
+    /**
+     * ADMIN_ACTION 是 term 轮转之类的瞬时状态，立即重试，其它失败交给调用方处理
+     */
+    private boolean claim(ExclusivePublication publication, int length) {
+        long result;
+        do {
+            result = publication.tryClaim(length, bufferClaim);
+        } while (result == Publication.ADMIN_ACTION);
+        if (result < 0) {
+            counters.onOfferFailed(result);
+            return false;
+        }
+        return true;
+    }
+
+    private long offer(ExclusivePublication publication, DirectBuffer buffer, int length) {
+        long result;
+        do {
+            result = publication.offer(buffer, 0, length);
+        } while (result == Publication.ADMIN_ACTION);
+        if (result < 0) {
+            counters.onOfferFailed(result);
+        }
+        return result;
+    }
+
+    /**
+     * 推进所有未就绪 session 的建连状态机，就绪后处理建连前缓存的请求
+     */
+    private int doPendingSessionWork() {
+        int workCount = 0;
+        long nowNs = nanoClock.nanoTime();
+        for (int i = pendingSessions.size() - 1; i >= 0; i--) {
+            ServerSession session = pendingSessions.get(i);
+            workCount += session.doWork(nowNs);
+            if (session.isActive()) {
+                ArrayListUtil.fastUnorderedRemove(pendingSessions, i);
+                log.info("outbound connected, sessionId: {}, uri: {}, sessions: {}",
+                        session.sessionId(), session.channel(), sessions.size());
+                diagnostics.requestSnapshot("server outbound connected");
+                replayPending(session);
+            } else if (session.isClosed()) {
+                ArrayListUtil.fastUnorderedRemove(pendingSessions, i);
+                closeSession(session.sessionId());
+            }
+        }
+        return workCount;
+    }
+
+    private void replayPending(ServerSession session) {
+        DirectBuffer pendingRequests = session.pendingRequests();
+        int limit = session.pendingRequestsLength();
+        int position = 0;
+        while (position < limit) {
+            int length = pendingRequests.getInt(position);
+            onFragment(pendingRequests, position + SIZE_OF_INT, length, session.sessionId());
+            position += SIZE_OF_INT + length;
+        }
+        LongArrayList rejectedIds = session.rejectedIds();
+        for (int i = 0, size = rejectedIds.size(); i < size; i++) {
+            sendResponse(session, rejectedIds.getLong(i), ResponseStatus.SESSION_NOT_READY, resBuffer, 0, 0);
+        }
+        session.clearPending();
+    }
+
+    private void closeSession(int sessionId) {
+        ServerSession session = sessions.remove(sessionId);
+        fragmentAssembler.freeSessionBuffer(sessionId);
+        if (session != null) {
+            pushPublisher.unsubscribe(sessionId);
+            pendingSessions.remove(session);
+            batchedSessions.remove(session);
+            backloggedSessions.remove(session);
+            resume(session);
+            quietClose(session);
+            counters.sessions(sessions.size());
+            log.info("session closed, sessionId: {}, uri: {}, sessions: {}", sessionId, session.channel(), sessions.size());
+        }
+    }
+
+    /**
+     * 一个流式请求的输出，把 handler 写出的内容按 frame 大小切块，每块在 log buffer 上直接编码为一个 MyResponseChunk，
+     * 单块不超过 maxPayloadLength，不需要分片，也不需要 client 重组。
+     * <p>
+     * 不在 agent 线程上等待：publication 背压或 session 有积压的响应时，没写出的内容存进 pending，流挂起，
+     * 由 {@link #resumeStreams} 在之后的 duty cycle 中先发出 pending，再以保存的请求和 cursor 继续调用 handler。
+     * 超过 {@link Constants#STREAM_STALL_TIMEOUT_NS} 没有进展或 client 已断开时放弃整个流。对象池化复用
+     */
+    private final class SessionResponseStream implements ResponseStream {
+        // 请求的拷贝，挂起后原来的 buffer 已经被覆盖
+        private final ExpandableDirectByteBuffer requestBuffer = new ExpandableDirectByteBuffer(256);
+        private final MyRequestDecoder request = new MyRequestDecoder();
+        // 背压时没写出的内容，按序发出
+        private final ExpandableDirectByteBuffer pending = new ExpandableDirectByteBuffer(256);
+        private ServerSession session;
+        private long id;
+        private int methodId;
+        private RpcStreamHandler handler;
+        private int blockLength;
+        private int version;
+        private long cursor;
+        private int pendingOffset;
+        private int pendingLength;
+        private long lastProgressNs;
+        private boolean aborted;
+
+        /**
+         * @param decoder 刚 wrap 好、还没有读过变长字段的请求
+         */
+        void reset(ServerSession session, long id, int methodId, RpcStreamHandler handler, MyRequestDecoder decoder) {
+            this.session = session;
+            this.id = id;
+            this.methodId = methodId;
+            this.handler = handler;
+            int offset = decoder.offset();
+            int length = decoder.limit() + MyRequestDecoder.reqHeaderLength() + decoder.reqLength() - offset;
+            requestBuffer.putBytes(0, decoder.buffer(), offset, length);
+            this.blockLength = decoder.actingBlockLength();
+            this.version = decoder.actingVersion();
+            this.cursor = 0;
+            this.pendingOffset = 0;
+            this.pendingLength = 0;
+            this.lastProgressNs = nowNs;
+            this.aborted = false;
+        }
+
+        void clear() {
+            session = null;
+            handler = null;
+        }
+
+        /**
+         * handler 读取变长字段会移动 limit，每次调用前重新 wrap
+         */
+        MyRequestDecoder request() {
+            return request.wrap(requestBuffer, 0, blockLength, version);
+        }
+
+        @Override
+        public int maxChunkLength() {
+            return session.publication().maxPayloadLength() - CHUNK_OVERHEAD;
+        }
+
+        /**
+         * 背压时 {@link #write} 把没写出的部分拷进 pending，所以这块 buffer 可以在流之间共用
+         */
+        @Override
+        public MutableDirectBuffer chunkBuffer() {
+            int maxChunkLength = maxChunkLength();
+            streamChunkBuffer.checkLimit(maxChunkLength);
+            streamChunk.wrap(streamChunkBuffer, 0, maxChunkLength);
+            return streamChunk;
+        }
+
+        @Override
+        public boolean write(DirectBuffer buffer, int offset, int length) {
+            if (aborted) {
+                return false;
+            }
+            if (pendingLength > 0) {
+                // 本次调用中已经挂起，之后写出的内容接在后面
+                append(buffer, offset, length);
+                return false;
+            }
+            int maxChunkLength = maxChunkLength();
+            int position = offset;
+            int limit = offset + length;
+            while (position < limit) {
+                int chunkLength = Math.min(maxChunkLength, limit - position);
+                if (!claimChunk(chunkLength)) {
+                    if (!aborted) {
+                        append(buffer, position, limit - position);
+                    }
+                    return false;
+                }
+                putChunk(buffer, position, chunkLength);
+                position += chunkLength;
+            }
+            return true;
+        }
+
+        /**
+         * @return pending 已全部发出时返回 true
+         */
+        boolean drainPending() {
+            int maxChunkLength = maxChunkLength();
+            while (pendingOffset < pendingLength) {
+                int chunkLength = Math.min(maxChunkLength, pendingLength - pendingOffset);
+                if (!claimChunk(chunkLength)) {
+                    return false;
+                }
+                putChunk(pending, pendingOffset, chunkLength);
+                pendingOffset += chunkLength;
             }
-            idleStrategy.idle();
+            pendingOffset = 0;
+            pendingLength = 0;
+            return true;
+        }
+
+        boolean hasPending() {
+            return pendingOffset < pendingLength;
+        }
+
+        boolean isStalled() {
+            return aborted || nowNs - lastProgressNs > Constants.STREAM_STALL_TIMEOUT_NS;
+        }
+
+        private void append(DirectBuffer buffer, int offset, int length) {
+            pending.putBytes(pendingLength, buffer, offset, length);
+            pendingLength += length;
+        }
+
+        /**
+         * session 有积压的响应时不写，分块排在它们后面；client 已断开时放弃整个流
+         */
+        private boolean claimChunk(int chunkLength) {
+            if (session.hasBacklog()) {
+                return false;
+            }
+            long result;
+            do {
+                result = session.publication().tryClaim(CHUNK_OVERHEAD + chunkLength, bufferClaim);
+            } while (result == Publication.ADMIN_ACTION);
+            if (result >= 0) {
+                lastProgressNs = nowNs;
+                return true;
+            }
+            counters.onOfferFailed(result);
+            if (result != Publication.BACK_PRESSURED) {
+                aborted = true;
+            }
+            return false;
+        }
+
+        private void putChunk(DirectBuffer buffer, int offset, int length) {
+            chunkEncoder.wrapAndApplyHeader(bufferClaim.buffer(), bufferClaim.offset(), headerEncoder);
+            chunkEncoder.id(id);
+            chunkEncoder.putData(buffer, offset, length);
+            bufferClaim.commit();
         }
-        idleStrategy.reset();
     }
 
     public void onClose() {
-        running = false;
-        quietClose(publication);
+        quietClose(dispatcher);
+        sessions.values().forEach(ServerSession::close);
+        sessions.clear();
+        quietClose(pushPublisher);
+        pendingSessions.clear();
+        batchedSessions.clear();
+        backloggedSessions.clear();
+        suspendedStreams.clear();
+        pausedSessionCount = 0;
     }
 }
@@ -1,11 +1,18 @@
 package com.cdf.aeron.rpc.server;
 
 import com.cdf.aeron.rpc.Constants;
+import com.cdf.aeron.rpc.RpcConfig;
+import com.cdf.aeron.rpc.metrics.ServerCounters;
+import com.cdf.aeron.rpc.service.ServiceRegistry;
 import io.aeron.Aeron;
+import io.aeron.Image;
 import io.aeron.Subscription;
 import lombok.extern.slf4j.Slf4j;
+import org.agrona.DirectBuffer;
 import org.agrona.concurrent.Agent;
 
+import static org.agrona.CloseHelper.quietClose;
+
 /**
  * 模拟 RPC server 不断处理入站字节（RPC Client 发的请求），然后发送响应
  *
@@ -16,33 +23,107 @@ import org.agrona.concurrent.Agent;
 public class ServerAgent implements Agent {
     private final Aeron aeron;
     private final ServerAdapter serverAdapter;
+    private final ServerCounters counters;
+    private final RpcConfig config;
+    private final int streamId;
+    private final int fragmentLimit;
 
     private Subscription subscription;
+    // pollUnpaused 的起始 image，每个 duty cycle 后移一个，与 Subscription.poll 一样轮转
+    private int roundRobinIndex;
+
+    public ServerAgent(Aeron aeron, ServiceRegistry serviceRegistry) {
+        this(aeron, serviceRegistry, RpcConfig.load());
+    }
+
+    private ServerAgent(Aeron aeron, ServiceRegistry serviceRegistry, RpcConfig config) {
+        this(aeron, serviceRegistry, config, Constants.RPC_STREAM, config.serverFragmentLimit(),
+                config.serverFlushPolicy(), config.workerPoolConfig());
+    }
 
-    public ServerAgent(Aeron aeron) {
+    /**
+     * @param serviceRegistry  methodId -> handler 的注册表，分片部署在多个线程上时，handler 需要是线程安全的
+     * @param config           传输方式、channel、idle strategy 等运行时配置，响应走 client 在 MyConnect 中声明的 channel
+     * @param streamId         监听的 stream，分片部署时每个分片一个 stream
+     * @param fragmentLimit    每个 duty cycle 最多处理的 fragment 数
+     * @param flushPolicy      响应的发送时机
+     * @param workerPoolConfig 为 null 时 handler 在 agent 线程上直接执行，否则交给 Disruptor worker pool
+     */
+    public ServerAgent(Aeron aeron, ServiceRegistry serviceRegistry, RpcConfig config, int streamId,
+                       int fragmentLimit, FlushPolicy flushPolicy, WorkerPoolConfig workerPoolConfig) {
         this.aeron = aeron;
-        this.serverAdapter = new ServerAdapter(aeron);
+        this.config = config;
+        this.streamId = streamId;
+        this.counters = new ServerCounters(aeron, streamId);
+        this.serverAdapter = new ServerAdapter(aeron, config, serviceRegistry, flushPolicy, workerPoolConfig,
+                counters);
+        this.fragmentLimit = fragmentLimit;
     }
 
     @Override
     public void onStart() {
-        // 增加一个 subscription，也就是 inbound channel，监听 2000 端口 UDP 协议，当有 Image 可用时获取一个回调
-        subscription = aeron.addSubscription(Constants.SERVER_INBOUND_URI, Constants.RPC_STREAM);
-        log.info("inbound connected, uri: {}", subscription.channel());
+        // 增加一个 subscription，也就是 inbound channel，UDP 模式监听 2000 端口，IPC 模式监听 aeron:ipc，当有 Image 可用时获取一个回调，
+        // 每个 client 的请求 publication 对应一个 Image，Image 不可用时回收对应的 session
+        subscription = aeron.addSubscription(config.transport().serverInboundChannel(config), streamId,
+                serverAdapter::onAvailableImage, serverAdapter::onUnavailableImage);
+        log.info("inbound connected, uri: {}, streamId: {}", subscription.channel(), streamId);
     }
 
     @Override
     public int doWork() {
-        return subscription.poll(serverAdapter, 1);
+        int workCount = serverAdapter.doSessionWork();
+        if (serverAdapter.pausedSessionCount() == 0) {
+            workCount += subscription.poll(serverAdapter.fragmentHandler(), fragmentLimit);
+        } else {
+            workCount += pollUnpaused();
+        }
+        workCount += serverAdapter.doDispatchWork();
+        // 批量模式下，把本次 poll 攒下的响应按 session 一次性发出
+        serverAdapter.flush();
+        return workCount;
+    }
+
+    /**
+     * 有 session 因过载被暂停时逐个 image poll，跳过被暂停的 image，其 client 会因为 MediaDriver 的流控而背压。
+     * 起始的 image 每次轮转，排在前面的繁忙 client 不会每次都用完 fragmentLimit 而饿死后面的 client
+     */
+    private int pollUnpaused() {
+        int count = subscription.imageCount();
+        if (count == 0) {
+            return 0;
+        }
+        int startingIndex = roundRobinIndex++;
+        if (startingIndex >= count) {
+            roundRobinIndex = startingIndex = 0;
+        }
+        int workCount = 0;
+        for (int i = 0; i < count && workCount < fragmentLimit; i++) {
+            int index = startingIndex + i;
+            Image image = subscription.imageAtIndex(index < count ? index : index - count);
+            if (!serverAdapter.isPaused(image.sessionId())) {
+                workCount += image.poll(serverAdapter.fragmentHandler(), fragmentLimit - workCount);
+            }
+        }
+        return workCount;
+    }
+
+    /**
+     * 推送一条消息给 topic 的所有订阅者，只能在本 agent 的线程上调用，例如组合在同一个 CompositeAgent 里的业务 agent
+     *
+     * @return 已发出或者 topic 还没有订阅者时返回 true，背压时返回 false
+     */
+    public boolean push(int topicId, DirectBuffer data, int offset, int length) {
+        return serverAdapter.push(topicId, data, offset, length);
     }
 
     @Override
     public void onClose() {
         serverAdapter.onClose();
+        quietClose(counters);
     }
 
     @Override
     public String roleName() {
-        return "rpc-server";
+        return "rpc-server-" + streamId;
     }
-}
\ No newline at end of file
+}
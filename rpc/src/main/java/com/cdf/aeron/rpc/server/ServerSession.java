@@ -0,0 +1,311 @@
+package com.cdf.aeron.rpc.server;
+
+import com.cdf.aeron.rpc.sbe.PayloadEncoding;
+import io.aeron.Aeron;
+import io.aeron.ExclusivePublication;
+import io.aeron.Publication;
+import io.aeron.exceptions.RegistrationException;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.DirectBuffer;
+import org.agrona.ExpandableArrayBuffer;
+import org.agrona.ExpandableDirectByteBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.LongArrayList;
+import org.agrona.concurrent.ControlledMessageHandler;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.OneToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBufferDescriptor;
+
+import java.nio.ByteBuffer;
+
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.CloseHelper.quietClose;
+
+/**
+ * 一个 client 对应一个 session，以 client 请求 publication 的 sessionId（即 server 端 Image 的 sessionId）为标识，
+ * 持有发往该 client 的响应 publication。
+ * <p>
+ * 响应 publication 的建立是异步的状态机：{@link State#AWAITING_PUBLICATION} -> {@link State#AWAITING_CONNECT}
+ * -> {@link State#ACTIVE}，由 agent 线程每个 duty cycle 推进，不会阻塞其它 client 的请求处理。
+ * 建连完成前收到的请求先缓存起来，缓存满了的只记录 id，建连后统一以 SESSION_NOT_READY 拒绝。
+ * <p>
+ * 响应 publication 背压时，消息进入有界的出站队列，之后按序重发，见 {@link OverloadPolicy}。
+ * <p>
+ * client 空闲时会发心跳，超过 sessionLivenessTimeout 没有任何消息的 session 由 server 回收
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@Slf4j
+public class ServerSession implements AutoCloseable {
+    private static final int OUTBOUND_MSG_TYPE_ID = 1;
+
+    private final Aeron aeron;
+    private final int sessionId;
+    private final String channel;
+    private final int streamId;
+    private final long registrationId;
+    private final long connectDeadlineNs;
+    private final int maxPendingRequests;
+    // 建连前收到的请求，格式为 [length: int][SBE message]...
+    private final ExpandableArrayBuffer pendingRequests;
+    private final LongArrayList rejectedIds;
+    // 批量模式下，尚未发出的响应
+    private final ExpandableDirectByteBuffer batchBuffer;
+    // 背压时尚未发出的完整消息，单线程读写，只是借用 ring buffer 的有界队列和 controlledRead
+    private final OneToOneRingBuffer outbound;
+    private final ControlledMessageHandler drainHandler;
+
+    private State state;
+    private ExclusivePublication publication;
+    private int pendingRequestsLength;
+    private int pendingRequestCount;
+    private int batchLength;
+    private boolean paused;
+    private int drainedCount;
+    private long lastActivityNs;
+    // 发给该 client 的响应的编码，MyConnect 中协商
+    private PayloadEncoding compression = PayloadEncoding.NONE;
+
+    /**
+     * @param outboundQueueLength 出站队列的字节数，必须是 2 的幂
+     */
+    public ServerSession(Aeron aeron, int sessionId, String channel, int streamId, long connectDeadlineNs,
+                         int maxPendingRequests, int outboundQueueLength) {
+        this.aeron = aeron;
+        this.sessionId = sessionId;
+        this.channel = channel;
+        this.streamId = streamId;
+        this.connectDeadlineNs = connectDeadlineNs;
+        this.maxPendingRequests = maxPendingRequests;
+        this.pendingRequests = new ExpandableArrayBuffer(512);
+        this.rejectedIds = new LongArrayList();
+        this.batchBuffer = new ExpandableDirectByteBuffer(512);
+        this.outbound = new OneToOneRingBuffer(new UnsafeBuffer(
+                ByteBuffer.allocateDirect(outboundQueueLength + RingBufferDescriptor.TRAILER_LENGTH)));
+        this.drainHandler = this::onDrain;
+        // 单线程 pub，异步创建，不等待 MediaDriver 应答
+        this.registrationId = aeron.asyncAddExclusivePublication(channel, streamId);
+        this.state = State.AWAITING_PUBLICATION;
+    }
+
+    /**
+     * 推进建连状态机
+     *
+     * @return 状态发生变化时返回 1，否则返回 0
+     */
+    public int doWork(long nowNs) {
+        switch (state) {
+            case AWAITING_PUBLICATION -> {
+                try {
+                    publication = aeron.getExclusivePublication(registrationId);
+                } catch (RegistrationException e) {
+                    log.error("failed to add publication, sessionId: {}, uri: {}", sessionId, channel, e);
+                    state = State.CLOSED;
+                    return 1;
+                }
+                if (publication != null) {
+                    state = State.AWAITING_CONNECT;
+                    return 1;
+                }
+            }
+            // 等待 Client 创建 subscription 连上 server
+            case AWAITING_CONNECT -> {
+                if (publication.isConnected()) {
+                    state = State.ACTIVE;
+                    return 1;
+                }
+            }
+            default -> {
+                return 0;
+            }
+        }
+        if (nowNs - connectDeadlineNs >= 0) {
+            log.warn("connect timeout, sessionId: {}, uri: {}, state: {}", sessionId, channel, state);
+            close();
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * 缓存建连前收到的请求
+     *
+     * @return 缓存已满时返回 false，调用方应当通过 {@link #reject} 记录拒绝
+     */
+    public boolean bufferRequest(DirectBuffer buffer, int offset, int length) {
+        if (pendingRequestCount >= maxPendingRequests) {
+            return false;
+        }
+        pendingRequests.putInt(pendingRequestsLength, length);
+        pendingRequests.putBytes(pendingRequestsLength + SIZE_OF_INT, buffer, offset, length);
+        pendingRequestsLength += SIZE_OF_INT + length;
+        pendingRequestCount++;
+        return true;
+    }
+
+    public void reject(long id) {
+        rejectedIds.addLong(id);
+    }
+
+    /**
+     * 建连前缓存的请求，格式为 [length: int][SBE message]...
+     */
+    public DirectBuffer pendingRequests() {
+        return pendingRequests;
+    }
+
+    public int pendingRequestsLength() {
+        return pendingRequestsLength;
+    }
+
+    public LongArrayList rejectedIds() {
+        return rejectedIds;
+    }
+
+    /**
+     * 缓存的请求和拒绝记录都处理完之后调用
+     */
+    public void clearPending() {
+        pendingRequestsLength = 0;
+        pendingRequestCount = 0;
+        rejectedIds.clear();
+    }
+
+    /**
+     * 响应已直接编码到 {@link #batchBuffer()} 的 {@link #batchLength()} 位置，提交该段长度
+     *
+     * @return 提交前批量 buffer 是否为空，为空说明该 session 需要登记到待 flush 列表
+     */
+    public boolean commitBatch(int length) {
+        boolean wasEmpty = batchLength == 0;
+        batchLength += length;
+        return wasEmpty;
+    }
+
+    public MutableDirectBuffer batchBuffer() {
+        return batchBuffer;
+    }
+
+    public int batchLength() {
+        return batchLength;
+    }
+
+    public void resetBatch() {
+        batchLength = 0;
+    }
+
+    /**
+     * 背压时把一个完整的消息放入出站队列
+     *
+     * @return 队列已满或消息超过队列能容纳的单条上限时返回 false
+     */
+    public boolean enqueue(DirectBuffer buffer, int offset, int length) {
+        return length <= outbound.maxMsgLength() && outbound.write(OUTBOUND_MSG_TYPE_ID, buffer, offset, length);
+    }
+
+    /**
+     * 按序重发积压的消息，遇到背压就停下，剩下的留到下一个 duty cycle
+     *
+     * @return 发出的消息数
+     */
+    public int drainOutbound() {
+        drainedCount = 0;
+        outbound.controlledRead(drainHandler);
+        return drainedCount;
+    }
+
+    private ControlledMessageHandler.Action onDrain(int msgTypeId, MutableDirectBuffer buffer, int index, int length) {
+        long result;
+        do {
+            result = publication.offer(buffer, index, length);
+        } while (result == Publication.ADMIN_ACTION);
+        if (result < 0) {
+            return ControlledMessageHandler.Action.ABORT;
+        }
+        drainedCount++;
+        return ControlledMessageHandler.Action.COMMIT;
+    }
+
+    /**
+     * 有积压时，新的响应也必须进入队列，保证同一个 session 的发送顺序
+     */
+    public boolean hasBacklog() {
+        return outbound.size() > 0;
+    }
+
+    /**
+     * 积压超过队列的一半视为过载
+     */
+    public boolean isOverloaded() {
+        return outbound.size() > outbound.capacity() / 2;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public void paused(boolean paused) {
+        this.paused = paused;
+    }
+
+    /**
+     * 收到该 client 的任何消息（connect、请求、心跳）时调用
+     */
+    public void touch(long nowNs) {
+        lastActivityNs = nowNs;
+    }
+
+    public long lastActivityNs() {
+        return lastActivityNs;
+    }
+
+    public void compression(PayloadEncoding compression) {
+        this.compression = compression;
+    }
+
+    public PayloadEncoding compression() {
+        return compression;
+    }
+
+    public boolean isActive() {
+        return state == State.ACTIVE;
+    }
+
+    public boolean isClosed() {
+        return state == State.CLOSED;
+    }
+
+    public int sessionId() {
+        return sessionId;
+    }
+
+    public String channel() {
+        return channel;
+    }
+
+    public int streamId() {
+        return streamId;
+    }
+
+    public ExclusivePublication publication() {
+        return publication;
+    }
+
+    @Override
+    public void close() {
+        if (state == State.AWAITING_PUBLICATION) {
+            // publication 还没拿到，异步移除，避免泄漏
+            aeron.asyncRemovePublication(registrationId);
+        }
+        quietClose(publication);
+        state = State.CLOSED;
+    }
+
+    enum State {
+        AWAITING_PUBLICATION,
+        AWAITING_CONNECT,
+        ACTIVE,
+        CLOSED
+    }
+}
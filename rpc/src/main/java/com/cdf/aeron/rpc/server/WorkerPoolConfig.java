@@ -0,0 +1,46 @@
+package com.cdf.aeron.rpc.server;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
+
+/**
+ * worker pool 执行模式的配置
+ *
+ * @param workerCount  worker 线程数
+ * @param ringSize     ring 的大小，必须是 2 的幂
+ * @param waitStrategy worker 等待新请求的策略，在延迟和 CPU 占用之间取舍
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public record WorkerPoolConfig(int workerCount, int ringSize, WaitStrategy waitStrategy) {
+
+    public WorkerPoolConfig {
+        if (workerCount <= 0 || Integer.bitCount(ringSize) != 1) {
+            throw new IllegalArgumentException("invalid worker pool: workerCount=" + workerCount +
+                    " ringSize=" + ringSize);
+        }
+    }
+
+    /**
+     * @param name {@code blocking}（省 CPU，唤醒有系统调用的开销）、{@code sleeping}、{@code yielding}、
+     *             {@code busy-spin}（延迟最低，每个 worker 占满一个核）或 WaitStrategy 的全限定类名
+     */
+    public static WaitStrategy waitStrategy(String name) {
+        return switch (name) {
+            case "blocking" -> new BlockingWaitStrategy();
+            case "sleeping" -> new SleepingWaitStrategy();
+            case "yielding" -> new YieldingWaitStrategy();
+            case "busy-spin" -> new BusySpinWaitStrategy();
+            default -> {
+                try {
+                    yield (WaitStrategy) Class.forName(name).getConstructor().newInstance();
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    throw new IllegalArgumentException("invalid wait strategy: " + name, e);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,161 @@
+package com.cdf.aeron.rpc.server;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.cdf.aeron.rpc.sbe.HeaderDecoder;
+import com.cdf.aeron.rpc.sbe.MyRequestDecoder;
+import com.cdf.aeron.rpc.sbe.ResponseStatus;
+import com.cdf.aeron.rpc.service.RpcHandler;
+import com.cdf.aeron.rpc.service.ServiceRegistry;
+import com.lmax.disruptor.EventPoller;
+import com.lmax.disruptor.ExceptionHandler;
+import com.lmax.disruptor.InsufficientCapacityException;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.WorkHandler;
+import com.lmax.disruptor.WorkerPool;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.DirectBuffer;
+import org.agrona.LangUtil;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * 基于 Disruptor 的 worker pool，把耗时的 handler 从 server agent 线程上挪走：
+ * <ol>
+ *     <li>agent 线程（唯一的生产者）把请求字节拷贝到预分配的 ring 中</li>
+ *     <li>N 个 worker 线程竞争消费，执行 handler，把响应写回同一个事件</li>
+ *     <li>agent 线程通过 {@link EventPoller} 取回处理完的事件，经由 session 的 publication 串行发出响应</li>
+ * </ol>
+ * publication 始终只在 agent 线程上使用，所以仍然可以用 ExclusivePublication
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@Slf4j
+public class WorkerPoolDispatcher implements AutoCloseable {
+    private final RingBuffer<RpcEvent> ringBuffer;
+    private final WorkerPool<RpcEvent> workerPool;
+    private final EventPoller<RpcEvent> poller;
+    private final EventPoller.Handler<RpcEvent> pollHandler;
+    private final ExecutorService executor;
+
+    private int completed;
+
+    /**
+     * @param onComplete 在 agent 线程上回调处理完的事件
+     */
+    WorkerPoolDispatcher(ServiceRegistry serviceRegistry, WorkerPoolConfig config, Consumer<RpcEvent> onComplete) {
+        this.ringBuffer = RingBuffer.createSingleProducer(RpcEvent::new, config.ringSize(), config.waitStrategy());
+        Worker[] workers = new Worker[config.workerCount()];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(serviceRegistry);
+        }
+        this.workerPool = new WorkerPool<>(ringBuffer, ringBuffer.newBarrier(), new LoggingExceptionHandler(), workers);
+        // 响应阶段只能读取 worker 都处理完的事件，生产者又要等响应阶段处理完才能覆盖
+        this.poller = ringBuffer.newPoller(workerPool.getWorkerSequences());
+        ringBuffer.addGatingSequences(poller.getSequence());
+        this.pollHandler = (event, sequence, endOfBatch) -> {
+            onComplete.accept(event);
+            completed++;
+            return true;
+        };
+        this.executor = Executors.newFixedThreadPool(config.workerCount(),
+                ThreadFactoryBuilder.create().setDaemon(true).setNamePrefix("RPC-Worker-").build());
+        workerPool.start(executor);
+        log.info("worker pool started, workers: {}, ringSize: {}, waitStrategy: {}",
+                config.workerCount(), config.ringSize(), config.waitStrategy().getClass().getSimpleName());
+    }
+
+    /**
+     * 提交一个请求，不阻塞
+     *
+     * @return ring 已满时返回 false
+     */
+    public boolean submit(int sessionId, DirectBuffer buffer, int offset, int length) {
+        long sequence;
+        try {
+            sequence = ringBuffer.tryNext();
+        } catch (InsufficientCapacityException e) {
+            return false;
+        }
+        RpcEvent event = ringBuffer.get(sequence);
+        event.sessionId = sessionId;
+        event.request.putBytes(0, buffer, offset, length);
+        event.requestLength = length;
+        ringBuffer.publish(sequence);
+        return true;
+    }
+
+    /**
+     * 取回所有已处理完的事件
+     *
+     * @return 取回的事件数
+     */
+    public int poll() {
+        completed = 0;
+        try {
+            poller.poll(pollHandler);
+        } catch (Exception e) {
+            LangUtil.rethrowUnchecked(e);
+        }
+        return completed;
+    }
+
+    @Override
+    public void close() {
+        workerPool.halt();
+        executor.shutdownNow();
+    }
+
+    private static final class Worker implements WorkHandler<RpcEvent> {
+        // decoder 带状态，每个 worker 一份
+        private final HeaderDecoder headerDecoder = new HeaderDecoder();
+        private final MyRequestDecoder requestDecoder = new MyRequestDecoder();
+        private final ServiceRegistry serviceRegistry;
+
+        private Worker(ServiceRegistry serviceRegistry) {
+            this.serviceRegistry = serviceRegistry;
+        }
+
+        @Override
+        public void onEvent(RpcEvent event) {
+            headerDecoder.wrap(event.request, 0);
+            requestDecoder.wrap(event.request, headerDecoder.encodedLength(), headerDecoder.blockLength(),
+                    headerDecoder.version());
+            event.id = requestDecoder.id();
+            event.responseLength = 0;
+            int methodId = requestDecoder.methodId();
+            RpcHandler handler = serviceRegistry.handler(methodId);
+            if (handler == null) {
+                event.status = ResponseStatus.UNKNOWN_METHOD;
+                return;
+            }
+            try {
+                event.responseLength = handler.onRequest(requestDecoder, event.response);
+                event.status = ResponseStatus.OK;
+            } catch (Exception e) {
+                log.error("handler error, sessionId: {}, id: {}, methodId: {}", event.sessionId, event.id, methodId, e);
+                event.responseLength = 0;
+                event.status = ResponseStatus.HANDLER_ERROR;
+            }
+        }
+    }
+
+    private static final class LoggingExceptionHandler implements ExceptionHandler<RpcEvent> {
+        @Override
+        public void handleEventException(Throwable ex, long sequence, RpcEvent event) {
+            log.error("worker error, sequence: {}", sequence, ex);
+        }
+
+        @Override
+        public void handleOnStartException(Throwable ex) {
+            log.error("worker start error", ex);
+        }
+
+        @Override
+        public void handleOnShutdownException(Throwable ex) {
+            log.error("worker shutdown error", ex);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.cdf.aeron.rpc.service;
+
+import com.cdf.aeron.rpc.sbe.MyRequestDecoder;
+import org.agrona.MutableDirectBuffer;
+
+/**
+ * 原样返回请求内容
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public class EchoHandler implements RpcHandler {
+
+    @Override
+    public int onRequest(MyRequestDecoder request, MutableDirectBuffer response) {
+        return request.getReq(response, 0, request.reqLength());
+    }
+}
@@ -0,0 +1,30 @@
+package com.cdf.aeron.rpc.service;
+
+/**
+ * 内置方法的 methodId
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public class Methods {
+    /**
+     * 返回 "server time &lt;millis&gt;"
+     */
+    public static final int SERVER_TIME = 0;
+    /**
+     * 原样返回请求内容
+     */
+    public static final int ECHO = 1;
+    /**
+     * 流式方法，请求为 ASCII 整数 n，分块返回 0 到 n - 1，每行一个
+     */
+    public static final int RANGE = 2;
+    /**
+     * 广播方法，把请求内容推送给 {@link #BROADCAST_TOPIC} 的所有订阅者，调用方收到一个内容为空的响应
+     */
+    public static final int BROADCAST = 3;
+    public static final int BROADCAST_TOPIC = 1;
+
+    private Methods() {
+    }
+}
@@ -0,0 +1,39 @@
+package com.cdf.aeron.rpc.service;
+
+import com.cdf.aeron.rpc.sbe.MyRequestDecoder;
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+/**
+ * 流式方法示例，请求内容为 ASCII 的整数 n，按行返回 0 到 n - 1，模拟大结果集，cursor 即下一行的数字
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public class RangeHandler implements RpcStreamHandler {
+    // long 的 ASCII 最长 20 字节，加上换行
+    private static final int MAX_LINE_LENGTH = 21;
+
+    @Override
+    public long onRequest(MyRequestDecoder request, long cursor, ResponseStream stream) {
+        DirectBuffer req = request.buffer();
+        long count = req.parseLongAscii(request.limit() + MyRequestDecoder.reqHeaderLength(), request.reqLength());
+        MutableDirectBuffer chunk = stream.chunkBuffer();
+        int position = 0;
+        for (long i = cursor; i < count; i++) {
+            if (position + MAX_LINE_LENGTH > chunk.capacity()) {
+                if (!stream.write(chunk, 0, position)) {
+                    // 已写入 chunk 的行由 stream 保存并稍后发出，下次从第 i 行继续
+                    return i;
+                }
+                position = 0;
+            }
+            position += chunk.putLongAscii(position, i);
+            chunk.putByte(position++, (byte) '\n');
+        }
+        if (position > 0) {
+            stream.write(chunk, 0, position);
+        }
+        return END;
+    }
+}
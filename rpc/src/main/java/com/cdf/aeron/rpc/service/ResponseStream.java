@@ -0,0 +1,33 @@
+package com.cdf.aeron.rpc.service;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+/**
+ * 流式响应的输出，{@link RpcStreamHandler} 通过它把响应分块写出，每块编码为一个 MyResponseChunk
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public interface ResponseStream {
+
+    /**
+     * @return 单个分块能承载的最大字节数，按这个长度写出时每块正好一个 Aeron frame，不会被再次切分
+     */
+    int maxChunkLength();
+
+    /**
+     * @return 长度为 {@link #maxChunkLength()} 的可复用 buffer，供 handler 拼出一块内容后交给 {@link #write}，
+     * 不用每次调用都分配。由 server agent 持有，所有流共用，仅在本次调用期间有效，调用之间内容不保留
+     */
+    MutableDirectBuffer chunkBuffer();
+
+    /**
+     * 写出一段响应内容，超过 {@link #maxChunkLength()} 时切成多个分块，不会阻塞。返回后 buffer 即可复用
+     *
+     * @return 全部写出时返回 true；publication 背压、或者该 session 还有积压的响应时返回 false，
+     * 此时没写出的部分已由 stream 保存，之后按序发出，handler 应停止写出并返回当前的 cursor。
+     * client 持续跟不上或已断开时同样返回 false，流被放弃，client 收到 SERVER_BUSY
+     */
+    boolean write(DirectBuffer buffer, int offset, int length);
+}
@@ -0,0 +1,23 @@
+package com.cdf.aeron.rpc.service;
+
+import com.cdf.aeron.rpc.sbe.MyRequestDecoder;
+import org.agrona.MutableDirectBuffer;
+
+/**
+ * RPC 方法的处理逻辑，按 methodId 注册到 {@link ServiceRegistry}
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@FunctionalInterface
+public interface RpcHandler {
+
+    /**
+     * 处理一个请求，在 server agent 线程上执行
+     *
+     * @param request  已 wrap 好的请求 flyweight，定长字段已读过，变长字段 req 尚未读取且只能读一次，仅在调用期间有效
+     * @param response 响应内容写入的 buffer，从 0 开始写
+     * @return 写入 response 的字节数
+     */
+    int onRequest(MyRequestDecoder request, MutableDirectBuffer response);
+}
@@ -0,0 +1,32 @@
+package com.cdf.aeron.rpc.service;
+
+import com.cdf.aeron.rpc.sbe.MyRequestDecoder;
+
+/**
+ * 流式 RPC 方法的处理逻辑，用于 MB 级别的大结果集：响应分块写出，不需要在内存中拼出完整的响应，
+ * client 通过 {@link com.cdf.aeron.rpc.client.RpcCallback#onChunk} 逐块收到，最后以一个空的 OK 响应结束。
+ * <p>
+ * 始终在 server agent 线程上执行（即使配置了 worker pool，因为只有 agent 线程能写响应 publication）。
+ * 写出不会阻塞 agent 线程：publication 背压时 {@link ResponseStream#write} 返回 false，handler 返回当前进度（cursor）后，
+ * server 在之后的 duty cycle 中 publication 有空间时，以同一个请求和该 cursor 再次调用，直到返回 {@link #END}
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+@FunctionalInterface
+public interface RpcStreamHandler {
+    /**
+     * 表示流已全部写出
+     */
+    long END = -1L;
+
+    /**
+     * 从 cursor 处继续写出响应，抛出异常时已写出的分块不会撤回，client 收到 HANDLER_ERROR 作为结束
+     *
+     * @param request 已 wrap 好的请求 flyweight，同 {@link RpcHandler#onRequest}，每次调用都是同一个请求的内容
+     * @param cursor  第一次调用为 0，之后为上一次调用的返回值，含义由 handler 自己决定（如下一行的行号）
+     * @param stream  响应的输出，仅在调用期间有效
+     * @return 全部写出时返回 {@link #END}，否则返回下次调用时继续的位置
+     */
+    long onRequest(MyRequestDecoder request, long cursor, ResponseStream stream);
+}
@@ -0,0 +1,22 @@
+package com.cdf.aeron.rpc.service;
+
+import com.cdf.aeron.rpc.sbe.MyRequestDecoder;
+import org.agrona.MutableDirectBuffer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 忽略请求内容，返回 server 当前时间
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public class ServerTimeHandler implements RpcHandler {
+    private static final byte[] RES_PREFIX = "server time ".getBytes(StandardCharsets.US_ASCII);
+
+    @Override
+    public int onRequest(MyRequestDecoder request, MutableDirectBuffer response) {
+        response.putBytes(0, RES_PREFIX);
+        return RES_PREFIX.length + response.putLongAscii(RES_PREFIX.length, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,112 @@
+package com.cdf.aeron.rpc.service;
+
+import com.cdf.aeron.rpc.sbe.MyRequestEncoder;
+
+import java.util.Arrays;
+
+/**
+ * methodId -> {@link RpcHandler} / {@link RpcStreamHandler} 的注册表，用数组下标直接查找，分发时没有哈希和反射的开销。
+ * 需要在 server 启动前注册完成，运行期间只读
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+public class ServiceRegistry {
+    public static final int NULL_TOPIC = -1;
+
+    private RpcHandler[] handlers = new RpcHandler[0];
+    private RpcStreamHandler[] streamHandlers = new RpcStreamHandler[0];
+    private boolean[] idempotent = new boolean[0];
+    private int[] topics = new int[0];
+
+    public ServiceRegistry register(int methodId, RpcHandler handler) {
+        return register(methodId, handler, false);
+    }
+
+    /**
+     * @param idempotent 相同的请求内容总是得到相同的响应，server 开启响应缓存时可以直接返回缓存的结果
+     */
+    public ServiceRegistry register(int methodId, RpcHandler handler, boolean idempotent) {
+        checkUnregistered(methodId);
+        if (methodId >= handlers.length) {
+            handlers = Arrays.copyOf(handlers, methodId + 1);
+            this.idempotent = Arrays.copyOf(this.idempotent, methodId + 1);
+            int oldLength = topics.length;
+            topics = Arrays.copyOf(topics, methodId + 1);
+            Arrays.fill(topics, oldLength, topics.length, NULL_TOPIC);
+        }
+        handlers[methodId] = handler;
+        this.idempotent[methodId] = idempotent;
+        return this;
+    }
+
+    /**
+     * 注册广播方法：handler 的结果不回给调用方，而是编码一次、发送一次推送给 topic 的所有订阅者，
+     * 调用方收到一个内容为空的响应，推送背压时为 SERVER_BUSY
+     */
+    public ServiceRegistry registerBroadcast(int methodId, int topicId, RpcHandler handler) {
+        register(methodId, handler, false);
+        topics[methodId] = topicId;
+        return this;
+    }
+
+    /**
+     * 注册流式方法，同一个 methodId 只能注册为普通方法或流式方法之一
+     */
+    public ServiceRegistry registerStream(int methodId, RpcStreamHandler handler) {
+        checkUnregistered(methodId);
+        if (methodId >= streamHandlers.length) {
+            streamHandlers = Arrays.copyOf(streamHandlers, methodId + 1);
+        }
+        streamHandlers[methodId] = handler;
+        return this;
+    }
+
+    /**
+     * @return 未注册时返回 null
+     */
+    public RpcHandler handler(int methodId) {
+        return methodId < handlers.length ? handlers[methodId] : null;
+    }
+
+    /**
+     * @return 是否注册为幂等的普通方法
+     */
+    public boolean isIdempotent(int methodId) {
+        return methodId < idempotent.length && idempotent[methodId];
+    }
+
+    /**
+     * @return 广播方法推送的 topic，不是广播方法时返回 {@link #NULL_TOPIC}
+     */
+    public int topic(int methodId) {
+        return methodId < topics.length ? topics[methodId] : NULL_TOPIC;
+    }
+
+    /**
+     * @return 未注册为流式方法时返回 null
+     */
+    public RpcStreamHandler streamHandler(int methodId) {
+        return methodId < streamHandlers.length ? streamHandlers[methodId] : null;
+    }
+
+    private void checkUnregistered(int methodId) {
+        if (methodId < 0 || methodId > MyRequestEncoder.methodIdMaxValue()) {
+            throw new IllegalArgumentException("methodId out of range: " + methodId);
+        }
+        if (handler(methodId) != null || streamHandler(methodId) != null) {
+            throw new IllegalStateException("methodId already registered: " + methodId);
+        }
+    }
+
+    /**
+     * 内置的示例方法
+     */
+    public static ServiceRegistry withDefaults() {
+        return new ServiceRegistry()
+                .register(Methods.SERVER_TIME, new ServerTimeHandler())
+                .register(Methods.ECHO, new EchoHandler(), true)
+                .registerStream(Methods.RANGE, new RangeHandler())
+                .registerBroadcast(Methods.BROADCAST, Methods.BROADCAST_TOPIC, new EchoHandler());
+    }
+}
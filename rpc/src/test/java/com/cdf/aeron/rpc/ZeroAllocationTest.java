@@ -0,0 +1,150 @@
+package com.cdf.aeron.rpc;
+
+import com.cdf.aeron.rpc.client.CallFailure;
+import com.cdf.aeron.rpc.client.ClientAgent;
+import com.cdf.aeron.rpc.client.RpcCallback;
+import com.cdf.aeron.rpc.server.ServerAgent;
+import com.cdf.aeron.rpc.service.Methods;
+import com.cdf.aeron.rpc.service.ServiceRegistry;
+import io.aeron.Aeron;
+import io.aeron.CommonContext;
+import io.aeron.driver.MediaDriver;
+import io.aeron.driver.ThreadingMode;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.agrona.CloseHelper.quietClose;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * 稳态下一次完整往返（ClientAgent.call -> ServerAdapter.onFragment -> 响应 -> ClientAdapter）不分配对象：
+ * server 和 client 的 doWork 都在测试线程上驱动，预热之后用 {@link com.sun.management.ThreadMXBean}
+ * 统计测试线程在 N 次往返中分配的字节数，必须为 0。MediaDriver 跑在自己的线程上，不计入
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+class ZeroAllocationTest {
+    private static final int PAYLOAD_SIZE = 64;
+    private static final int WARMUP_ROUND_TRIPS = 20_000;
+    private static final int MEASURED_ROUND_TRIPS = 10_000;
+    private static final long AWAIT_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(10L);
+
+    private MediaDriver mediaDriver;
+    private Aeron aeron;
+    private ServerAgent serverAgent;
+    private ClientAgent clientAgent;
+    private UnsafeBuffer payload;
+    private RpcCallback callback;
+
+    private long completed;
+    private long failures;
+
+    @BeforeEach
+    void setUp() {
+        mediaDriver = MediaDriver.launchEmbedded(new MediaDriver.Context()
+                .aeronDirectoryName(CommonContext.generateRandomDirName())
+                .threadingMode(ThreadingMode.SHARED)
+                .dirDeleteOnStart(true)
+                .dirDeleteOnShutdown(true));
+        aeron = Aeron.connect(new Aeron.Context().aeronDirectoryName(mediaDriver.aeronDirectoryName()));
+
+        RpcConfig config = RpcConfig.load().withTransport(Transport.IPC);
+        // 不用 worker pool，handler 在测试线程上执行才能统计到
+        serverAgent = new ServerAgent(aeron, ServiceRegistry.withDefaults(), config, Constants.RPC_STREAM,
+                config.serverFragmentLimit(), config.serverFlushPolicy(), null);
+        clientAgent = new ClientAgent(aeron, config, Constants.RPC_STREAM, 1, Constants.REQUEST_TIMEOUT_NS,
+                config.clientFragmentLimit());
+        serverAgent.onStart();
+        clientAgent.onStart();
+        long deadlineNs = System.nanoTime() + AWAIT_TIMEOUT_NS;
+        while (!clientAgent.isReady()) {
+            doWork();
+            if (System.nanoTime() - deadlineNs > 0) {
+                fail("client not ready");
+            }
+        }
+
+        payload = new UnsafeBuffer(ByteBuffer.allocateDirect(PAYLOAD_SIZE));
+        payload.setMemory(0, PAYLOAD_SIZE, (byte) 'a');
+        callback = new RpcCallback() {
+            @Override
+            public void onResponse(long id, DirectBuffer buffer, int offset, int length) {
+                completed++;
+            }
+
+            @Override
+            public void onFailure(long id, CallFailure failure) {
+                completed++;
+                failures++;
+            }
+        };
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (clientAgent != null) {
+            quietClose(clientAgent::onClose);
+        }
+        if (serverAgent != null) {
+            quietClose(serverAgent::onClose);
+        }
+        quietClose(aeron);
+        quietClose(mediaDriver);
+    }
+
+    @Test
+    void steadyStateRoundTripDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assertTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().threadId();
+
+        // 预热：JIT 编译、各个可扩容 buffer 和池化对象达到稳态
+        roundTrips(WARMUP_ROUND_TRIPS);
+        assertEquals(0, failures);
+
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        roundTrips(MEASURED_ROUND_TRIPS);
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(0, failures);
+        assertEquals(0, allocated, "bytes allocated in " + MEASURED_ROUND_TRIPS + " round trips");
+    }
+
+    private void roundTrips(int count) {
+        for (int i = 0; i < count; i++) {
+            long target = completed + 1;
+            long deadlineNs = System.nanoTime() + AWAIT_TIMEOUT_NS;
+            while (clientAgent.call(Methods.ECHO, payload, 0, PAYLOAD_SIZE, callback) == ClientAgent.NULL_CALL_ID) {
+                doWork();
+                checkDeadline(deadlineNs);
+            }
+            while (completed < target) {
+                doWork();
+                checkDeadline(deadlineNs);
+            }
+        }
+    }
+
+    private void doWork() {
+        clientAgent.doWork();
+        serverAgent.doWork();
+    }
+
+    private static void checkDeadline(long deadlineNs) {
+        if (System.nanoTime() - deadlineNs > 0) {
+            fail("round trip timed out");
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.cdf.aeron.rpc.client;
+
+import com.cdf.aeron.rpc.metrics.ClientCounters;
+import com.cdf.aeron.rpc.metrics.LatencyRecorder;
+import io.aeron.Aeron;
+import io.aeron.CommonContext;
+import io.aeron.driver.MediaDriver;
+import io.aeron.driver.ThreadingMode;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.agrona.CloseHelper.quietClose;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * PendingCalls 的 AIMD 信用窗口：SERVER_BUSY 时减半，每一个窗口的成功响应加一、最大为 maxInFlight，
+ * 一批超时只收缩一次。时钟由测试控制，计数器需要 Aeron，起一个嵌入的 MediaDriver
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+class PendingCallsTest {
+    private static final int MAX_IN_FLIGHT = 16;
+    private static final long TIMEOUT_NS = 1_000L;
+    private static final long ID_BASE = 3L << 32;
+
+    private MediaDriver mediaDriver;
+    private Aeron aeron;
+    private ClientCounters counters;
+    private PendingCalls pendingCalls;
+    private long nowNs;
+    private long nextId;
+
+    private final List<Long> responses = new ArrayList<>();
+    private final List<CallFailure> failures = new ArrayList<>();
+    private final RpcCallback callback = new RpcCallback() {
+        @Override
+        public void onResponse(long id, DirectBuffer buffer, int offset, int length) {
+            responses.add(id);
+        }
+
+        @Override
+        public void onFailure(long id, CallFailure failure) {
+            failures.add(failure);
+        }
+    };
+
+    @BeforeEach
+    void setUp() {
+        mediaDriver = MediaDriver.launchEmbedded(new MediaDriver.Context()
+                .aeronDirectoryName(CommonContext.generateRandomDirName())
+                .threadingMode(ThreadingMode.SHARED)
+                .dirDeleteOnStart(true)
+                .dirDeleteOnShutdown(true));
+        aeron = Aeron.connect(new Aeron.Context().aeronDirectoryName(mediaDriver.aeronDirectoryName()));
+        counters = new ClientCounters(aeron, 1, "test");
+        pendingCalls = new PendingCalls(MAX_IN_FLIGHT, TIMEOUT_NS, () -> nowNs, new LatencyRecorder("test", 0L),
+                counters, ID_BASE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        quietClose(counters);
+        quietClose(aeron);
+        quietClose(mediaDriver);
+    }
+
+    @Test
+    void serverBusyHalvesWindowDownToOne() {
+        assertEquals(MAX_IN_FLIGHT, pendingCalls.window());
+        for (int expected : new int[]{8, 4, 2, 1, 1}) {
+            assertTrue(pendingCalls.onFailure(register(), CallFailure.SERVER_BUSY));
+            assertEquals(expected, pendingCalls.window());
+        }
+        // 其它失败不是过载，窗口不变
+        pendingCalls.onFailure(register(), CallFailure.UNKNOWN_METHOD);
+        assertEquals(1, pendingCalls.window());
+
+        register();
+        assertTrue(pendingCalls.isFull());
+        assertEquals(6, failures.size());
+    }
+
+    @Test
+    void windowGrowsByOnePerWindowOfSuccesses() {
+        busy(2);
+        assertEquals(4, pendingCalls.window());
+        // 每个窗口的成功响应加一：4 个之后为 5，再 5 个之后为 6
+        for (int window = 4; window < MAX_IN_FLIGHT; window++) {
+            succeed(window - 1);
+            assertEquals(window, pendingCalls.window());
+            succeed(1);
+            assertEquals(window + 1, pendingCalls.window());
+        }
+        succeed(MAX_IN_FLIGHT * 3);
+        assertEquals(MAX_IN_FLIGHT, pendingCalls.window());
+    }
+
+    @Test
+    void serverBusyRestartsGrowth() {
+        busy(1);
+        succeed(7);
+        assertEquals(8, pendingCalls.window());
+        // 收缩后重新数满一个窗口才增长
+        busy(1);
+        succeed(3);
+        assertEquals(4, pendingCalls.window());
+        succeed(1);
+        assertEquals(5, pendingCalls.window());
+    }
+
+    @Test
+    void batchOfTimeoutsHalvesWindowOnce() {
+        for (int i = 0; i < 10; i++) {
+            register();
+        }
+        nowNs += TIMEOUT_NS - 1;
+        assertEquals(0, pendingCalls.expire(nowNs));
+        assertEquals(MAX_IN_FLIGHT, pendingCalls.window());
+
+        nowNs++;
+        assertEquals(10, pendingCalls.expire(nowNs));
+        assertEquals(MAX_IN_FLIGHT / 2, pendingCalls.window());
+        assertEquals(10, failures.size());
+        assertTrue(failures.stream().allMatch(failure -> failure == CallFailure.TIMEOUT));
+        assertEquals(0, pendingCalls.size());
+
+        // 没有超时的检查不收缩，下一批再减半
+        assertEquals(0, pendingCalls.expire(nowNs));
+        assertEquals(MAX_IN_FLIGHT / 2, pendingCalls.window());
+        register();
+        register();
+        nowNs += TIMEOUT_NS;
+        assertEquals(2, pendingCalls.expire(nowNs));
+        assertEquals(MAX_IN_FLIGHT / 4, pendingCalls.window());
+    }
+
+    @Test
+    void callbackIdsIncludeIdBase() {
+        long id = register();
+        assertTrue(pendingCalls.onResponse(id, new UnsafeBuffer(new byte[0]), 0, 0));
+        assertEquals(List.of(ID_BASE | id), responses);
+        assertFalse(pendingCalls.onResponse(id, new UnsafeBuffer(new byte[0]), 0, 0));
+    }
+
+    private long register() {
+        long id = ++nextId;
+        pendingCalls.register(id, callback, nowNs);
+        return id;
+    }
+
+    private void busy(int count) {
+        for (int i = 0; i < count; i++) {
+            pendingCalls.onFailure(register(), CallFailure.SERVER_BUSY);
+        }
+    }
+
+    private void succeed(int count) {
+        UnsafeBuffer empty = new UnsafeBuffer(new byte[0]);
+        for (int i = 0; i < count; i++) {
+            pendingCalls.onResponse(register(), empty, 0, 0);
+        }
+    }
+}
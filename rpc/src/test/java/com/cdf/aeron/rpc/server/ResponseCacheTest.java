@@ -0,0 +1,173 @@
+package com.cdf.aeron.rpc.server;
+
+import com.cdf.aeron.rpc.sbe.HeaderEncoder;
+import com.cdf.aeron.rpc.sbe.MyResponseDecoder;
+import com.cdf.aeron.rpc.sbe.MyResponseEncoder;
+import com.cdf.aeron.rpc.sbe.PayloadEncoding;
+import com.cdf.aeron.rpc.sbe.ResponseStatus;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ResponseCache 的命中、hash 冲突、LRU 淘汰、TTL、放不下的条目，以及命中后拷贝响应时改写 id
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+class ResponseCacheTest {
+    private static final int METHOD_ID = 7;
+    // 槽头 32 字节，放得下 16 字节以内的请求和 40 字节以内的响应内容
+    private static final int ENTRY_LENGTH = 96;
+    private static final int VALUE_OVERHEAD = HeaderEncoder.ENCODED_LENGTH + MyResponseEncoder.BLOCK_LENGTH +
+            MyResponseEncoder.resHeaderLength();
+
+    @Test
+    void hitReturnsCachedResponseAndMissReturnsNullSlot() {
+        ResponseCache cache = new ResponseCache(ENTRY_LENGTH * 4, ENTRY_LENGTH, 0L);
+        assertEquals(ResponseCache.NULL_SLOT, lookup(cache, METHOD_ID, "key", 0L));
+
+        assertTrue(put(cache, METHOD_ID, "key", "value", 0L));
+        int slot = lookup(cache, METHOD_ID, "key", 0L);
+        assertNotEquals(ResponseCache.NULL_SLOT, slot);
+        assertEquals("value", res(cache, slot));
+        assertEquals(1, cache.size());
+
+        assertEquals(ResponseCache.NULL_SLOT, lookup(cache, METHOD_ID, "other", 0L));
+        assertEquals(ResponseCache.NULL_SLOT, lookup(cache, METHOD_ID + 1, "key", 0L));
+    }
+
+    @Test
+    void putReplacesEntryWithSameKey() {
+        ResponseCache cache = new ResponseCache(ENTRY_LENGTH * 4, ENTRY_LENGTH, 0L);
+        assertTrue(put(cache, METHOD_ID, "key", "old", 0L));
+        assertTrue(put(cache, METHOD_ID, "key", "new", 0L));
+        assertEquals(1, cache.size());
+        assertEquals("new", res(cache, lookup(cache, METHOD_ID, "key", 0L)));
+    }
+
+    @Test
+    void hashCollisionWithDifferentBytesIsMiss() {
+        ResponseCache cache = new ResponseCache(ENTRY_LENGTH * 4, ENTRY_LENGTH, 0L);
+        long hash = 42L;
+        DirectBuffer stored = ascii("abcdefgh-1");
+        assertTrue(cache.put(hash, METHOD_ID, stored, 0, stored.capacity(), ascii("value"), 0, 5, 0L));
+
+        // 同一个 hash、同样长度，只有最后一个字节不同，以及 methodId 不同
+        DirectBuffer collided = ascii("abcdefgh-2");
+        assertEquals(ResponseCache.NULL_SLOT, cache.lookup(hash, METHOD_ID, collided, 0, collided.capacity(), 0L));
+        assertEquals(ResponseCache.NULL_SLOT, cache.lookup(hash, METHOD_ID + 1, stored, 0, stored.capacity(), 0L));
+        DirectBuffer longer = ascii("abcdefgh-1x");
+        assertEquals(ResponseCache.NULL_SLOT, cache.lookup(hash, METHOD_ID, longer, 0, longer.capacity(), 0L));
+
+        int slot = cache.lookup(hash, METHOD_ID, stored, 0, stored.capacity(), 0L);
+        assertNotEquals(ResponseCache.NULL_SLOT, slot);
+        assertEquals("value", res(cache, slot));
+    }
+
+    @Test
+    void fullCacheEvictsLeastRecentlyUsed() {
+        ResponseCache cache = new ResponseCache(ENTRY_LENGTH * 3, ENTRY_LENGTH, 0L);
+        put(cache, METHOD_ID, "k0", "v0", 0L);
+        put(cache, METHOD_ID, "k1", "v1", 0L);
+        put(cache, METHOD_ID, "k2", "v2", 0L);
+        // 命中 k0 后最久未使用的是 k1
+        assertNotEquals(ResponseCache.NULL_SLOT, lookup(cache, METHOD_ID, "k0", 0L));
+
+        put(cache, METHOD_ID, "k3", "v3", 0L);
+        assertEquals(3, cache.size());
+        assertEquals(ResponseCache.NULL_SLOT, lookup(cache, METHOD_ID, "k1", 0L));
+
+        // 此时由旧到新为 k2、k0、k3
+        put(cache, METHOD_ID, "k4", "v4", 0L);
+        assertEquals(ResponseCache.NULL_SLOT, lookup(cache, METHOD_ID, "k2", 0L));
+        assertEquals("v0", res(cache, lookup(cache, METHOD_ID, "k0", 0L)));
+        assertEquals("v3", res(cache, lookup(cache, METHOD_ID, "k3", 0L)));
+        assertEquals("v4", res(cache, lookup(cache, METHOD_ID, "k4", 0L)));
+    }
+
+    @Test
+    void entryExpiresAfterTtl() {
+        long ttlNs = 1_000L;
+        ResponseCache cache = new ResponseCache(ENTRY_LENGTH * 2, ENTRY_LENGTH, ttlNs);
+        put(cache, METHOD_ID, "key", "value", 500L);
+        assertNotEquals(ResponseCache.NULL_SLOT, lookup(cache, METHOD_ID, "key", 500L + ttlNs - 1));
+
+        assertEquals(ResponseCache.NULL_SLOT, lookup(cache, METHOD_ID, "key", 500L + ttlNs));
+        // 过期的条目在查找时移除，槽回到空闲列表
+        assertEquals(0, cache.size());
+        put(cache, METHOD_ID, "a", "1", 2_000L);
+        put(cache, METHOD_ID, "b", "2", 2_000L);
+        assertEquals(2, cache.size());
+        assertEquals("1", res(cache, lookup(cache, METHOD_ID, "a", 2_000L)));
+    }
+
+    @Test
+    void oversizedEntryIsRejected() {
+        ResponseCache cache = new ResponseCache(ENTRY_LENGTH * 2, ENTRY_LENGTH, 0L);
+        String key = "0123456789abcdef";
+        int maxResLength = ENTRY_LENGTH - 32 - key.length() - VALUE_OVERHEAD;
+        String fits = "x".repeat(maxResLength);
+        assertTrue(put(cache, METHOD_ID, key, fits, 0L));
+        assertEquals(fits, res(cache, lookup(cache, METHOD_ID, key, 0L)));
+
+        assertFalse(put(cache, METHOD_ID, key + "!", fits, 0L));
+        assertFalse(put(cache, METHOD_ID, "other", "x".repeat(ENTRY_LENGTH), 0L));
+        assertEquals(1, cache.size());
+        assertEquals(ResponseCache.NULL_SLOT, lookup(cache, METHOD_ID, key + "!", 0L));
+    }
+
+    @Test
+    void hitIsCopiedWithRequestId() {
+        ResponseCache cache = new ResponseCache(ENTRY_LENGTH * 2, ENTRY_LENGTH, 0L);
+        put(cache, METHOD_ID, "key", "value", 0L);
+        int slot = lookup(cache, METHOD_ID, "key", 0L);
+        UnsafeBuffer dst = new UnsafeBuffer(new byte[256]);
+        int dstOffset = 24;
+
+        for (long id : new long[]{1L, 0xFFFF_FFFEL, 3L}) {
+            cache.copyResponse(slot, id, dst, dstOffset);
+            MyResponseDecoder decoder = new MyResponseDecoder().wrap(dst, dstOffset + HeaderEncoder.ENCODED_LENGTH,
+                    MyResponseDecoder.BLOCK_LENGTH, MyResponseDecoder.SCHEMA_VERSION);
+            assertEquals(id, decoder.id());
+            assertEquals(ResponseStatus.OK, decoder.status());
+            assertEquals(PayloadEncoding.NONE, decoder.encoding());
+            assertEquals("value", decoder.res());
+        }
+        // 改写的是拷贝出去的字节，缓存中的响应 id 仍为 0
+        MyResponseDecoder cached = new MyResponseDecoder().wrap(cache.buffer(),
+                cache.responseOffset(slot) + HeaderEncoder.ENCODED_LENGTH,
+                MyResponseDecoder.BLOCK_LENGTH, MyResponseDecoder.SCHEMA_VERSION);
+        assertEquals(0L, cached.id());
+    }
+
+    private static boolean put(ResponseCache cache, int methodId, String req, String res, long nowNs) {
+        DirectBuffer key = ascii(req);
+        DirectBuffer value = ascii(res);
+        return cache.put(ResponseCache.hash(methodId, key, 0, key.capacity()), methodId, key, 0, key.capacity(),
+                value, 0, value.capacity(), nowNs);
+    }
+
+    private static int lookup(ResponseCache cache, int methodId, String req, long nowNs) {
+        DirectBuffer key = ascii(req);
+        return cache.lookup(ResponseCache.hash(methodId, key, 0, key.capacity()), methodId, key, 0, key.capacity(),
+                nowNs);
+    }
+
+    private static String res(ResponseCache cache, int slot) {
+        assertNotEquals(ResponseCache.NULL_SLOT, slot);
+        return new MyResponseDecoder().wrap(cache.buffer(), cache.responseOffset(slot) + HeaderEncoder.ENCODED_LENGTH,
+                MyResponseDecoder.BLOCK_LENGTH, MyResponseDecoder.SCHEMA_VERSION).res();
+    }
+
+    private static DirectBuffer ascii(String value) {
+        return new UnsafeBuffer(value.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,125 @@
+package com.cdf.aeron.rpc.server;
+
+import io.aeron.Aeron;
+import io.aeron.CommonContext;
+import io.aeron.Subscription;
+import io.aeron.driver.MediaDriver;
+import io.aeron.driver.ThreadingMode;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.agrona.CloseHelper.quietClose;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * ServerSession 的出站队列：积压超过队列一半时 {@link ServerSession#isOverloaded} 为 true，
+ * 响应 publication 连上后按序重发，积压清空后恢复
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+class ServerSessionTest {
+    private static final String CHANNEL = "aeron:ipc";
+    private static final int STREAM_ID = 1001;
+    private static final int OUTBOUND_QUEUE_LENGTH = 4096;
+    private static final int MESSAGE_LENGTH = 100;
+    private static final long AWAIT_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(10L);
+
+    private MediaDriver mediaDriver;
+    private Aeron aeron;
+    private ServerSession session;
+    private final UnsafeBuffer message = new UnsafeBuffer(new byte[OUTBOUND_QUEUE_LENGTH]);
+
+    @BeforeEach
+    void setUp() {
+        mediaDriver = MediaDriver.launchEmbedded(new MediaDriver.Context()
+                .aeronDirectoryName(CommonContext.generateRandomDirName())
+                .threadingMode(ThreadingMode.SHARED)
+                .dirDeleteOnStart(true)
+                .dirDeleteOnShutdown(true));
+        aeron = Aeron.connect(new Aeron.Context().aeronDirectoryName(mediaDriver.aeronDirectoryName()));
+        session = new ServerSession(aeron, 1, CHANNEL, STREAM_ID, System.nanoTime() + AWAIT_TIMEOUT_NS, 4,
+                OUTBOUND_QUEUE_LENGTH);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (session != null) {
+            session.close();
+        }
+        quietClose(aeron);
+        quietClose(mediaDriver);
+    }
+
+    @Test
+    void overloadedOnceBacklogExceedsHalfTheQueue() {
+        assertFalse(session.hasBacklog());
+        assertFalse(session.isOverloaded());
+
+        assertTrue(session.enqueue(message, 0, MESSAGE_LENGTH));
+        assertTrue(session.hasBacklog());
+        assertFalse(session.isOverloaded());
+
+        int enqueued = 1;
+        while (!session.isOverloaded()) {
+            assertTrue(session.enqueue(message, 0, MESSAGE_LENGTH), "queue full before overloaded");
+            enqueued++;
+        }
+        int overloadedAt = enqueued;
+        while (session.enqueue(message, 0, MESSAGE_LENGTH)) {
+            enqueued++;
+        }
+        // 过载发生在队列容量的一半左右，此后仍能继续入队直到队列满
+        assertTrue(overloadedAt > 1 && overloadedAt < enqueued, overloadedAt + " of " + enqueued);
+    }
+
+    @Test
+    void oversizedMessageIsNotQueued() {
+        assertFalse(session.enqueue(message, 0, OUTBOUND_QUEUE_LENGTH));
+        assertFalse(session.hasBacklog());
+    }
+
+    @Test
+    void drainingBacklogClearsOverload() {
+        int enqueued = 0;
+        while (!session.isOverloaded()) {
+            assertTrue(session.enqueue(message, 0, MESSAGE_LENGTH));
+            enqueued++;
+        }
+
+        try (Subscription subscription = aeron.addSubscription(CHANNEL, STREAM_ID)) {
+            long deadlineNs = System.nanoTime() + AWAIT_TIMEOUT_NS;
+            while (!session.isActive()) {
+                session.doWork(System.nanoTime());
+                checkDeadline(deadlineNs);
+            }
+            int drained = 0;
+            while (session.hasBacklog()) {
+                drained += session.drainOutbound();
+                checkDeadline(deadlineNs);
+            }
+            assertEquals(enqueued, drained);
+            assertFalse(session.isOverloaded());
+
+            int received = 0;
+            while (received < enqueued) {
+                received += subscription.poll((buffer, offset, length, header) ->
+                        assertEquals(MESSAGE_LENGTH, length), enqueued - received);
+                checkDeadline(deadlineNs);
+            }
+        }
+    }
+
+    private static void checkDeadline(long deadlineNs) {
+        if (System.nanoTime() - deadlineNs > 0) {
+            fail("timed out");
+        }
+    }
+}
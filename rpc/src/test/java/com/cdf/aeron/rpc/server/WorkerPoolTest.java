@@ -0,0 +1,175 @@
+package com.cdf.aeron.rpc.server;
+
+import com.cdf.aeron.rpc.Constants;
+import com.cdf.aeron.rpc.RpcConfig;
+import com.cdf.aeron.rpc.Transport;
+import com.cdf.aeron.rpc.client.CallFailure;
+import com.cdf.aeron.rpc.client.ClientAgent;
+import com.cdf.aeron.rpc.client.RpcCallback;
+import com.cdf.aeron.rpc.service.Methods;
+import com.cdf.aeron.rpc.service.ServiceRegistry;
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.LiteBlockingWaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import io.aeron.Aeron;
+import io.aeron.CommonContext;
+import io.aeron.driver.MediaDriver;
+import io.aeron.driver.ThreadingMode;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.agrona.CloseHelper.quietClose;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * 按 {@code rpc.workers.*} 配置的 worker pool：请求经 Disruptor 交给 worker 线程执行，
+ * 响应由 agent 线程取回后发出。server 和 client 的 doWork 都在测试线程上驱动
+ *
+ * @author chendifan
+ * @date 2026-10-17
+ */
+class WorkerPoolTest {
+    // 返回执行 handler 的线程名
+    private static final int THREAD_NAME = 100;
+    private static final long AWAIT_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(10L);
+
+    private MediaDriver mediaDriver;
+    private Aeron aeron;
+    private ServerAgent serverAgent;
+    private ClientAgent clientAgent;
+
+    private final List<String> responses = new ArrayList<>();
+    private final List<CallFailure> failures = new ArrayList<>();
+    private final RpcCallback callback = new RpcCallback() {
+        @Override
+        public void onResponse(long id, DirectBuffer buffer, int offset, int length) {
+            responses.add(buffer.getStringWithoutLengthAscii(offset, length));
+        }
+
+        @Override
+        public void onFailure(long id, CallFailure failure) {
+            failures.add(failure);
+        }
+    };
+
+    @BeforeEach
+    void setUp() {
+        System.setProperty(RpcConfig.WORKER_COUNT_PROP, "2");
+        System.setProperty(RpcConfig.WORKER_RING_SIZE_PROP, "64");
+        System.setProperty(RpcConfig.WORKER_WAIT_STRATEGY_PROP, "yielding");
+        RpcConfig config = RpcConfig.load().withTransport(Transport.IPC);
+
+        mediaDriver = MediaDriver.launchEmbedded(new MediaDriver.Context()
+                .aeronDirectoryName(CommonContext.generateRandomDirName())
+                .threadingMode(ThreadingMode.SHARED)
+                .dirDeleteOnStart(true)
+                .dirDeleteOnShutdown(true));
+        aeron = Aeron.connect(new Aeron.Context().aeronDirectoryName(mediaDriver.aeronDirectoryName()));
+        ServiceRegistry serviceRegistry = ServiceRegistry.withDefaults()
+                .register(THREAD_NAME, (request, response) ->
+                        response.putStringWithoutLengthAscii(0, Thread.currentThread().getName()));
+        serverAgent = new ServerAgent(aeron, serviceRegistry, config, Constants.RPC_STREAM,
+                config.serverFragmentLimit(), config.serverFlushPolicy(), config.workerPoolConfig());
+        clientAgent = new ClientAgent(aeron, config, Constants.RPC_STREAM, Constants.MAX_IN_FLIGHT,
+                Constants.REQUEST_TIMEOUT_NS, config.clientFragmentLimit());
+        serverAgent.onStart();
+        clientAgent.onStart();
+        long deadlineNs = System.nanoTime() + AWAIT_TIMEOUT_NS;
+        while (!clientAgent.isReady()) {
+            doWork(deadlineNs);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty(RpcConfig.WORKER_COUNT_PROP);
+        System.clearProperty(RpcConfig.WORKER_RING_SIZE_PROP);
+        System.clearProperty(RpcConfig.WORKER_WAIT_STRATEGY_PROP);
+        if (clientAgent != null) {
+            quietClose(clientAgent::onClose);
+        }
+        if (serverAgent != null) {
+            quietClose(serverAgent::onClose);
+        }
+        quietClose(aeron);
+        quietClose(mediaDriver);
+    }
+
+    @Test
+    void handlerRunsOnWorkerThread() {
+        call(THREAD_NAME, "");
+        assertEquals(List.of(), failures);
+        assertEquals(1, responses.size());
+        assertTrue(responses.get(0).startsWith("RPC-Worker-"), responses.get(0));
+    }
+
+    @Test
+    void responsesComeBackThroughThePool() {
+        int count = 200;
+        for (int i = 0; i < count; i++) {
+            call(Methods.ECHO, "hello " + i);
+        }
+        assertEquals(List.of(), failures);
+        for (int i = 0; i < count; i++) {
+            assertEquals("hello " + i, responses.get(i));
+        }
+    }
+
+    @Test
+    void unknownMethodFailsOnWorker() {
+        call(THREAD_NAME + 1, "");
+        assertEquals(List.of(CallFailure.UNKNOWN_METHOD), failures);
+    }
+
+    @Test
+    void waitStrategyByNameOrClassName() {
+        assertInstanceOf(YieldingWaitStrategy.class, WorkerPoolConfig.waitStrategy("yielding"));
+        assertInstanceOf(BusySpinWaitStrategy.class, WorkerPoolConfig.waitStrategy("busy-spin"));
+        assertInstanceOf(LiteBlockingWaitStrategy.class,
+                WorkerPoolConfig.waitStrategy(LiteBlockingWaitStrategy.class.getName()));
+        assertThrows(IllegalArgumentException.class, () -> WorkerPoolConfig.waitStrategy("spin"));
+    }
+
+    @Test
+    void noWorkersMeansAgentThread() {
+        System.setProperty(RpcConfig.WORKER_COUNT_PROP, "0");
+        assertNull(RpcConfig.load().workerPoolConfig());
+    }
+
+    private void call(int methodId, String request) {
+        byte[] bytes = request.getBytes(StandardCharsets.US_ASCII);
+        int completed = responses.size() + failures.size();
+        long deadlineNs = System.nanoTime() + AWAIT_TIMEOUT_NS;
+        long callId;
+        while ((callId = clientAgent.call(methodId, new UnsafeBuffer(bytes), 0, bytes.length, callback)) ==
+                ClientAgent.NULL_CALL_ID) {
+            doWork(deadlineNs);
+        }
+        assertNotEquals(ClientAgent.NULL_CALL_ID, callId);
+        while (responses.size() + failures.size() == completed) {
+            doWork(deadlineNs);
+        }
+    }
+
+    private void doWork(long deadlineNs) {
+        clientAgent.doWork();
+        serverAgent.doWork();
+        if (System.nanoTime() - deadlineNs > 0) {
+            fail("timed out");
+        }
+    }
+}